@@ -0,0 +1,69 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.Thymewire;
+import pro.gammel.thymewire.core.Renderer;
+import pro.gammel.thymewire.rendering.thymeleaf.LayeredContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Expansion of component tags into fragment calls, with attributes evaluated for every instance. The component
+ * renders nothing, so that the time is spent on expansion rather than on the component content. The page is
+ * rendered by the {@link Renderer} with a context prepared once, after checking at setup that it renders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ComponentExpansionBenchmark {
+
+    @Param({"10", "100", "1000"})
+    int instances;
+
+    @Param({"1", "5"})
+    int attributes;
+
+    private SiteFixture site;
+
+    private Thymewire thymewire;
+
+    private Renderer renderer;
+
+    private LayeredContext context;
+
+    @Setup
+    public void setUp() {
+        var tag = new StringBuilder("<c:empty");
+        for (int i = 0; i < attributes; i++) {
+            tag.append(" attribute-").append(i).append("=\"${i}\"");
+        }
+        tag.append("/>");
+        site = new SiteFixture()
+                .component("empty", "<th:block th:fragment=\"content\"></th:block>")
+                .page("expansion", "<th:block th:each=\"i : ${#numbers.sequence(1, count)}\">" + tag + "</th:block>")
+                .model("expansion", null, "{\"model\": {\"count\": " + instances + "}}");
+        thymewire = new Thymewire(site.base());
+        var controller = thymewire.initialize();
+        var response = controller.render("GET", "/expansion", Map.of());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Page /expansion failed with HTTP " + response.statusCode());
+        }
+        renderer = thymewire.renderer();
+        context = controller.context("/expansion", Map.of());
+    }
+
+    @TearDown
+    public void tearDown() {
+        thymewire.shutdown();
+        site.close();
+    }
+
+    @Benchmark
+    public byte[] expand() {
+        return renderer.renderBytes("expansion", context);
+    }
+}
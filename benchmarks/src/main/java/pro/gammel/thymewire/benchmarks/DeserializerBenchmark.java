@@ -0,0 +1,60 @@
+package pro.gammel.thymewire.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.rendering.ClassAwareDeserializer;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deserialization of model properties declaring their class, with every tenth property typed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DeserializerBenchmark {
+
+    public record Address(String street, String city, String zip) {}
+
+    @Param({"10", "100"})
+    int properties;
+
+    private final ClassAwareDeserializer deserializer = new ClassAwareDeserializer(new ObjectMapper());
+
+    private Map<String, Object> typed;
+
+    private Map<String, Object> plain;
+
+    @Setup
+    public void setUp() {
+        typed = new HashMap<>();
+        plain = new HashMap<>();
+        for (int i = 0; i < properties; i++) {
+            var value = new LinkedHashMap<String, Object>();
+            value.put("street", "Main Street " + i);
+            value.put("city", "Berlin");
+            value.put("zip", "10115");
+            plain.put("property" + i, new LinkedHashMap<>(value));
+            if (i % 10 == 0) {
+                value.put("class", Address.class.getName());
+            }
+            typed.put("property" + i, value);
+        }
+    }
+
+    @Benchmark
+    public Map<String, Object> typed() {
+        return deserializer.processModel(typed);
+    }
+
+    @Benchmark
+    public Map<String, Object> plain() {
+        return deserializer.processModel(plain);
+    }
+}
@@ -0,0 +1,64 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.core.ComponentRegistry;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.tools.ProjectGenerator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup of a site generated by {@link ProjectGenerator}: loading the configuration, layouts, templates and
+ * models, and indexing the components with their usages. The seed is fixed, so that every run measures the
+ * same project.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedSiteBenchmark {
+
+    @Param({"500", "2000"})
+    int pages;
+
+    @Param({"20", "200"})
+    int components;
+
+    private Path directory;
+
+    private SiteProvider site;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("thymewire-generated");
+        ProjectGenerator.aProject().seed(42).pages(pages).components(components).generate(directory);
+        site = loadSite();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public SiteProvider loadSite() {
+        var provider = new SiteProvider(directory);
+        provider.load();
+        return provider;
+    }
+
+    @Benchmark
+    public ComponentRegistry loadComponents() {
+        var registry = new ComponentRegistry(site);
+        registry.load();
+        return registry;
+    }
+}
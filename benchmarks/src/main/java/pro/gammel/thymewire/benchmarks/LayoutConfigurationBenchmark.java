@@ -0,0 +1,49 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.rendering.layout.Layout;
+import pro.gammel.thymewire.rendering.layout.LayoutConfiguration;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolution of the layout of a request path from the Ant-style patterns of the layout configuration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LayoutConfigurationBenchmark {
+
+    @Param({"4", "32"})
+    int layouts;
+
+    private LayoutConfiguration configuration;
+
+    private String matchingPath;
+
+    @Setup
+    public void setUp() {
+        var map = new LinkedHashMap<String, Layout>();
+        for (int i = 0; i < layouts; i++) {
+            map.put("layout-" + i, new Layout(List.of("/section-" + i + "/**", "/archive/" + i + "/*/detail-?")));
+        }
+        configuration = new LayoutConfiguration(map);
+        matchingPath = "/archive/" + (layouts - 1) + "/2024/detail-a";
+    }
+
+    @Benchmark
+    public Optional<String> matching() {
+        return configuration.findByPath(matchingPath);
+    }
+
+    @Benchmark
+    public Optional<String> notMatching() {
+        return configuration.findByPath("/orders/list");
+    }
+}
@@ -0,0 +1,53 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.discovery.ModelInfo;
+import pro.gammel.thymewire.discovery.ModelLoader;
+import pro.gammel.thymewire.discovery.TemplateInfo;
+import pro.gammel.thymewire.discovery.TemplateLoader;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discovery of the models of one template and of all templates with their models in generated trees with
+ * three variants per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ModelDiscoveryBenchmark {
+
+    @Param({"100", "1000"})
+    int templates;
+
+    private final SiteConfig config = SiteConfig.defaultConfig();
+
+    private final ModelLoader loader = new ModelLoader();
+
+    private SiteFixture site;
+
+    @Setup
+    public void setUp() {
+        site = new SiteFixture().pages(templates, 3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        site.close();
+    }
+
+    @Benchmark
+    public List<ModelInfo> discoverModels() {
+        return loader.discoverModels("section-0/page-0", config, site.base());
+    }
+
+    @Benchmark
+    public List<TemplateInfo> discoverTemplates() {
+        return new TemplateLoader(loader).discoverTemplates(config, site.base());
+    }
+}
@@ -0,0 +1,66 @@
+package pro.gammel.thymewire.benchmarks;
+
+import pro.gammel.thymewire.Thymewire;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+/**
+ * Measures the bytes allocated per render with the allocation counter of the thread, comparing the string output
+ * encoded afterwards, as the server did before, with the output encoded into pooled buffers. The page is the plain
+ * page of {@link RenderBenchmark} with the given number of items, 100 by default.
+ */
+public final class RenderAllocations {
+
+    private static final int WARMUP_RENDERS = 2_000;
+
+    private static final int MEASURED_RENDERS = 10_000;
+
+    private RenderAllocations() {
+    }
+
+    public static void main(String[] args) {
+        var count = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        if (!(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads)
+                || !threads.isThreadAllocatedMemorySupported()) {
+            throw new IllegalStateException("The JVM does not measure allocations of threads");
+        }
+        try (var site = new SiteFixture().page("plain", RenderBenchmark.PLAIN)) {
+            var thymewire = new Thymewire(site.base());
+            thymewire.initialize();
+            var renderer = thymewire.renderer();
+            Map<String, Object> model = Map.of("title", "Items", "items", items(count));
+            System.out.printf("%-20s %18s %14s%n", "Output", "Allocated, bytes", "Output, bytes");
+            measure(threads, "String, encoded", model,
+                    m -> renderer.render("plain", m).getBytes(StandardCharsets.UTF_8).length);
+            measure(threads, "Pooled UTF-8 buffer", model, m -> renderer.renderBytes("plain", m).length);
+            thymewire.shutdown();
+        }
+    }
+
+    private static void measure(com.sun.management.ThreadMXBean threads, String name, Map<String, Object> model,
+                                ToIntFunction<Map<String, Object>> render) {
+        for (int i = 0; i < WARMUP_RENDERS; i++) {
+            render.applyAsInt(model);
+        }
+        long size = 0;
+        long start = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < MEASURED_RENDERS; i++) {
+            size += render.applyAsInt(model);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - start;
+        System.out.printf("%-20s %18d %14d%n", name, allocated / MEASURED_RENDERS, size / MEASURED_RENDERS);
+    }
+
+    private static List<Map<String, Object>> items(int count) {
+        var items = new ArrayList<Map<String, Object>>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(Map.of("id", i, "title", "Item " + i, "text", "Description of the item number " + i));
+        }
+        return items;
+    }
+}
@@ -0,0 +1,103 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.Thymewire;
+import pro.gammel.thymewire.core.Renderer;
+import pro.gammel.thymewire.rendering.thymeleaf.LayeredContext;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Render of a page with 100 items by the {@link Renderer}, with the context the server builds for the request
+ * prepared once, so that only template processing and output are measured. The same list is rendered as a plain
+ * page, inside a layout, and with a component per item. The page is requested once through the controller at
+ * setup to check that it renders.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RenderBenchmark {
+
+    private static final String LIST = """
+            <ul>
+                <li th:each="item : ${items}">
+                    <h3 th:text="${item.title}">Title</h3>
+                    <p th:text="${item.text}">Text</p>
+                </li>
+            </ul>
+            """;
+
+    static final String PLAIN = "<html><body><h1 th:text=\"${title}\">Title</h1>" + LIST + "</body></html>";
+
+    // Template rendered for the path, the layout for the pages inside it
+    private static final Map<String, String> TEMPLATES = Map.of(
+            "/plain", "plain",
+            "/layout/page", "layouts/main",
+            "/components", "components");
+
+    @Param({"/plain", "/layout/page", "/components"})
+    String path;
+
+    private SiteFixture site;
+
+    private Thymewire thymewire;
+
+    private Renderer renderer;
+
+    private LayeredContext context;
+
+    private String template;
+
+    @Setup
+    public void setUp() {
+        var model = "{\"model\": {\"title\": \"Items\", \"items\": " + SiteFixture.items(100) + "}}";
+        site = new SiteFixture()
+                .page("plain", PLAIN)
+                .model("plain", null, model)
+                .layouts("{\"main\": {\"paths\": [\"/layout/**\"]}}")
+                .layout("main", """
+                        <html><head><title th:text="${title}">Title</title></head>
+                        <body><header><h1 th:text="${title}">Title</h1></header>
+                        <main th:insert="~{${page} :: content}"></main>
+                        <footer>Footer</footer></body></html>
+                        """)
+                .page("layout/page", "<div th:fragment=\"content\">" + LIST + "</div>")
+                .model("layout/page", null, model)
+                .component("card", """
+                        <article th:fragment="content">
+                            <h3 th:text="${__model.title}">Title</h3>
+                            <p th:text="${__model.text}">Text</p>
+                        </article>
+                        """)
+                .page("components", """
+                        <html><body><h1 th:text="${title}">Title</h1>
+                        <th:block th:each="item : ${items}"><c:card title="${item.title}" text="${item.text}"/></th:block>
+                        </body></html>
+                        """)
+                .model("components", null, model);
+        thymewire = new Thymewire(site.base());
+        var controller = thymewire.initialize();
+        var response = controller.render("GET", path, Map.of());
+        if (response.statusCode() != 200) {
+            throw new IllegalStateException("Page " + path + " failed with HTTP " + response.statusCode());
+        }
+        renderer = thymewire.renderer();
+        context = controller.context(path, Map.of());
+        template = TEMPLATES.get(path);
+    }
+
+    @TearDown
+    public void tearDown() {
+        thymewire.shutdown();
+        site.close();
+    }
+
+    @Benchmark
+    public byte[] render() {
+        return renderer.renderBytes(template, context);
+    }
+}
@@ -0,0 +1,114 @@
+package pro.gammel.thymewire.benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Project generated in a temporary directory with the default layout of the site configuration: templates in
+ * "src/main/resources/templates" and models in "src/test/resources/templates".
+ */
+final class SiteFixture implements AutoCloseable {
+
+    private final Path base;
+
+    SiteFixture() {
+        try {
+            base = Files.createTempDirectory("thymewire-bench");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    Path base() {
+        return base;
+    }
+
+    /**
+     * Writes the page template, e.g. "orders/list" into "templates/pages/orders/list.html".
+     */
+    SiteFixture page(String name, String html) {
+        return write("src/main/resources/templates/pages/" + name + ".html", html);
+    }
+
+    /**
+     * Writes the model of the page, e.g. "orders/list" and "empty" into "pages/orders/list.empty.json".
+     */
+    SiteFixture model(String page, String variant, String json) {
+        var suffix = variant == null ? "" : "." + variant;
+        return write("src/test/resources/templates/pages/" + page + suffix + ".json", json);
+    }
+
+    SiteFixture layout(String name, String html) {
+        return write("src/main/resources/templates/layouts/" + name + ".html", html);
+    }
+
+    SiteFixture layouts(String json) {
+        return write("src/main/resources/templates/layouts/index.json", json);
+    }
+
+    /**
+     * Writes the component template, e.g. "card" into "templates/components/card-c.html".
+     */
+    SiteFixture component(String name, String html) {
+        return write("src/main/resources/templates/components/" + name + "-c.html", html);
+    }
+
+    SiteFixture config(String json) {
+        return write("site.json", json);
+    }
+
+    /**
+     * Generates pages in sections of 10 with the default model and the given number of variants each.
+     */
+    SiteFixture pages(int count, int variants) {
+        for (int i = 0; i < count; i++) {
+            var name = "section-" + (i / 10) + "/page-" + i;
+            page(name, "<p th:text=\"${title}\">title</p>");
+            model(name, null, "{\"model\": {\"title\": \"Page " + i + "\"}}");
+            for (int v = 0; v < variants; v++) {
+                model(name, "variant" + v, "{\"model\": {\"title\": \"Variant " + v + "\"}}");
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Returns the JSON array of the given number of items with id, title and text.
+     */
+    static String items(int count) {
+        var json = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\": ").append(i)
+                .append(", \"title\": \"Item ").append(i)
+                .append("\", \"text\": \"Description of the item number ").append(i).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+
+    private SiteFixture write(String file, String content) {
+        try {
+            var path = base.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.writeString(path, content);
+            return this;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        try (Stream<Path> paths = Files.walk(base)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package pro.gammel.thymewire.benchmarks;
+
+import org.openjdk.jmh.annotations.*;
+import pro.gammel.thymewire.config.Mapping;
+import pro.gammel.thymewire.core.UriTemplateMatcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matching of request paths against the URI mappings of the site configuration. The matching path is served by
+ * the last mapping, so that all mappings are tried as for a path without mapping.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UriTemplateMatcherBenchmark {
+
+    @Param({"10", "100"})
+    int mappings;
+
+    private final UriTemplateMatcher matcher = new UriTemplateMatcher();
+
+    private List<Mapping> mappingList;
+
+    private String matchingPath;
+
+    @Setup
+    public void setUp() {
+        mappingList = new ArrayList<>();
+        for (int i = 0; i < mappings; i++) {
+            mappingList.add(new Mapping("/section-" + i + "/items/{id}/{tab}", true, "section-" + i + "/item", null));
+        }
+        matchingPath = "/section-" + (mappings - 1) + "/items/42/details";
+    }
+
+    @Benchmark
+    public Optional<UriTemplateMatcher.MatchResult> matching() {
+        return matcher.match(matchingPath, mappingList);
+    }
+
+    @Benchmark
+    public Optional<UriTemplateMatcher.MatchResult> notMatching() {
+        return matcher.match("/static/styles/main.css", mappingList);
+    }
+}
@@ -1,15 +1,46 @@
 package pro.gammel.thymewire;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.github.resource4j.resources.RefreshableResources;
+import com.github.resource4j.resources.Resources;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.admin.AdminHandler;
+import pro.gammel.thymewire.core.ComponentRegistry;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.FileWatcher;
+import pro.gammel.thymewire.core.MessageCache;
+import pro.gammel.thymewire.core.RenderScheduler;
+import pro.gammel.thymewire.core.Renderer;
 import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.core.Warmup;
+import pro.gammel.thymewire.metrics.Metrics;
+import pro.gammel.thymewire.metrics.MetricsHandler;
+import pro.gammel.thymewire.models.ModelReader;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentInstances;
+import pro.gammel.thymewire.models.ModelSnapshots;
 import pro.gammel.thymewire.server.IndexController;
+import pro.gammel.thymewire.server.LiveReload;
+import pro.gammel.thymewire.server.OutputCache;
+import pro.gammel.thymewire.server.PreviewerServer;
+import pro.gammel.thymewire.server.PreviewerServerBuilder;
+import pro.gammel.thymewire.server.SpeculativeRenderer;
 import pro.gammel.thymewire.server.ResourceController;
+import pro.gammel.thymewire.server.SchedulerStatsHandler;
 import pro.gammel.thymewire.server.TemplateController;
+import pro.gammel.thymewire.tools.GenerateCommand;
+import pro.gammel.thymewire.tools.LoadTestCommand;
+import pro.gammel.thymewire.tools.ScaleCommand;
+import pro.gammel.thymewire.trace.TraceBuffer;
+import pro.gammel.thymewire.trace.TraceHandler;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static com.github.resource4j.objects.providers.ResourceObjectProviders.bind;
 import static com.github.resource4j.objects.providers.ResourceObjectProviders.filesIn;
@@ -17,7 +48,9 @@ import static com.github.resource4j.objects.providers.resolvers.DefaultObjectNam
 import static com.github.resource4j.resources.ResourcesConfigurationBuilder.configure;
 import static com.github.resource4j.resources.cache.Caches.never;
 import static com.github.resource4j.resources.processors.BasicValuePostProcessor.macroSubstitution;
+import static pro.gammel.thymewire.core.RendererBuilder.aRenderer;
 import static pro.gammel.thymewire.server.PreviewerServerBuilder.aPreviewServer;
+import static pro.gammel.thymewire.server.TemplateControllerBuilder.aTemplateController;
 
 /**
  * Main application class for the Thymewire.
@@ -28,6 +61,45 @@ public class Thymewire {
 
     private final SiteProvider site;
 
+    private boolean watch;
+
+    // Number of renders of every page in warm-up, null if warm-up is disabled
+    private Integer warmupRenders;
+
+    private Duration renderTimeout = Renderer.DEFAULT_TIMEOUT;
+
+    private Resources resources;
+
+    private Renderer renderer;
+
+    private LiveReload liveReload;
+
+    private SpeculativeRenderer speculativeRenderer;
+
+    private FileWatcher fileWatcher;
+
+    private PreviewerServer server;
+
+    // Listeners subscribed to the site by initialize(), detached on shutdown
+    private final List<SiteProvider.Listener> listeners = new ArrayList<>();
+
+    // Dependencies of the rendered pages, tracked only while changes are watched
+    private DependencyTracker dependencies;
+
+    private final RenderScheduler scheduler = new RenderScheduler();
+
+    private final Metrics metrics = new Metrics();
+
+    private final TraceBuffer traces = new TraceBuffer();
+
+    private String host = PreviewerServerBuilder.DEFAULT_HOST;
+
+    // Token of the admin endpoints, generated at startup unless given on the command line
+    private String adminToken;
+
+    private boolean adminRemote;
+
+    private AdminHandler admin;
 
     public Thymewire(Path launchDirectory) {
         this.site = new SiteProvider(launchDirectory);
@@ -39,10 +111,37 @@ public class Thymewire {
      * @param args command-line arguments:
      *             --port <port>  Port number (default: 8085)
      *             --dir <path>   Launch directory (default: current directory)
+     *             --watch        Watch project files and apply changes without restart
+     *             --warmup       Parse all templates before serving the first request
+     *             --warmup-renders <n>  Also render every page n times before serving (implies --warmup)
+     *             --render-timeout <ms>  Time limit of a single render (default: 10000)
+     *             --host <host>  Host name or address to bind the server to (default: localhost)
+     *             --admin-token <token>  Token of the admin endpoints (default: generated at startup)
+     *             --admin-remote  Accept admin requests from other hosts
+     *             or a command followed by its arguments:
+     *             scale <path> <array:size>...  Render the page with growing arrays and report the timings
+     *             generate [options] <dir>  Generate a synthetic project for benchmarks and load tests
+     *             loadtest [options]  Request every template variant and mapping concurrently and report latencies
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(ScaleCommand.NAME)) {
+            System.exit(new ScaleCommand().run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals(GenerateCommand.NAME)) {
+            System.exit(new GenerateCommand().run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+        if (args.length > 0 && args[0].equals(LoadTestCommand.NAME)) {
+            System.exit(new LoadTestCommand().run(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         Path launchDirectory = Paths.get(".");
         int port = 8085; // default port
+        boolean watch = false;
+        Integer warmupRenders = null;
+        Duration renderTimeout = Renderer.DEFAULT_TIMEOUT;
+        String host = PreviewerServerBuilder.DEFAULT_HOST;
+        String adminToken = null;
+        boolean adminRemote = false;
 
         // Parse command-line arguments
         for (int i = 0; i < args.length; i++) {
@@ -57,6 +156,34 @@ public class Thymewire {
             } else if (args[i].equals("--dir") && i + 1 < args.length) {
                 launchDirectory = Paths.get(args[i + 1]);
                 i++; // skip next argument
+            } else if (args[i].equals("--watch")) {
+                watch = true;
+            } else if (args[i].equals("--warmup")) {
+                warmupRenders = warmupRenders != null ? warmupRenders : 0;
+            } else if (args[i].equals("--warmup-renders") && i + 1 < args.length) {
+                try {
+                    warmupRenders = Math.max(0, Integer.parseInt(args[i + 1]));
+                    i++; // skip next argument
+                } catch (NumberFormatException e) {
+                    LOG.error("Invalid number of warm-up renders: {}", args[i + 1]);
+                    System.exit(1);
+                }
+            } else if (args[i].equals("--render-timeout") && i + 1 < args.length) {
+                try {
+                    renderTimeout = Duration.ofMillis(Math.max(1, Long.parseLong(args[i + 1])));
+                    i++; // skip next argument
+                } catch (NumberFormatException e) {
+                    LOG.error("Invalid render timeout: {}", args[i + 1]);
+                    System.exit(1);
+                }
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[i + 1];
+                i++; // skip next argument
+            } else if (args[i].equals("--admin-token") && i + 1 < args.length) {
+                adminToken = args[i + 1];
+                i++; // skip next argument
+            } else if (args[i].equals("--admin-remote")) {
+                adminRemote = true;
             } else if (!args[i].startsWith("--")) {
                 // For backward compatibility, treat first non-option argument as directory
                 launchDirectory = Paths.get(args[i]);
@@ -64,15 +191,39 @@ public class Thymewire {
         }
 
         Thymewire app = new Thymewire(launchDirectory);
+        app.watch = watch;
+        app.warmupRenders = warmupRenders;
+        app.renderTimeout = renderTimeout;
+        app.host = host;
+        app.adminToken = adminToken;
+        app.adminRemote = adminRemote;
         app.start(port);
     }
 
+    public SiteProvider site() {
+        return site;
+    }
+
     /**
-     * Starts the previewer server.
+     * Returns the dependencies of the pages rendered recently, or null if changes are not watched.
+     */
+    public DependencyTracker dependencies() {
+        return dependencies;
+    }
+
+    /**
+     * Returns the renderer of the templates, created by {@link #initialize()}.
+     */
+    public Renderer renderer() {
+        return renderer;
+    }
+
+    /**
+     * Loads the site and creates the services used to render it.
      *
-     * @param port the port to run the server on
+     * @return the controller rendering the pages
      */
-    public void start(int port) {
+    public TemplateController initialize() {
         this.site.load();
         var config =  site.config();
         var basePath = filesIn(this.site.basePath().toFile()).with(javaPropertiesLocaleResolver());
@@ -84,14 +235,165 @@ public class Thymewire {
                 .cacheValues(never())
                 .postProcessingBy(macroSubstitution())
                 .get();
-        var resources = new RefreshableResources(configuration);
+        this.resources = new RefreshableResources(configuration);
+
+        var components = new ComponentRegistry(site);
+        components.load();
+        subscribe(components);
+        var messages = new MessageCache(site);
+        subscribe(messages);
+        var mapper = new ObjectMapper().findAndRegisterModules();
+        var snapshots = new ModelSnapshots(site, mapper);
+        snapshots.compileAll();
+        subscribe(snapshots);
+
+        // Component instances are recorded only for hot swap in live reload
+        var instances = watch ? new ComponentInstances() : null;
+        dependencies = watch ? new DependencyTracker() : null;
+        renderer = aRenderer().with(resources)
+                .components(components)
+                .messages(messages)
+                .dependencies(dependencies)
+                .instances(instances)
+                .timeout(renderTimeout)
+                .build();
+        // Rendered pages can be cached only while changes are watched
+        OutputCache outputCache = null;
+        if (watch) {
+            liveReload = new LiveReload(site, dependencies, renderer, instances, scheduler);
+            subscribe(liveReload);
+            outputCache = new OutputCache(site, dependencies);
+            subscribe(outputCache);
+        }
+        var models = new ModelReader(site, mapper, snapshots);
+        var controller = aTemplateController(site)
+                .renderer(renderer)
+                .mapper(mapper)
+                .models(models)
+                .dependencies(dependencies)
+                .liveReload(liveReload)
+                .outputCache(outputCache)
+                .scheduler(scheduler)
+                .metrics(metrics)
+                .build();
+        if (liveReload != null) {
+            liveReload.contexts(controller::context);
+        }
+        registerGauges(outputCache);
+        if (adminToken == null) {
+            adminToken = AdminHandler.generateToken();
+            // Printed to the console only, so that the token does not end up in collected logs
+            System.out.println("Admin endpoints at " + AdminHandler.PATH
+                    + " require the header \"Authorization: Bearer " + adminToken + "\"");
+        }
+        admin = new AdminHandler(adminToken, adminRemote);
+        if (outputCache != null) {
+            admin.cache("output", outputCache::size, outputCache::bytes);
+        }
+        admin.cache("models", models::compositions, null)
+                .cache("messages", messages::size, messages::bytes)
+                .cache("components", () -> components.components().size(), components::sourceBytes)
+                .cache("renderBuffers", renderer::pooledBuffers, renderer::pooledBufferBytes);
+        if (outputCache != null) {
+            speculativeRenderer = new SpeculativeRenderer(site, outputCache,
+                    (path, query) -> controller.render("GET", path, query, RenderScheduler.Priority.RELOAD));
+        }
+        if (warmupRenders != null) {
+            LOG.info("Warming up templates");
+            new Warmup(site, renderer, components,
+                    path -> controller.render("GET", path, Map.of(), RenderScheduler.Priority.WARMUP), warmupRenders)
+                    .run();
+        }
+        return controller;
+    }
+
+    private void registerGauges(OutputCache outputCache) {
+        if (outputCache != null) {
+            metrics.gauge("output_cache_hit_ratio", "Ratio of page requests served from the output cache",
+                    outputCache::hitRatio);
+            metrics.gauge("output_cache_entries", "Pages in the output cache", outputCache::size);
+            metrics.gauge("output_cache_bytes", "Size of the pages in the output cache", outputCache::bytes);
+        }
+        for (var priority : RenderScheduler.Priority.values()) {
+            metrics.gauge("scheduler_queued", "Renders waiting for a slot by priority", "priority",
+                    priority.name().toLowerCase(), () -> scheduler.stats().get(priority).queued());
+        }
+        for (var priority : RenderScheduler.Priority.values()) {
+            metrics.gauge("scheduler_running", "Renders in progress by priority", "priority",
+                    priority.name().toLowerCase(), () -> scheduler.stats().get(priority).running());
+        }
+        for (var priority : RenderScheduler.Priority.values()) {
+            metrics.gauge("scheduler_wait_seconds_max", "Longest wait for a slot by priority", "priority",
+                    priority.name().toLowerCase(), () -> scheduler.stats().get(priority).maxWaitNanos() / 1e9);
+        }
+    }
+
+    /**
+     * Returns the metrics of the server.
+     */
+    public Metrics metrics() {
+        return metrics;
+    }
 
-        LOG.info("Running Thymewire server on http://localhost:{}", port);
-        var defaultController = new TemplateController(site, resources);
+    /**
+     * Starts the previewer server.
+     *
+     * @param port the port to run the server on
+     */
+    public void start(int port) {
+        var defaultController = initialize();
+        if (watch) {
+            fileWatcher = new FileWatcher(site);
+            fileWatcher.start(site.sourceDirectories());
+            LOG.info("Watching project files for changes");
+        }
+
+        LOG.info("Running Thymewire server on http://{}:{}", host, port);
         var indexController = new IndexController(site);
         var resourceController = new ResourceController(site, resources);
-        var server = aPreviewServer().on(port).serve(defaultController, indexController, resourceController).build();
+        var builder = aPreviewServer().host(host).on(port)
+                .serve(defaultController, indexController, resourceController)
+                .metrics(metrics)
+                .traces(traces);
+        // Diagnostics expose request paths and timings, so they are protected like the admin endpoints
+        builder.handle(SchedulerStatsHandler.PATH, admin.guard(new SchedulerStatsHandler(scheduler)));
+        builder.handle(MetricsHandler.PATH, admin.guard(new MetricsHandler(metrics)));
+        builder.handle(AdminHandler.PATH, admin);
+        builder.handle(TraceHandler.PATH, admin.guard(new TraceHandler(traces)));
+        if (liveReload != null) {
+            builder.handle(LiveReload.EVENTS_PATH, liveReload);
+        }
+        server = builder.build();
         server.start();
     }
 
+    /**
+     * Stops the server, the file watcher and the background renders, and detaches the services created by
+     * {@link #initialize()} from the site, e.g. between benchmark runs in one JVM.
+     */
+    public void shutdown() {
+        if (server != null) {
+            server.stop();
+            server = null;
+        }
+        if (fileWatcher != null) {
+            fileWatcher.stop();
+            fileWatcher = null;
+        }
+        if (speculativeRenderer != null) {
+            speculativeRenderer.stop();
+            speculativeRenderer = null;
+        }
+        if (liveReload != null) {
+            liveReload.stop();
+        }
+        listeners.forEach(site::unsubscribe);
+        listeners.clear();
+    }
+
+    private void subscribe(SiteProvider.Listener listener) {
+        site.subscribe(listener);
+        listeners.add(listener);
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,281 @@
+package pro.gammel.thymewire.admin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.text.ParseException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+
+/**
+ * Diagnostics of a running previewer, so that a slow shared server can be inspected without shell access:
+ * <ul>
+ *     <li>{@code /__thymewire/admin/jfr?duration=30&settings=profile} runs a Flight Recorder recording for the
+ *     given number of seconds with the "default" or "profile" settings and returns the recording file</li>
+ *     <li>{@code /__thymewire/admin/heap?top=20&live=false} returns heap usage, the classes with most bytes in
+ *     the heap and the memory held by the caches of the previewer as JSON; counting only live objects
+ *     requires a full garbage collection</li>
+ * </ul>
+ * Requests must carry the token generated at startup in the {@code Authorization: Bearer} header and,
+ * unless remote access is allowed, come from the local host. The same checks protect the other diagnostic
+ * endpoints exposing request data, see {@link #guard(HttpHandler)}.
+ */
+public class AdminHandler implements HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdminHandler.class);
+
+    public static final String PATH = "/__thymewire/admin";
+
+    public static final Duration DEFAULT_RECORDING = Duration.ofSeconds(30);
+
+    public static final Duration MAX_RECORDING = Duration.ofMinutes(5);
+
+    private static final int DEFAULT_TOP_CLASSES = 20;
+
+    /**
+     * Memory held by a cache.
+     *
+     * @param entries the number of cached entries
+     * @param bytes the size of the cached data, approximate for some caches, or null if unknown
+     */
+    public record CacheUsage(long entries, Long bytes) {}
+
+    private record Cache(LongSupplier entries, LongSupplier bytes) {
+
+        CacheUsage usage() {
+            return new CacheUsage(entries.getAsLong(), bytes != null ? bytes.getAsLong() : null);
+        }
+    }
+
+    private final byte[] token;
+
+    private final boolean allowRemote;
+
+    private final Map<String, Cache> caches = new LinkedHashMap<>();
+
+    private final AtomicBoolean recording = new AtomicBoolean();
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public AdminHandler(String token) {
+        this(token, false);
+    }
+
+    /**
+     * @param token the token expected in the requests
+     * @param allowRemote whether requests from other hosts are accepted
+     */
+    public AdminHandler(String token, boolean allowRemote) {
+        this.token = token.getBytes(StandardCharsets.UTF_8);
+        this.allowRemote = allowRemote;
+    }
+
+    /**
+     * Generates a random token for the admin endpoints.
+     */
+    public static String generateToken() {
+        var bytes = new byte[24];
+        new SecureRandom().nextBytes(bytes);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+    }
+
+    /**
+     * Reports the memory usage of the cache in the heap summary.
+     *
+     * @param name the name of the cache
+     * @param entries the number of cached entries
+     * @param bytes the size of the cached data, or null if it is not known
+     * @return this handler
+     */
+    public AdminHandler cache(String name, LongSupplier entries, LongSupplier bytes) {
+        caches.put(name, new Cache(entries, bytes));
+        return this;
+    }
+
+    /**
+     * Returns the handler serving only the requests that pass the checks of the admin endpoints.
+     *
+     * @param handler the handler of a diagnostic endpoint, e.g. metrics or request traces
+     */
+    public HttpHandler guard(HttpHandler handler) {
+        return exchange -> {
+            if (admitted(exchange)) {
+                handler.handle(exchange);
+            }
+        };
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!admitted(exchange)) {
+                return;
+            }
+            var path = exchange.getRequestURI().getPath().substring(PATH.length());
+            var query = query(exchange.getRequestURI().getRawQuery());
+            switch (path) {
+                case "/jfr" -> record(exchange, query);
+                case "/heap" -> heap(exchange, query);
+                default -> send(exchange, 404, "Unknown admin endpoint: " + path);
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, e.getMessage());
+        }
+    }
+
+    /**
+     * Checks the origin and the token of the request, answering it with an error if it is not admitted.
+     */
+    private boolean admitted(HttpExchange exchange) throws IOException {
+        if (!allowRemote && !exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+            LOG.warn("Admin request from {} rejected", exchange.getRemoteAddress());
+            send(exchange, 403, "Admin endpoints are available only from the local host");
+            return false;
+        }
+        if (!authorized(exchange)) {
+            exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+            send(exchange, 401, "Missing or invalid admin token");
+            return false;
+        }
+        return true;
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        var header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return false;
+        }
+        var provided = header.substring("Bearer ".length()).trim().getBytes(StandardCharsets.UTF_8);
+        return MessageDigest.isEqual(token, provided);
+    }
+
+    private void record(HttpExchange exchange, Map<String, String> query) throws IOException {
+        var duration = query.containsKey("duration")
+                ? Duration.ofSeconds(parseLong(query.get("duration"), "duration"))
+                : DEFAULT_RECORDING;
+        if (duration.isNegative() || duration.isZero() || duration.compareTo(MAX_RECORDING) > 0) {
+            throw new IllegalArgumentException("Recording duration must be between 1 and "
+                    + MAX_RECORDING.toSeconds() + " seconds");
+        }
+        var settings = query.getOrDefault("settings", "default");
+        Configuration configuration;
+        try {
+            configuration = Configuration.getConfiguration(settings);
+        } catch (ParseException | IOException e) {
+            throw new IllegalArgumentException("Unknown recording settings: " + settings);
+        }
+        if (!recording.compareAndSet(false, true)) {
+            send(exchange, 409, "Another recording is in progress");
+            return;
+        }
+        var file = Files.createTempFile("thymewire-", ".jfr");
+        try (var jfr = new Recording(configuration)) {
+            jfr.setName("thymewire-admin");
+            LOG.info("Recording flight for {} s with {} settings", duration.toSeconds(), settings);
+            jfr.start();
+            Thread.sleep(duration);
+            jfr.stop();
+            jfr.dump(file);
+            var name = "thymewire-" + LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss"))
+                    + ".jfr";
+            exchange.getResponseHeaders().set("Content-Type", "application/octet-stream");
+            exchange.getResponseHeaders().set("Content-Disposition", "attachment; filename=\"" + name + "\"");
+            exchange.sendResponseHeaders(200, Files.size(file));
+            try (var out = exchange.getResponseBody()) {
+                Files.copy(file, out);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            send(exchange, 503, "Recording interrupted");
+        } finally {
+            recording.set(false);
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private void heap(HttpExchange exchange, Map<String, String> query) throws IOException {
+        var top = query.containsKey("top") ? (int) parseLong(query.get("top"), "top") : DEFAULT_TOP_CLASSES;
+        var live = Boolean.parseBoolean(query.get("live"));
+        var result = new LinkedHashMap<String, Object>();
+        var memory = ManagementFactory.getMemoryMXBean();
+        result.put("heap", usage(memory.getHeapMemoryUsage()));
+        result.put("nonHeap", usage(memory.getNonHeapMemoryUsage()));
+        var cacheUsage = new LinkedHashMap<String, CacheUsage>();
+        caches.forEach((name, cache) -> cacheUsage.put(name, cache.usage()));
+        result.put("caches", cacheUsage);
+        try {
+            result.put("histogram", ClassHistogram.take(live, Math.max(0, top)));
+        } catch (JMException e) {
+            LOG.warn("Class histogram is not available: {}", e.getMessage());
+            result.put("histogram", null);
+        }
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        var body = mapper.writeValueAsBytes(result);
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, Long> usage(MemoryUsage usage) {
+        var result = new LinkedHashMap<String, Long>();
+        result.put("used", usage.getUsed());
+        result.put("committed", usage.getCommitted());
+        result.put("max", usage.getMax());
+        return result;
+    }
+
+    private static long parseLong(String value, String name) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        var result = new HashMap<String, String>();
+        if (rawQuery == null) {
+            return result;
+        }
+        for (var pair : rawQuery.split("&")) {
+            var separator = pair.indexOf('=');
+            if (separator > 0) {
+                result.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return result;
+    }
+
+    private static void send(HttpExchange exchange, int status, String message) throws IOException {
+        var body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package pro.gammel.thymewire.admin;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Class histogram of the heap, as printed by {@code jcmd <pid> GC.class_histogram}.
+ *
+ * @param classes the classes with most bytes, in descending order
+ * @param instances total number of instances in the heap
+ * @param bytes total size of the instances
+ */
+public record ClassHistogram(List<Entry> classes, long instances, long bytes) {
+
+    /**
+     * Instances of one class.
+     */
+    public record Entry(String className, long instances, long bytes) {}
+
+    private static final ObjectName DIAGNOSTIC_COMMAND = objectName("com.sun.management:type=DiagnosticCommand");
+
+    private static final Pattern ROW = Pattern.compile("^\\s*\\d+:\\s+(\\d+)\\s+(\\d+)\\s+(\\S+)");
+
+    private static final Pattern TOTAL = Pattern.compile("^Total\\s+(\\d+)\\s+(\\d+)");
+
+    /**
+     * Takes the class histogram of the heap.
+     *
+     * @param live whether to count only reachable objects, which requires a full garbage collection
+     * @param limit the maximal number of classes to return
+     * @return the histogram
+     * @throws JMException if the diagnostic command is not available in this JVM
+     */
+    public static ClassHistogram take(boolean live, int limit) throws JMException {
+        var arguments = live ? new String[0] : new String[]{"-all"};
+        var output = (String) ManagementFactory.getPlatformMBeanServer().invoke(DIAGNOSTIC_COMMAND,
+                "gcClassHistogram", new Object[]{arguments}, new String[]{String[].class.getName()});
+        return parse(output, limit);
+    }
+
+    /**
+     * Parses the output of the class histogram command. Rows are sorted by bytes in the output.
+     */
+    static ClassHistogram parse(String output, int limit) {
+        var classes = new ArrayList<Entry>();
+        long instances = 0;
+        long bytes = 0;
+        for (var line : output.split("\n")) {
+            var row = ROW.matcher(line);
+            if (row.find()) {
+                if (classes.size() < limit) {
+                    classes.add(new Entry(row.group(3), Long.parseLong(row.group(1)), Long.parseLong(row.group(2))));
+                }
+                continue;
+            }
+            var total = TOTAL.matcher(line);
+            if (total.find()) {
+                instances = Long.parseLong(total.group(1));
+                bytes = Long.parseLong(total.group(2));
+            }
+        }
+        return new ClassHistogram(List.copyOf(classes), instances, bytes);
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (JMException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -13,6 +13,9 @@ import java.util.List;
  * @param test the location of template models (default: "src/test/resources/templates")
  * @param mappings list of URL mapping configurations
  * @param modelSelector the query parameter name for model selection (default: "__preview_model")
+ * @param cache the location of compiled caches like model snapshots (default: not set, nothing is cached on disk)
+ * @param lazyModelThreshold the size of model file in bytes, starting from which the model is parsed lazily
+ *                           (default: not set, all models are parsed completely)
  */
 public record SiteConfig(
     String index,
@@ -22,7 +25,9 @@ public record SiteConfig(
     String resources,
     String test,
     List<Mapping> mappings,
-    @JsonProperty("model_selector") String modelSelector
+    @JsonProperty("model_selector") String modelSelector,
+    String cache,
+    @JsonProperty("lazy_model_threshold") Long lazyModelThreshold
 ) implements SpecBased {
 
     /**
@@ -30,6 +35,22 @@ public record SiteConfig(
      */
     public static final String DEFAULT_MODEL_SELECTOR = "__preview_model";
 
+    /**
+     * Query parameter selecting the fragment of the template to render, e.g. "content".
+     */
+    public static final String FRAGMENT_PARAMETER = "__preview_fragment";
+
+    /**
+     * Query parameter scaling model arrays, e.g. "items:10000".
+     */
+    public static final String SCALE_PARAMETER = "__preview_scale";
+
+    /**
+     * Query parameter enabling the profiling of the request: "1" adds Server-Timing headers to the page,
+     * "html" and "json" return the profile instead of the page.
+     */
+    public static final String PROFILE_PARAMETER = "__preview_profile";
+
     public String src() {
         return src != null ? src : "src/main/resources";
     }
@@ -58,7 +79,9 @@ public record SiteConfig(
             null, // resources defaults to same as src
             null,
             List.of(),
-            DEFAULT_MODEL_SELECTOR
+            DEFAULT_MODEL_SELECTOR,
+            null,
+            null
         );
     }
 
@@ -78,6 +101,9 @@ public record SiteConfig(
         if (modelSelector != null) {
             new Variable(modelSelector).validate("model_selector", errors);
         }
+        if (lazyModelThreshold != null && lazyModelThreshold < 0) {
+            errors.add("lazy_model_threshold must not be negative");
+        }
         if (mappings != null) {
             for (var i = 0; i < mappings.size(); i++) {
                 var mapping = mappings.get(i);
@@ -0,0 +1,197 @@
+package pro.gammel.thymewire.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.discovery.ComponentInfo;
+import pro.gammel.thymewire.discovery.ComponentLoader;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Index of the components available in the project. Components are discovered at startup and kept in memory
+ * together with their sources, so that existence checks and template resolution do not touch the file system.
+ * The registry also tracks which components are used by pages, layouts and other components and updates
+ * itself incrementally when the site reports changes.
+ */
+public class ComponentRegistry implements SiteProvider.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ComponentRegistry.class);
+
+    /**
+     * Usage report of the components.
+     *
+     * @param unused components not referenced by any page, layout or other component
+     * @param missing referenced components that do not exist, mapped to the names of referencing templates
+     * @param withoutContent components that do not declare the content fragment
+     */
+    public record Report(Set<String> unused, Map<String, Set<String>> missing, Set<String> withoutContent) {
+
+        public boolean isClean() {
+            return missing.isEmpty() && withoutContent.isEmpty();
+        }
+    }
+
+    private final SiteProvider site;
+
+    private final ComponentLoader loader = new ComponentLoader();
+
+    // Replaced as a whole on reload, so that renders never see a partially loaded registry
+    private volatile Map<String, ComponentInfo> components = new ConcurrentHashMap<>();
+
+    // Components referenced by pages and layouts, by template name
+    private volatile Map<String, Set<String>> usages = new ConcurrentHashMap<>();
+
+    public ComponentRegistry(SiteProvider site) {
+        this.site = site;
+    }
+
+    /**
+     * Indexes all components and their usages in pages and layouts.
+     */
+    public void load() {
+        var components = new ConcurrentHashMap<String, ComponentInfo>();
+        var usages = new ConcurrentHashMap<String, Set<String>>();
+        var componentsPath = site.componentsPath();
+        for (var component : loader.discoverComponents(componentsPath)) {
+            components.put(component.name(), component);
+        }
+        for (var template : site.templates().values()) {
+            scanUsages(usages, template.name(), template.path());
+        }
+        try (Stream<Path> paths = Files.list(layoutsPath())) {
+            paths.filter(path -> path.toString().endsWith(".html"))
+                 .forEach(path -> scanUsages(usages, layoutName(path), path));
+        } catch (IOException e) {
+            LOG.debug("No layouts scanned for components: {}", e.getMessage());
+        }
+        this.components = components;
+        this.usages = usages;
+        LOG.info("- {} components discovered", components.size());
+        logReport();
+    }
+
+    /**
+     * Checks if the component exists.
+     *
+     * @param name component template name, e.g. "forms/input-c"
+     * @return true if the component is registered
+     */
+    public boolean exists(String name) {
+        return components.containsKey(name);
+    }
+
+    /**
+     * Returns the registered component.
+     *
+     * @param name component template name, e.g. "forms/input-c"
+     * @return the component or null if it is not registered
+     */
+    public ComponentInfo get(String name) {
+        return components.get(name);
+    }
+
+    /**
+     * Returns the approximate size of the component sources kept in memory, one byte per character.
+     */
+    public long sourceBytes() {
+        return components.values().stream().mapToLong(component -> component.source().length()).sum();
+    }
+
+    public Collection<ComponentInfo> components() {
+        return Collections.unmodifiableCollection(components.values());
+    }
+
+    public Report report() {
+        var components = this.components;
+        var used = new HashSet<String>();
+        var missing = new TreeMap<String, Set<String>>();
+        usages.forEach((template, references) -> collect(components, template, references, used, missing));
+        components.values().forEach(component ->
+                collect(components, component.name(), component.references(), used, missing));
+
+        var unused = new TreeSet<>(components.keySet());
+        unused.removeAll(used);
+        var withoutContent = new TreeSet<String>();
+        components.values().stream()
+                .filter(component -> !component.hasContentFragment())
+                .forEach(component -> withoutContent.add(component.name()));
+        return new Report(unused, missing, withoutContent);
+    }
+
+    private static void collect(Map<String, ComponentInfo> components, String template, Set<String> references,
+                                Set<String> used, Map<String, Set<String>> missing) {
+        for (var reference : references) {
+            if (components.containsKey(reference)) {
+                used.add(reference);
+            } else {
+                missing.computeIfAbsent(reference, k -> new TreeSet<>()).add(template);
+            }
+        }
+    }
+
+    private void logReport() {
+        var report = report();
+        report.missing().forEach((component, templates) ->
+                LOG.warn("Component '{}' is used in {} but does not exist", component, templates));
+        report.withoutContent().forEach(component ->
+                LOG.warn("Component '{}' does not declare th:fragment=\"content\"", component));
+        if (!report.unused().isEmpty()) {
+            LOG.info("- {} components are not used: {}", report.unused().size(), report.unused());
+        }
+    }
+
+    @Override
+    public void configUpdated(SiteConfig config) {
+        load();
+    }
+
+    @Override
+    public void templateUpdated(String template) {
+        if (template.startsWith("layouts/")) {
+            scanUsages(usages, template, layoutsPath().resolve(template.substring("layouts/".length()) + ".html"));
+        } else {
+            var info = site.templates().get(template);
+            if (info != null) {
+                scanUsages(usages, template, info.path());
+            } else {
+                usages.remove(template);
+            }
+        }
+    }
+
+    @Override
+    public void componentUpdated(String component) {
+        var componentsPath = site.componentsPath();
+        var updated = loader.loadComponent(componentsPath, componentsPath.resolve(component + ".html"));
+        if (updated.isPresent()) {
+            LOG.debug("Component '{}' updated", component);
+            components.put(component, updated.get());
+        } else {
+            LOG.info("Component '{}' removed", component);
+            components.remove(component);
+        }
+    }
+
+    private void scanUsages(Map<String, Set<String>> usages, String template, Path path) {
+        try {
+            usages.put(template, loader.findReferences(Files.readString(path)));
+        } catch (IOException e) {
+            usages.remove(template);
+        }
+    }
+
+    private Path layoutsPath() {
+        return site.basePath().resolve(site.config().src()).resolve("templates/layouts");
+    }
+
+    private static String layoutName(Path path) {
+        var fileName = path.getFileName().toString();
+        return "layouts/" + fileName.substring(0, fileName.length() - ".html".length());
+    }
+}
@@ -0,0 +1,57 @@
+package pro.gammel.thymewire.core;
+
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.core.DependencyTracker.Dependency;
+
+/**
+ * Listener translating the changes reported by the site into the dependencies recorded by
+ * {@link DependencyTracker}, so that the pages affected by a change can be found.
+ */
+public abstract class DependencyChangeListener implements SiteProvider.Listener {
+
+    private final SiteProvider site;
+
+    protected DependencyChangeListener(SiteProvider site) {
+        this.site = site;
+    }
+
+    /**
+     * Called when the file, template or message bundle changes.
+     */
+    protected abstract void changed(Dependency dependency);
+
+    /**
+     * Called when the change may affect any page, e.g. of the site configuration.
+     */
+    protected abstract void changedAll();
+
+    @Override
+    public void configUpdated(SiteConfig config) {
+        changedAll();
+    }
+
+    @Override
+    public void templateUpdated(String template) {
+        changed(Dependency.template(template));
+    }
+
+    @Override
+    public void modelUpdated(String template, String model) {
+        changed(Dependency.model(site.modelPath(template, model)));
+    }
+
+    @Override
+    public void componentUpdated(String component) {
+        changed(Dependency.template(component));
+    }
+
+    @Override
+    public void messagesUpdated(String bundle) {
+        changed(Dependency.messages(bundle));
+    }
+
+    @Override
+    public void refreshRequired() {
+        changedAll();
+    }
+}
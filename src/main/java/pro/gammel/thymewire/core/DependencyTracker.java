@@ -0,0 +1,250 @@
+package pro.gammel.thymewire.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Records which templates, components, layouts, model files and message bundles every page depends on and keeps
+ * a reverse index from each dependency to the pages using it. Dependencies are recorded on the rendering thread
+ * between {@link #begin(String)} and {@link Recording#close()} by the template resolver, message resolver and
+ * model loading.
+ * <p>
+ * Parsed templates are cached by Thymeleaf per including template, so an inclusion is reported by the template
+ * resolver only on the first render that needs it. Inclusions are therefore kept in a separate graph and the
+ * templates used by a page are completed from this graph when the recording is closed. The graph is never pruned,
+ * so a page may still be listed as dependent on a template it no longer includes.
+ * <p>
+ * Page keys include the query, so only the most recently rendered pages are kept; the others are forgotten and
+ * reported to the listeners of {@link #onForget}, e.g. the output cache, which cannot invalidate them anymore.
+ */
+public class DependencyTracker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DependencyTracker.class);
+
+    // Number of pages, whose dependencies are kept
+    private static final int MAX_PAGES = 256;
+
+    public enum Kind {
+        TEMPLATE, COMPONENT, LAYOUT, MODEL, MESSAGES
+    }
+
+    /**
+     * Dependency of a page.
+     *
+     * @param kind the kind of the dependency
+     * @param name template name, e.g. "start/login", "forms/input-c" or "layouts/main", absolute path of the model
+     *             file or message bundle name, e.g. "pages.start.login"
+     */
+    public record Dependency(Kind kind, String name) {
+
+        /**
+         * Creates the dependency on the template, distinguishing pages, components and layouts by name.
+         */
+        public static Dependency template(String template) {
+            if (template.endsWith("-c")) {
+                return new Dependency(Kind.COMPONENT, template);
+            }
+            return new Dependency(template.startsWith("layouts/") ? Kind.LAYOUT : Kind.TEMPLATE, template);
+        }
+
+        public static Dependency model(Path file) {
+            return new Dependency(Kind.MODEL, file.toAbsolutePath().normalize().toString());
+        }
+
+        public static Dependency messages(String bundle) {
+            return new Dependency(Kind.MESSAGES, bundle);
+        }
+
+        boolean isTemplate() {
+            return kind == Kind.TEMPLATE || kind == Kind.COMPONENT || kind == Kind.LAYOUT;
+        }
+
+        @Override
+        public String toString() {
+            return kind.name().toLowerCase() + ":" + name;
+        }
+    }
+
+    /**
+     * Dependencies recorded for a page on the current thread.
+     */
+    public final class Recording implements AutoCloseable {
+
+        private final String page;
+
+        private final Recording outer;
+
+        private final Set<Dependency> recorded = new HashSet<>();
+
+        private Recording(String page, Recording outer) {
+            this.page = page;
+            this.outer = outer;
+        }
+
+        /**
+         * Stops recording and replaces the dependencies of the page with the recorded ones.
+         */
+        @Override
+        public void close() {
+            if (outer != null) {
+                current.set(outer);
+            } else {
+                current.remove();
+            }
+            commit(page, recorded);
+        }
+    }
+
+    private final ThreadLocal<Recording> current = new ThreadLocal<>();
+
+    // Templates included by each template, as reported by the template resolver
+    private final Map<String, Set<String>> inclusions = new ConcurrentHashMap<>();
+
+    private final Map<String, Set<Dependency>> dependencies = new ConcurrentHashMap<>();
+
+    private final Map<Dependency, Set<String>> dependents = new ConcurrentHashMap<>();
+
+    // Guarded by this, pages in the order of their last render
+    private final LinkedHashMap<String, Boolean> recent = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final List<Consumer<String>> forgetListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Starts recording dependencies of the page on the current thread.
+     *
+     * @param page the page key, see {@link pro.gammel.thymewire.server.TemplateController#pageKey}
+     * @return the recording to close when the page is rendered
+     */
+    public Recording begin(String page) {
+        var recording = new Recording(page, current.get());
+        current.set(recording);
+        return recording;
+    }
+
+    /**
+     * Records the dependency of the page being rendered on the current thread, if any.
+     */
+    public void record(Dependency dependency) {
+        var recording = current.get();
+        if (recording != null) {
+            recording.recorded.add(dependency);
+        }
+    }
+
+    /**
+     * Records that the template was resolved for inclusion into the owner template.
+     *
+     * @param owner the including template or null for the rendered template itself
+     * @param template the resolved template
+     */
+    public void resolved(String owner, String template) {
+        if (owner != null && !owner.equals(template)) {
+            inclusions.computeIfAbsent(owner, k -> ConcurrentHashMap.newKeySet()).add(template);
+        }
+        record(Dependency.template(template));
+    }
+
+    /**
+     * Returns the dependencies of the page recorded at its last render.
+     *
+     * @param page the page key
+     * @return the dependencies, empty if the page was not rendered yet
+     */
+    public Set<Dependency> dependencies(String page) {
+        return dependencies.getOrDefault(page, Set.of());
+    }
+
+    /**
+     * Returns the pages that depend on the given file, template or bundle.
+     *
+     * @param dependency the dependency
+     * @return the page keys
+     */
+    public Set<String> dependents(Dependency dependency) {
+        var pages = dependents.get(dependency);
+        return pages != null ? Set.copyOf(pages) : Set.of();
+    }
+
+    /**
+     * Returns the keys of all pages with recorded dependencies.
+     */
+    public Set<String> pages() {
+        return Collections.unmodifiableSet(dependencies.keySet());
+    }
+
+    /**
+     * Subscribes to the pages forgotten by the index.
+     */
+    public void onForget(Consumer<String> listener) {
+        forgetListeners.add(listener);
+    }
+
+    /**
+     * Removes the page from the index.
+     */
+    public void forget(String page) {
+        synchronized (this) {
+            recent.remove(page);
+            var removed = dependencies.remove(page);
+            if (removed == null) {
+                return;
+            }
+            unindex(page, removed);
+        }
+        forgetListeners.forEach(listener -> listener.accept(page));
+    }
+
+    private void commit(String page, Set<Dependency> recorded) {
+        var complete = new HashSet<>(recorded);
+        var pending = new ArrayDeque<String>();
+        recorded.stream().filter(Dependency::isTemplate).forEach(dependency -> pending.add(dependency.name()));
+        while (!pending.isEmpty()) {
+            var included = inclusions.get(pending.poll());
+            if (included != null) {
+                for (var template : included) {
+                    if (complete.add(Dependency.template(template))) {
+                        pending.add(template);
+                    }
+                }
+            }
+        }
+        String eldest = null;
+        synchronized (this) {
+            recent.put(page, Boolean.TRUE);
+            if (recent.size() > MAX_PAGES) {
+                eldest = recent.keySet().iterator().next();
+            }
+            if (!complete.equals(dependencies.get(page))) {
+                var previous = dependencies.put(page, Set.copyOf(complete));
+                if (previous != null) {
+                    unindex(page, previous);
+                }
+                for (var dependency : complete) {
+                    dependents.computeIfAbsent(dependency, k -> ConcurrentHashMap.newKeySet()).add(page);
+                }
+                LOG.debug("Page {} depends on {}", page, complete);
+            }
+        }
+        if (eldest != null) {
+            forget(eldest);
+        }
+    }
+
+    private void unindex(String page, Set<Dependency> previous) {
+        for (var dependency : previous) {
+            var pages = dependents.get(dependency);
+            if (pages != null) {
+                pages.remove(page);
+                if (pages.isEmpty()) {
+                    dependents.remove(dependency);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package pro.gammel.thymewire.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches project directories recursively and reports every changed file to {@link SiteProvider#fileUpdated(Path)}.
+ */
+public class FileWatcher implements Runnable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final SiteProvider site;
+
+    private final WatchService watchService;
+
+    private final Set<Path> roots = ConcurrentHashMap.newKeySet();
+
+    private Thread thread;
+
+    public FileWatcher(SiteProvider site) {
+        this.site = site;
+        try {
+            this.watchService = FileSystems.getDefault().newWatchService();
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create file watch service", e);
+        }
+    }
+
+    /**
+     * Starts watching given directories and all their subdirectories in a background daemon thread.
+     * The project directory itself is watched non-recursively to pick up changes of the site configuration.
+     *
+     * @param directories root directories to watch
+     */
+    public void start(Collection<Path> directories) {
+        register(site.basePath().toAbsolutePath().normalize());
+        for (var directory : directories) {
+            var root = directory.toAbsolutePath().normalize();
+            roots.add(root);
+            registerRecursively(root);
+        }
+        thread = Thread.ofPlatform().name("thymewire-file-watcher").daemon().start(this);
+    }
+
+    public void stop() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close file watch service: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            var directory = (Path) key.watchable();
+            for (var event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    LOG.warn("File change events lost in {}, full refresh required", directory);
+                    try {
+                        site.reload();
+                    } catch (RuntimeException e) {
+                        LOG.error("Failed to reload project after lost events", e);
+                    }
+                    continue;
+                }
+                var path = directory.resolve((Path) event.context());
+                if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+                    if (roots.stream().anyMatch(path::startsWith)) {
+                        registerRecursively(path);
+                    }
+                    continue;
+                }
+                if (Files.isDirectory(path)) {
+                    continue;
+                }
+                LOG.debug("File {}: {}", event.kind().name(), path);
+                try {
+                    site.fileUpdated(path);
+                } catch (RuntimeException e) {
+                    LOG.error("Failed to process update of {}", path, e);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void registerRecursively(Path root) {
+        if (!Files.isDirectory(root)) {
+            LOG.debug("Not watching {}: directory does not exist", root);
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isDirectory).forEach(this::register);
+        } catch (IOException e) {
+            LOG.warn("Failed to watch {}: {}", root, e.getMessage());
+        }
+    }
+
+    private void register(Path directory) {
+        try {
+            directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+        } catch (IOException e) {
+            LOG.warn("Failed to watch {}: {}", directory, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package pro.gammel.thymewire.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.config.SiteConfig;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * Cache of resolved messages. Messages are stored per bundle and locale as flat immutable maps, loaded as a whole
+ * on the first lookup in the bundle, so that a page does not re-read message files on every lookup. Keys used in
+ * templates are resolved to full message keys once per template. When a message file changes, the maps of
+ * the bundle stored in that file are dropped, so that lookups never see a mix of old and new messages.
+ * <p>
+ * The bundle of a message is the part of the key before the last dot, e.g. "pages.start.login" for
+ * "pages.start.login.title", which is stored in "pages/start/login.properties" and its locale variants.
+ * Messages referring to other messages with macros, e.g. "{pages.common.title}", are resolved by the loader
+ * of single messages when the bundle is loaded.
+ */
+public class MessageCache implements SiteProvider.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageCache.class);
+
+    private record BundleKey(String bundle, Locale locale) {}
+
+    private final SiteProvider site;
+
+    private final Map<String, Map<String, String>> keysByTemplate = new ConcurrentHashMap<>();
+
+    private final Map<BundleKey, Map<String, String>> bundles = new ConcurrentHashMap<>();
+
+    public MessageCache(SiteProvider site) {
+        this.site = site;
+    }
+
+    /**
+     * Returns the full message key for the key used in the template, resolving it once per template.
+     *
+     * @param template the name of the template
+     * @param key the key as used in the template
+     * @param resolver function computing the full key from template and key
+     * @return the full message key
+     */
+    public String key(String template, String key, BiFunction<String, String, String> resolver) {
+        var keys = keysByTemplate.get(template);
+        if (keys == null) {
+            keys = keysByTemplate.computeIfAbsent(template, t -> new ConcurrentHashMap<>());
+        }
+        var resolved = keys.get(key);
+        if (resolved == null) {
+            resolved = resolver.apply(template, key);
+            keys.put(key, resolved);
+        }
+        return resolved;
+    }
+
+    /**
+     * Returns the message from the cache, loading its bundle for the locale if it is not cached.
+     *
+     * @param key the full message key
+     * @param locale the locale of the message
+     * @param loader function loading a single message with macros resolved, may return null for absent messages
+     * @return the message or null if it does not exist
+     */
+    public String message(String key, Locale locale, Function<String, String> loader) {
+        var separator = key.lastIndexOf('.');
+        var bundleKey = new BundleKey(bundle(key), locale);
+        var id = separator < 0 ? key : key.substring(separator + 1);
+
+        var bundle = bundles.get(bundleKey);
+        if (bundle == null) {
+            bundle = bundles.computeIfAbsent(bundleKey, k -> load(k, loader));
+        }
+        return bundle.get(id);
+    }
+
+    private Map<String, String> load(BundleKey key, Function<String, String> loader) {
+        var properties = new Properties();
+        for (var file : site.messageFiles(key.bundle(), key.locale())) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                LOG.warn("Failed to read messages from {}: {}", file, e.getMessage());
+            }
+        }
+        var prefix = key.bundle().isEmpty() ? "" : key.bundle() + ".";
+        var messages = new HashMap<String, String>();
+        for (var id : properties.stringPropertyNames()) {
+            var value = properties.getProperty(id);
+            if (value.indexOf('{') >= 0) {
+                value = loader.apply(prefix + id);
+            }
+            if (value != null) {
+                messages.put(id, value);
+            }
+        }
+        LOG.debug("Message bundle '{}' loaded for locale '{}' with {} messages", key.bundle(), key.locale(),
+                messages.size());
+        return Map.copyOf(messages);
+    }
+
+    /**
+     * Returns the bundle of the message, e.g. "pages.start.login" for "pages.start.login.title".
+     *
+     * @param key the full message key
+     * @return the bundle name, empty for keys without bundle
+     */
+    public static String bundle(String key) {
+        var separator = key.lastIndexOf('.');
+        return separator < 0 ? "" : key.substring(0, separator);
+    }
+
+    /**
+     * Evicts all cached locales of the bundle.
+     *
+     * @param bundle the bundle name, e.g. "pages.start.login"
+     */
+    public void invalidate(String bundle) {
+        bundles.keySet().removeIf(key -> key.bundle().equals(bundle));
+        LOG.debug("Message bundle '{}' evicted from cache", bundle);
+    }
+
+    /**
+     * Returns the number of cached messages in all bundles and locales.
+     */
+    public long size() {
+        return bundles.values().stream().mapToLong(Map::size).sum();
+    }
+
+    /**
+     * Returns the approximate size of the cached messages, counting one byte per character of ids and values.
+     */
+    public long bytes() {
+        long bytes = 0;
+        for (var bundle : bundles.values()) {
+            for (var entry : bundle.entrySet()) {
+                bytes += entry.getKey().length() + entry.getValue().length();
+            }
+        }
+        return bytes;
+    }
+
+    public void invalidateAll() {
+        bundles.clear();
+        keysByTemplate.clear();
+    }
+
+    @Override
+    public void messagesUpdated(String bundle) {
+        invalidate(bundle);
+    }
+
+    @Override
+    public void configUpdated(SiteConfig config) {
+        invalidateAll();
+    }
+}
@@ -0,0 +1,204 @@
+package pro.gammel.thymewire.core;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Admits renders to the processors by priority. Every priority has its own limit of concurrent renders, and
+ * all of them share the limit of the scheduler, one slot of which is reserved for interactive requests. When
+ * a slot is freed, it is given to the oldest waiting render of the highest priority, so interactive requests
+ * overtake background work at the boundaries of its tasks. Running renders are never interrupted, and renders
+ * not admitted within their waiting time are rejected.
+ * <p>
+ * A render started within a render admitted on the same thread runs in the slot of the outer one.
+ */
+public class RenderScheduler {
+
+    /**
+     * Priorities of renders, from the highest.
+     */
+    public enum Priority {
+        /**
+         * Pages requested by the browser.
+         */
+        INTERACTIVE,
+        /**
+         * Hot swap of components and speculative re-renders after changes.
+         */
+        RELOAD,
+        /**
+         * Renders of the warm-up at startup.
+         */
+        WARMUP,
+        /**
+         * Command line tools rendering many pages.
+         */
+        BATCH
+    }
+
+    /**
+     * Statistics of one priority.
+     *
+     * @param queued renders waiting for a slot
+     * @param running renders in progress
+     * @param completed renders completed since the start
+     * @param totalWaitNanos sum of the waiting times of the admitted renders
+     * @param maxWaitNanos longest waiting time of an admitted render
+     */
+    public record Stats(int queued, int running, long completed, long totalWaitNanos, long maxWaitNanos) {
+
+        /**
+         * Returns the average waiting time of the admitted renders in milliseconds.
+         */
+        public double averageWaitMillis() {
+            long admitted = completed + running;
+            return admitted == 0 ? 0 : totalWaitNanos / 1e6 / admitted;
+        }
+    }
+
+    private static final class Lane {
+
+        private final int limit;
+        private final Queue<Thread> waiting = new ArrayDeque<>();
+        private int running;
+        private long completed;
+        private long totalWaitNanos;
+        private long maxWaitNanos;
+
+        Lane(int limit) {
+            this.limit = limit;
+        }
+    }
+
+    private final int slots;
+
+    private final Map<Priority, Lane> lanes = new EnumMap<>(Priority.class);
+
+    // Guarded by this
+    private int running;
+
+    private final ThreadLocal<Priority> admitted = new ThreadLocal<>();
+
+    /**
+     * Creates the scheduler with a slot per processor.
+     */
+    public RenderScheduler() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Creates the scheduler with the given number of slots. Interactive requests can use all slots, reloads half
+     * of them, warm-up and batch renders a quarter, and background renders together leave one slot free.
+     *
+     * @param slots the number of concurrent renders
+     */
+    public RenderScheduler(int slots) {
+        this.slots = Math.max(2, slots);
+        lanes.put(Priority.INTERACTIVE, new Lane(this.slots));
+        lanes.put(Priority.RELOAD, new Lane(Math.max(1, this.slots / 2)));
+        lanes.put(Priority.WARMUP, new Lane(Math.max(1, this.slots / 4)));
+        lanes.put(Priority.BATCH, new Lane(Math.max(1, this.slots / 4)));
+    }
+
+    /**
+     * Runs the render once a slot is available for its priority.
+     *
+     * @param priority the priority of the render
+     * @param wait maximum time to wait for a slot
+     * @param render the render
+     * @return the result of the render
+     * @throws RejectedExecutionException if no slot was available within the waiting time or the thread
+     *                                    was interrupted while waiting
+     */
+    public <T> T execute(Priority priority, Duration wait, Supplier<T> render) {
+        if (admitted.get() != null) {
+            return render.get();
+        }
+        var lane = lanes.get(priority);
+        acquire(priority, lane, wait);
+        admitted.set(priority);
+        try {
+            return render.get();
+        } finally {
+            admitted.remove();
+            release(lane);
+        }
+    }
+
+    /**
+     * Returns the statistics of every priority.
+     */
+    public synchronized Map<Priority, Stats> stats() {
+        var stats = new EnumMap<Priority, Stats>(Priority.class);
+        lanes.forEach((priority, lane) -> stats.put(priority, new Stats(lane.waiting.size(), lane.running,
+                lane.completed, lane.totalWaitNanos, lane.maxWaitNanos)));
+        return Collections.unmodifiableMap(stats);
+    }
+
+    private synchronized void acquire(Priority priority, Lane lane, Duration wait) {
+        var thread = Thread.currentThread();
+        long start = System.nanoTime();
+        lane.waiting.add(thread);
+        boolean admitted = false;
+        try {
+            while (!admissible(priority, lane, thread)) {
+                long left = wait.toNanos() - (System.nanoTime() - start);
+                if (left <= 0) {
+                    throw new RejectedExecutionException("No render slot was free for " + priority + " within "
+                            + wait.toMillis() + " ms");
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            admitted = true;
+        } catch (InterruptedException e) {
+            thread.interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a " + priority + " render slot", e);
+        } finally {
+            if (!admitted) {
+                lane.waiting.remove(thread);
+                // The render behind the rejected one may be admissible now
+                notifyAll();
+            }
+        }
+        lane.waiting.remove();
+        lane.running++;
+        running++;
+        long waited = System.nanoTime() - start;
+        lane.totalWaitNanos += waited;
+        lane.maxWaitNanos = Math.max(lane.maxWaitNanos, waited);
+        // The next waiting render of the lane may be admissible as well
+        notifyAll();
+    }
+
+    private synchronized void release(Lane lane) {
+        lane.running--;
+        lane.completed++;
+        running--;
+        notifyAll();
+    }
+
+    private boolean admissible(Priority priority, Lane lane, Thread thread) {
+        if (lane.waiting.peek() != thread || lane.running >= lane.limit) {
+            return false;
+        }
+        for (var higher : Priority.values()) {
+            if (higher == priority) {
+                break;
+            }
+            var other = lanes.get(higher);
+            if (!other.waiting.isEmpty() && other.running < other.limit) {
+                // A render of higher priority waits for the same slot
+                return false;
+            }
+        }
+        int available = priority == Priority.INTERACTIVE ? slots : slots - 1;
+        return running < available;
+    }
+}
@@ -6,20 +6,95 @@ import org.slf4j.LoggerFactory;
 import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.TemplateSpec;
 import org.thymeleaf.context.Context;
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.exceptions.TemplateEngineException;
+import org.thymeleaf.exceptions.TemplateInputException;
 import org.thymeleaf.templatemode.TemplateMode;
+import pro.gammel.thymewire.jfr.RenderEvent;
+import pro.gammel.thymewire.rendering.RenderDeadline;
+import pro.gammel.thymewire.rendering.RenderProfile;
+import pro.gammel.thymewire.rendering.RenderTimeoutException;
+import pro.gammel.thymewire.rendering.Utf8BufferWriter;
+import pro.gammel.thymewire.rendering.thymeleaf.LayeredContext;
 import pro.gammel.thymewire.rendering.thymeleaf.TemplateEngineProvider;
 
 import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 public class Renderer {
 
     private static final Logger LOG = LoggerFactory.getLogger(Renderer.class);
 
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    // Buffers larger than this are not returned to the pool to avoid holding on to memory of one huge render
+    private static final int MAX_POOLED_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(10);
+
+    // Number of template specs and output sizes kept, selectors come from request parameters
+    private static final int MAX_TEMPLATE_ENTRIES = 4096;
+
+    private record SpecKey(String template, String selector, Locale locale) {}
+
     private final ITemplateEngine thymeleaf;
 
+    private final Duration timeout;
+
+    private final Map<SpecKey, TemplateSpec> specs = lru();
+
+    private final Map<String, Integer> outputSizes = lru();
+
+    private final BlockingQueue<Utf8BufferWriter> writers = new ArrayBlockingQueue<>(POOL_SIZE);
+
     public Renderer(Resources resources) {
-        this.thymeleaf = TemplateEngineProvider.templateEngine(resources);
+        this(TemplateEngineProvider.templateEngine(resources));
+    }
+
+    Renderer(ITemplateEngine thymeleaf) {
+        this(thymeleaf, DEFAULT_TIMEOUT);
+    }
+
+    Renderer(ITemplateEngine thymeleaf, Duration timeout) {
+        this.thymeleaf = thymeleaf;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Returns the time limit of a single render.
+     */
+    public Duration timeout() {
+        return timeout;
+    }
+
+    /**
+     * Returns the number of output buffers kept for reuse.
+     */
+    public int pooledBuffers() {
+        return writers.size();
+    }
+
+    /**
+     * Returns the capacity of the output buffers kept for reuse in bytes.
+     */
+    public long pooledBufferBytes() {
+        long bytes = 0;
+        for (var writer : writers) {
+            bytes += writer.capacity();
+        }
+        return bytes;
     }
 
     public String render(String templateName, Map<String, Object> model) {
@@ -30,8 +105,7 @@ public class Renderer {
             }
             
             var writer = new StringWriter();
-            var spec = new TemplateSpec(templateName, TemplateMode.HTML);
-            thymeleaf.process(spec, context, writer);
+            thymeleaf.process(spec(templateName, null, context.getLocale()), context, writer);
             
             LOG.debug("Rendered template: {}", templateName);
             return writer.toString();
@@ -40,7 +114,224 @@ public class Renderer {
             return createErrorPage(templateName, e);
         }
     }
+
+    /**
+     * Renders the template directly to UTF-8 encoded bytes. Output is written into pooled buffers presized
+     * from the previous render of the same template, so that a render allocates only the resulting array.
+     *
+     * @param templateName the name of the template
+     * @param model the model of the template
+     * @return UTF-8 encoded result of rendering or the error page
+     */
+    public byte[] renderBytes(String templateName, Map<String, Object> model) {
+        var context = new Context();
+        if (model != null) {
+            context.setVariables(model);
+        }
+        return renderBytes(templateName, context);
+    }
+
+    /**
+     * Renders the template with the given context directly to UTF-8 encoded bytes.
+     *
+     * @param templateName the name of the template
+     * @param context the context of the template, e.g. {@link pro.gammel.thymewire.rendering.thymeleaf.LayeredContext}
+     * @return UTF-8 encoded result of rendering or the error page
+     */
+    public byte[] renderBytes(String templateName, IContext context) {
+        return renderBytes(templateName, null, context);
+    }
+
+    /**
+     * Renders the fragment of the template with the given context directly to UTF-8 encoded bytes.
+     *
+     * @param templateName the name of the template
+     * @param selector the fragment name or markup selector, e.g. "content", or null for the whole template
+     * @param context the context of the template
+     * @return UTF-8 encoded result of rendering or the error page
+     * @throws RenderTimeoutException if the render exceeded the time limit
+     */
+    public byte[] renderBytes(String templateName, String selector, IContext context) {
+        try {
+            return process(templateName, selector, context);
+        } catch (RenderTimeoutException e) {
+            throw e;
+        } catch (Exception e) {
+            LOG.error("Failed to render template: {} :: {}", templateName, selector, e);
+            return createErrorPage(templateName, e).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Renders only the fragment of the template matching the selector, without processing the rest of it.
+     * Unlike {@link #renderBytes(String, String, IContext)}, failures are thrown instead of returning the error
+     * page, so that the caller can report them, e.g. with {@link #errorPage(String, Exception)}.
+     *
+     * @param templateName the name of the template
+     * @param selector the fragment name or markup selector, e.g. "content", or null for the whole template
+     * @param context the context of the template
+     * @return UTF-8 encoded fragment
+     * @throws TemplateEngineException if the fragment cannot be rendered
+     * @throws RenderTimeoutException if the render exceeded the time limit
+     */
+    public byte[] renderFragment(String templateName, String selector, IContext context) {
+        return process(templateName, selector, context);
+    }
+
+    private byte[] process(String templateName, String selector, IContext context) {
+        long allocated = LOG.isDebugEnabled() ? allocatedBytes() : 0;
+        var sizeKey = selector == null ? templateName : templateName + "::" + selector;
+        var event = new RenderEvent();
+        event.begin();
+        var presized = event.isEnabled() && outputSizes.containsKey(sizeKey);
+        var outcome = "failed";
+        var writer = acquireWriter(sizeKey);
+        try (var deadline = RenderDeadline.start(sizeKey, timeout);
+             var span = RenderProfile.span(RenderProfile.RENDER, sizeKey)) {
+            thymeleaf.process(spec(templateName, selector, context.getLocale()), context, writer);
+            outputSizes.put(sizeKey, writer.size());
+            var result = writer.toByteArray();
+            outcome = "ok";
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Rendered template: {} ({} bytes, {} bytes allocated)",
+                        sizeKey, result.length, allocatedBytes() - allocated);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            var stopped = RenderTimeoutException.find(e);
+            if (stopped != null) {
+                LOG.warn("{} after {} events", stopped.getMessage(), stopped.events());
+                outcome = "timeout";
+                throw stopped;
+            }
+            throw e;
+        } finally {
+            if (event.shouldCommit()) {
+                event.template = templateName;
+                event.modelId = context instanceof LayeredContext layered && layered.modelId() != null
+                        ? layered.modelId()
+                        : "";
+                event.selector = selector != null ? selector : "";
+                event.bytes = writer.size();
+                event.presized = presized;
+                event.outcome = outcome;
+                event.commit();
+            }
+            releaseWriter(writer);
+        }
+    }
+
+    /**
+     * Parses the template into the template cache without processing it. The template is parsed as a throttled
+     * render that is never run, so that it is cached under the same key as by a render, while included templates
+     * are neither resolved nor processed.
+     *
+     * @param templateName the name of the template
+     * @param selector the fragment to parse, or null for the whole template
+     * @throws TemplateInputException if the template cannot be resolved or parsed
+     */
+    public void precompile(String templateName, String selector) {
+        var context = new Context();
+        thymeleaf.processThrottled(spec(templateName, selector, context.getLocale()), context);
+    }
+
+    private static <K, V> Map<K, V> lru() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > MAX_TEMPLATE_ENTRIES;
+            }
+        });
+    }
+
+    private TemplateSpec spec(String templateName, String selector, Locale locale) {
+        return specs.computeIfAbsent(new SpecKey(templateName, selector, locale), k -> new TemplateSpec(k.template(),
+                k.selector() != null ? Set.of(k.selector()) : null, TemplateMode.HTML, Map.of("locale", k.locale())));
+    }
+
+    private Utf8BufferWriter acquireWriter(String templateName) {
+        var writer = writers.poll();
+        int expectedSize = outputSizes.getOrDefault(templateName, INITIAL_BUFFER_SIZE);
+        if (writer == null) {
+            return new Utf8BufferWriter(expectedSize);
+        }
+        writer.ensureCapacity(expectedSize);
+        return writer;
+    }
+
+    private void releaseWriter(Utf8BufferWriter writer) {
+        if (writer.capacity() <= MAX_POOLED_BUFFER_SIZE) {
+            writer.reset();
+            writers.offer(writer);
+        }
+    }
+
+    private static long allocatedBytes() {
+        var threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean allocations) {
+            return allocations.getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
     
+    /**
+     * Creates the error page of the render stopped by its deadline, listing the templates entered before
+     * with the time of their first and last entry.
+     *
+     * @param timeout the timeout of the render
+     * @return UTF-8 encoded error page
+     */
+    public byte[] timeoutPage(RenderTimeoutException timeout) {
+        var rows = new StringBuilder();
+        for (var timing : timeout.timings()) {
+            rows.append("<tr><td>%s</td><td>%d</td><td>%.1f</td><td>%.1f</td></tr>%n".formatted(
+                    escape(timing.template()), timing.count(), timing.firstNanos() / 1e6, timing.lastNanos() / 1e6));
+        }
+        return """
+            <!DOCTYPE html>
+            <html>
+            <head>
+                <title>Template Timeout</title>
+                <style>
+                    body { font-family: monospace; margin: 20px; }
+                    .error { color: red; background: #ffeeee; padding: 10px; border: 1px solid red; }
+                    td, th { padding: 2px 12px; text-align: right; }
+                    td:first-child, th:first-child { text-align: left; }
+                </style>
+            </head>
+            <body>
+                <h1>Template Rendering Timeout</h1>
+                <p><strong>Template:</strong> %s</p>
+                <div class="error">
+                    <strong>Error:</strong> rendering stopped after %d ms (limit %d ms), %d events processed,
+                    last entered template: %s
+                </div>
+                <table>
+                    <tr><th>Template</th><th>Entries</th><th>First entry, ms</th><th>Last entry, ms</th></tr>
+                    %s
+                </table>
+            </body>
+            </html>
+            """.formatted(escape(timeout.template()), timeout.elapsed().toMillis(), timeout.timeout().toMillis(),
+                timeout.events(), escape(Objects.requireNonNullElse(timeout.lastTemplate(), "-")), rows)
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the error page of the failed render.
+     *
+     * @param templateName the name of the template
+     * @param error the failure of the render
+     * @return UTF-8 encoded error page
+     */
+    public byte[] errorPage(String templateName, Exception error) {
+        return createErrorPage(templateName, error).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
     private String createErrorPage(String templateName, Exception error) {
         return """
             <!DOCTYPE html>
@@ -60,6 +351,7 @@ public class Renderer {
                 </div>
             </body>
             </html>
-            """.formatted(templateName, error.getMessage());
+            """.formatted(escape(templateName),
+                escape(Objects.requireNonNullElse(error.getMessage(), error.toString())));
     }
 }
\ No newline at end of file
@@ -0,0 +1,64 @@
+package pro.gammel.thymewire.core;
+
+import com.github.resource4j.resources.Resources;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentInstances;
+import pro.gammel.thymewire.rendering.thymeleaf.TemplateEngineProvider;
+
+import java.time.Duration;
+
+public class RendererBuilder {
+
+    private Resources resources;
+
+    private ComponentRegistry components;
+
+    private MessageCache messages;
+
+    private DependencyTracker dependencies;
+
+    private ComponentInstances instances;
+
+    private Duration timeout = Renderer.DEFAULT_TIMEOUT;
+
+    public static RendererBuilder aRenderer() {
+        return new RendererBuilder();
+    }
+
+    public RendererBuilder with(Resources resources) {
+        this.resources = resources;
+        return this;
+    }
+
+    public RendererBuilder components(ComponentRegistry components) {
+        this.components = components;
+        return this;
+    }
+
+    public RendererBuilder messages(MessageCache messages) {
+        this.messages = messages;
+        return this;
+    }
+
+    public RendererBuilder dependencies(DependencyTracker dependencies) {
+        this.dependencies = dependencies;
+        return this;
+    }
+
+    public RendererBuilder instances(ComponentInstances instances) {
+        this.instances = instances;
+        return this;
+    }
+
+    /**
+     * Sets the time limit of a single render.
+     */
+    public RendererBuilder timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    public Renderer build() {
+        return new Renderer(TemplateEngineProvider.templateEngine(resources, components, messages, dependencies,
+                instances), timeout);
+    }
+}
@@ -8,12 +8,16 @@ import pro.gammel.thymewire.config.SiteConfigParser;
 import pro.gammel.thymewire.discovery.ModelLoader;
 import pro.gammel.thymewire.discovery.TemplateInfo;
 import pro.gammel.thymewire.discovery.TemplateLoader;
+import pro.gammel.thymewire.jfr.SiteLoadEvent;
 import pro.gammel.thymewire.rendering.layout.LayoutConfiguration;
 
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.regex.Pattern;
 
 public class SiteProvider {
 
@@ -23,17 +27,30 @@ public class SiteProvider {
         default void configUpdated(SiteConfig config) { refreshRequired(); }
         default void templateUpdated(String template) { refreshRequired(); }
         default void modelUpdated(String template, String model) { refreshRequired(); }
+        default void componentUpdated(String component) { refreshRequired(); }
+        default void messagesUpdated(String bundle) { refreshRequired(); }
         default void refreshRequired() {}
 
+        /**
+         * Called after all listeners were notified of the change, e.g. to render pages with the change applied.
+         */
+        default void changeApplied() {}
     }
 
+    // Locale suffix of the message file, e.g. "_de" or "_de_CH", stripped only if it names an available locale
+    private static final Pattern LOCALE_SUFFIX = Pattern.compile("_([a-z]{2,3}(_[A-Z]{2})?)$");
+
+    private static final Set<String> LOCALES = Arrays.stream(Locale.getAvailableLocales())
+            .map(Locale::toString)
+            .collect(Collectors.toUnmodifiableSet());
+
     private final Path path;
 
-    private SiteConfig config;
+    private volatile SiteConfig config;
 
-    private Map<String, TemplateInfo> templates;
+    private volatile Map<String, TemplateInfo> templates;
 
-    private LayoutConfiguration layoutConfiguration;
+    private volatile LayoutConfiguration layoutConfiguration;
 
     private final Set<Listener> listeners = Collections.synchronizedSet(new HashSet<>());
 
@@ -57,8 +74,61 @@ public class SiteProvider {
         return this.path;
     }
 
+    /**
+     * Returns the directories containing project sources: templates, models, messages and static resources.
+     * Nested directories are reported as is, so the caller may see overlapping paths.
+     */
+    public Set<Path> sourceDirectories() {
+        var directories = new LinkedHashSet<Path>();
+        for (var directory : List.of(config.src(), config.pages(), config.test(), config.messages(), config.resources())) {
+            directories.add(path.resolve(directory).toAbsolutePath().normalize());
+        }
+        return directories;
+    }
+
+    /**
+     * Returns the existing files of the message bundle for the locale, from the least to the most specific locale,
+     * e.g. "pages/start/login.properties" and "pages/start/login_de.properties" for "pages.start.login" in German.
+     * Of the files of the same locale, the one in the source root comes last, so that it takes precedence over
+     * the ones in the test and message roots.
+     *
+     * @param bundle the bundle name, e.g. "pages.start.login"
+     * @param locale the locale of the messages
+     * @return the files to load in order
+     */
+    public List<Path> messageFiles(String bundle, Locale locale) {
+        var name = bundle.replace('.', '/');
+        var suffixes = new ArrayList<String>();
+        suffixes.add("");
+        if (!locale.getLanguage().isEmpty()) {
+            suffixes.add("_" + locale.getLanguage());
+            if (!locale.getCountry().isEmpty()) {
+                suffixes.add("_" + locale.getLanguage() + "_" + locale.getCountry());
+            }
+        }
+        var files = new ArrayList<Path>();
+        for (var suffix : suffixes) {
+            for (var root : List.of(config.messages(), config.test(), config.src())) {
+                var file = path.resolve(root).resolve(name + suffix + ".properties");
+                if (Files.isRegularFile(file)) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Returns the directory containing component templates.
+     */
+    public Path componentsPath() {
+        return path.resolve(config.src()).resolve("templates/components");
+    }
+
     public void load() {
         LOG.info("Analyzing project at {}", path.toAbsolutePath());
+        var event = new SiteLoadEvent();
+        event.begin();
 
         // Load site configuration
         config = new SiteConfigParser().loadConfigFromDirectory(path);
@@ -76,26 +146,38 @@ public class SiteProvider {
         } else {
             LOG.debug("Site configuration validation passed");
         }
+        discoverTemplates();
+
+        // Load layout configuration from ${config.src}/layouts/index.json
+        layoutConfiguration = loadLayoutConfiguration();
+        if (layoutConfiguration != null && layoutConfiguration.size() > 0) {
+            LOG.info("- {} layouts discovered", layoutConfiguration.size());
+        }
+        if (event.shouldCommit()) {
+            event.directory = path.toAbsolutePath().toString();
+            event.templates = templates.size();
+            event.models = templates.values().stream().mapToInt(template -> template.models().size()).sum();
+            event.layouts = layoutConfiguration != null ? layoutConfiguration.size() : 0;
+            event.commit();
+        }
+    }
+
+    private void discoverTemplates() {
         var modelLoader = new ModelLoader();
         // Discover templates and models
-        templates = new HashMap<>();
+        var discovered = new HashMap<String, TemplateInfo>();
         int totalModels = 0;
         for (var template : new TemplateLoader(modelLoader).discoverTemplates(config, path)) {
             LOG.trace("Registering template '{}' with {} models", template.name(), template.models().size());
             template.models().forEach(model ->
                 LOG.trace("  - model id: '{}'", model.id().isEmpty() ? "(default)" : model.id())
             );
-            templates.put(template.name(), template);
+            discovered.put(template.name(), template);
             totalModels += template.models().size();
         }
+        templates = discovered;
 
-        LOG.info("- {} templates discovered with {} model variants", templates.size(), totalModels);
-
-        // Load layout configuration from ${config.src}/layouts/index.json
-        layoutConfiguration = loadLayoutConfiguration();
-        if (layoutConfiguration != null && layoutConfiguration.size() > 0) {
-            LOG.info("- {} layouts discovered", layoutConfiguration.size());
-        }
+        LOG.info("- {} templates discovered with {} model variants", discovered.size(), totalModels);
     }
 
     private LayoutConfiguration loadLayoutConfiguration() {
@@ -116,7 +198,112 @@ public class SiteProvider {
         }
     }
 
-    public void fileUpdated(Path path) {
+    /**
+     * Reloads the whole project and notifies listeners about the new configuration.
+     */
+    public void reload() {
+        load();
+        forEachListener(listener -> listener.configUpdated(config));
+    }
+
+    /**
+     * Processes a change of the file in the project: updates the discovered templates and models if necessary
+     * and notifies the listeners about the type of the change.
+     *
+     * @param file the created, modified or deleted file
+     */
+    public void fileUpdated(Path file) {
+        var base = path.toAbsolutePath().normalize();
+        var changed = file.toAbsolutePath().normalize();
+
+        if (changed.equals(base.resolve("site.json"))) {
+            LOG.info("Site configuration changed, reloading project");
+            reload();
+            return;
+        }
+
+        var fileName = changed.getFileName().toString();
+        var pagesPath = base.resolve(config.pages()).normalize();
+        var testPath = base.resolve(config.test()).normalize();
+        var templatesPath = base.resolve(config.src()).resolve("templates").normalize();
+        var componentsPath = templatesPath.resolve("components");
+        var layoutsPath = templatesPath.resolve("layouts");
+
+        if (changed.startsWith(pagesPath) && fileName.endsWith(".html")) {
+            var template = withoutExtension(pagesPath.relativize(changed), ".html");
+            if (!Files.exists(changed) || !templates.containsKey(template)) {
+                discoverTemplates();
+            }
+            forEachListener(listener -> listener.templateUpdated(template));
+        } else if (changed.startsWith(componentsPath) && fileName.endsWith("-c.html")) {
+            var component = withoutExtension(componentsPath.relativize(changed), ".html");
+            forEachListener(listener -> listener.componentUpdated(component));
+        } else if (changed.equals(layoutsPath.resolve("index.json"))) {
+            layoutConfiguration = loadLayoutConfiguration();
+            forEachListener(listener -> listener.configUpdated(config));
+        } else if (changed.startsWith(layoutsPath) && fileName.endsWith(".html")) {
+            var layout = "layouts/" + withoutExtension(layoutsPath.relativize(changed), ".html");
+            forEachListener(listener -> listener.templateUpdated(layout));
+        } else if (changed.startsWith(testPath) && fileName.endsWith(".json")) {
+            var relative = withoutExtension(testPath.relativize(changed), ".json");
+            var template = relative.startsWith("pages/") ? relative.substring("pages/".length()) : relative;
+            var separator = template.lastIndexOf('.');
+            var model = separator > template.lastIndexOf('/') ? template.substring(separator + 1) : "";
+            var owner = model.isEmpty() ? template : template.substring(0, separator);
+            discoverTemplates();
+            forEachListener(listener -> listener.modelUpdated(owner, model));
+        } else if (fileName.endsWith(".properties") && bundleName(base, changed) != null) {
+            var bundle = bundleName(base, changed);
+            forEachListener(listener -> listener.messagesUpdated(bundle));
+        } else {
+            forEachListener(Listener::refreshRequired);
+        }
+    }
+
+    /**
+     * Returns the name of the message bundle stored in the file, e.g. "pages.start.login" for
+     * "pages/start/login_de.properties" in the source root. Suffixes that are not locales are part of the name,
+     * e.g. "pages.price_eur" for "pages/price_eur.properties".
+     */
+    private String bundleName(Path base, Path file) {
+        for (var root : List.of(config.src(), config.test(), config.messages())) {
+            var rootPath = base.resolve(root).normalize();
+            if (file.startsWith(rootPath)) {
+                var name = withoutExtension(rootPath.relativize(file), ".properties");
+                var suffix = LOCALE_SUFFIX.matcher(name);
+                if (suffix.find() && LOCALES.contains(suffix.group(1))) {
+                    name = name.substring(0, suffix.start());
+                }
+                return name.replace('/', '.');
+            }
+        }
+        return null;
+    }
+
+    private static String withoutExtension(Path relativePath, String extension) {
+        var name = relativePath.toString().replace('\\', '/');
+        return name.substring(0, name.length() - extension.length());
+    }
+
+    private void forEachListener(Consumer<Listener> action) {
+        List<Listener> snapshot;
+        synchronized (listeners) {
+            snapshot = new ArrayList<>(listeners);
+        }
+        for (var listener : snapshot) {
+            try {
+                action.accept(listener);
+            } catch (RuntimeException e) {
+                LOG.error("Site listener {} failed", listener, e);
+            }
+        }
+        for (var listener : snapshot) {
+            try {
+                listener.changeApplied();
+            } catch (RuntimeException e) {
+                LOG.error("Site listener {} failed", listener, e);
+            }
+        }
     }
 
     public void subscribe(Listener listener) {
@@ -127,6 +314,27 @@ public class SiteProvider {
         this.listeners.remove(listener);
     }
 
+    /**
+     * Returns the path of the model file in the test folder, which may not exist, e.g. "pages/start/login.error.json"
+     * for the "error" model of "start/login", "layouts/main.json" for the layout "layouts/main" or
+     * "components/forms/input-c.json" for the component "forms/input-c".
+     *
+     * @param templateName the name of the page, layout or component
+     * @param modelId the model variant, null or empty for the default model
+     */
+    public Path modelPath(String templateName, String modelId) {
+        String modelPath;
+        if (templateName.startsWith("layouts/") || templateName.startsWith("components/")) {
+            modelPath = templateName;
+        } else if (templateName.endsWith("-c")) {
+            modelPath = "components/" + templateName;
+        } else {
+            modelPath = "pages/" + templateName;
+        }
+        var variant = modelId == null || modelId.isEmpty() ? "" : "." + modelId;
+        return path.resolve(config.test()).resolve(modelPath + variant + ".json");
+    }
+
     public boolean modelExists(String templateName, String modelId) {
         var templateInfo = templates.get(templateName);
         if (templateInfo == null) {
@@ -0,0 +1,151 @@
+package pro.gammel.thymewire.core;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.thymeleaf.exceptions.TemplateInputException;
+import pro.gammel.thymewire.discovery.ComponentInfo;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentElementProcessor;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Warm-up of the site after loading: parses all pages, layouts and components in parallel, so that templates are
+ * cached and the parser code is compiled before the first request, and optionally renders the default variant
+ * of every page the given number of times. Components are included by pages under the name of the including
+ * template, so their cache entries used in rendering are filled only by the renders.
+ */
+public class Warmup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Warmup.class);
+
+    private static final int REPORTED_SLOWEST = 5;
+
+    /**
+     * Warm-up timing of the template.
+     *
+     * @param template the name of the template
+     * @param parseNanos time of parsing in nanoseconds
+     * @param renders number of renders of the page
+     * @param renderNanos average time of rendering in nanoseconds, 0 if not rendered
+     */
+    public record Timing(String template, long parseNanos, int renders, long renderNanos) {}
+
+    /**
+     * Template that cannot be parsed.
+     *
+     * @param template the name of the template
+     * @param line the line of the error or -1 if unknown
+     * @param column the column of the error or -1 if unknown
+     * @param message the error message
+     */
+    public record Failure(String template, int line, int column, String message) {}
+
+    /**
+     * Result of the warm-up.
+     */
+    public record Report(List<Timing> timings, List<Failure> failures, long elapsedNanos) {}
+
+    private final SiteProvider site;
+
+    private final Renderer renderer;
+
+    private final ComponentRegistry components;
+
+    private final Consumer<String> pages;
+
+    private final int renders;
+
+    /**
+     * @param site the site
+     * @param renderer the renderer to parse templates with
+     * @param components the registry of components to parse, or null
+     * @param pages renders the page with the given path in the same way as it is served
+     * @param renders how many times to render every page, 0 to only parse templates
+     */
+    public Warmup(SiteProvider site, Renderer renderer, ComponentRegistry components, Consumer<String> pages,
+                  int renders) {
+        this.site = site;
+        this.renderer = renderer;
+        this.components = components;
+        this.pages = pages;
+        this.renders = renders;
+    }
+
+    public Report run() {
+        long start = System.nanoTime();
+        var parseTimes = new ConcurrentHashMap<String, Long>();
+        var failures = Collections.synchronizedList(new ArrayList<Failure>());
+
+        templatesToParse().parallel().forEach(entry -> {
+            var template = entry.getKey();
+            long parseStart = System.nanoTime();
+            try {
+                renderer.precompile(template, entry.getValue().orElse(null));
+                parseTimes.put(template, System.nanoTime() - parseStart);
+            } catch (TemplateInputException e) {
+                failures.add(new Failure(template, e.getLine() != null ? e.getLine() : -1,
+                        e.getCol() != null ? e.getCol() : -1, e.getMessage()));
+            }
+        });
+
+        var renderTimes = new ConcurrentHashMap<String, Long>();
+        if (renders > 0) {
+            site.templates().keySet().parallelStream()
+                    .filter(parseTimes::containsKey)
+                    .forEach(template -> {
+                        long renderStart = System.nanoTime();
+                        for (int i = 0; i < renders; i++) {
+                            pages.accept("/" + template);
+                        }
+                        renderTimes.put(template, (System.nanoTime() - renderStart) / renders);
+                    });
+        }
+
+        var timings = parseTimes.entrySet().stream()
+                .map(entry -> new Timing(entry.getKey(), entry.getValue(),
+                        renderTimes.containsKey(entry.getKey()) ? renders : 0,
+                        renderTimes.getOrDefault(entry.getKey(), 0L)))
+                .sorted(Comparator.comparingLong((Timing timing) -> timing.parseNanos() + timing.renderNanos()).reversed())
+                .toList();
+        var report = new Report(timings, List.copyOf(failures), System.nanoTime() - start);
+        log(report);
+        return report;
+    }
+
+    /**
+     * Returns the names of templates to parse with the fragment selector, if only a fragment is used.
+     */
+    private Stream<Map.Entry<String, Optional<String>>> templatesToParse() {
+        var templates = new ArrayList<Map.Entry<String, Optional<String>>>();
+        site.templates().keySet().forEach(name -> templates.add(Map.entry(name, Optional.empty())));
+        var layouts = site.layoutConfiguration();
+        if (layouts != null) {
+            layouts.names().forEach(name -> templates.add(Map.entry("layouts/" + name, Optional.empty())));
+        }
+        if (components != null) {
+            components.components().stream()
+                    .filter(ComponentInfo::hasContentFragment)
+                    .forEach(component -> templates.add(Map.entry(component.name(),
+                            Optional.of(ComponentElementProcessor.FRAGMENT_NAME))));
+        }
+        return templates.stream();
+    }
+
+    private void log(Report report) {
+        report.failures().forEach(failure -> LOG.error("Template '{}' cannot be parsed (line {}, column {}): {}",
+                failure.template(), failure.line(), failure.column(), failure.message()));
+        LOG.info("- {} templates warmed up in {} ms, {} failed", report.timings().size(),
+                report.elapsedNanos() / 1_000_000, report.failures().size());
+        report.timings().stream().limit(REPORTED_SLOWEST).forEach(timing ->
+                LOG.info("  {}: parsed in {} ms{}", timing.template(), timing.parseNanos() / 1_000_000,
+                        timing.renders() > 0 ? ", rendered in " + timing.renderNanos() / 1_000_000 + " ms" : ""));
+        if (LOG.isDebugEnabled()) {
+            report.timings().stream().skip(REPORTED_SLOWEST).forEach(timing ->
+                    LOG.debug("  {}: parsed in {} us, rendered in {} us", timing.template(),
+                            timing.parseNanos() / 1_000, timing.renderNanos() / 1_000));
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package pro.gammel.thymewire.discovery;
+
+import java.nio.file.Path;
+import java.util.Set;
+
+/**
+ * Information about a discovered component.
+ *
+ * @param name the component template name (relative path without .html extension, e.g. "forms/input-c")
+ * @param path the full file system path to the component template
+ * @param source the source code of the component template
+ * @param hasContentFragment whether the template declares the fragment used for component expansion
+ * @param references names of other components used by this component
+ */
+public record ComponentInfo(
+    String name,
+    Path path,
+    String source,
+    boolean hasContentFragment,
+    Set<String> references
+) {}
@@ -0,0 +1,88 @@
+package pro.gammel.thymewire.discovery;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static pro.gammel.thymewire.rendering.thymeleaf.ComponentElementProcessor.COMPONENT_NAME_PATTERN;
+import static pro.gammel.thymewire.rendering.thymeleaf.ComponentElementProcessor.FRAGMENT_NAME;
+
+/**
+ * Service for discovering component templates and component usages in other templates.
+ */
+public class ComponentLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(ComponentLoader.class);
+
+    // Pattern to match component tags like <c:button> or <c:forms.input>
+    private static final Pattern COMPONENT_TAG_PATTERN = Pattern.compile("<c:([a-zA-Z0-9_.-]+)");
+
+    private static final Pattern CONTENT_FRAGMENT_PATTERN =
+            Pattern.compile("th:fragment\\s*=\\s*[\"']" + FRAGMENT_NAME + "\\b");
+
+    /**
+     * Discovers all components in the given directory.
+     *
+     * @param componentsPath the directory containing component templates
+     * @return list of discovered components
+     */
+    public List<ComponentInfo> discoverComponents(Path componentsPath) {
+        List<ComponentInfo> components = new ArrayList<>();
+        if (!Files.exists(componentsPath)) {
+            LOG.debug("Components directory does not exist: {}", componentsPath);
+            return components;
+        }
+
+        try (Stream<Path> paths = Files.walk(componentsPath)) {
+            paths.filter(Files::isRegularFile)
+                 .filter(path -> path.toString().endsWith("-c.html"))
+                 .forEach(path -> loadComponent(componentsPath, path).ifPresent(components::add));
+        } catch (IOException e) {
+            LOG.error("Failed to discover components in {}: {}", componentsPath, e.getMessage());
+        }
+        return components;
+    }
+
+    /**
+     * Loads a single component template.
+     *
+     * @param componentsPath the directory containing component templates
+     * @param path the path to the component template
+     * @return component information or empty if the file does not exist or cannot be read
+     */
+    public Optional<ComponentInfo> loadComponent(Path componentsPath, Path path) {
+        if (!Files.isRegularFile(path)) {
+            return Optional.empty();
+        }
+        try {
+            var source = Files.readString(path);
+            var name = componentsPath.relativize(path).toString().replace('\\', '/');
+            name = name.substring(0, name.length() - ".html".length());
+            boolean hasContent = CONTENT_FRAGMENT_PATTERN.matcher(source).find();
+            return Optional.of(new ComponentInfo(name, path, source, hasContent, findReferences(source)));
+        } catch (IOException e) {
+            LOG.warn("Failed to read component {}: {}", path, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Finds names of all components used in the given template source.
+     *
+     * @param source the template source
+     * @return component template names, e.g. "forms/input-c" for &lt;c:forms.input&gt;
+     */
+    public Set<String> findReferences(String source) {
+        Set<String> references = new TreeSet<>();
+        var matcher = COMPONENT_TAG_PATTERN.matcher(source);
+        while (matcher.find()) {
+            references.add(String.format(COMPONENT_NAME_PATTERN, matcher.group(1).replace('.', '/')));
+        }
+        return references;
+    }
+}
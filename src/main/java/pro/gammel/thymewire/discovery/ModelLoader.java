@@ -3,6 +3,7 @@ package pro.gammel.thymewire.discovery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.jfr.DiscoveryEvent;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -19,8 +20,10 @@ import java.util.stream.Stream;
 public class ModelLoader {
     private static final Logger LOG = LoggerFactory.getLogger(ModelLoader.class);
 
-    // Pattern to match model files: template.modelId.json or template.json
-    private static final Pattern MODEL_FILE_PATTERN = Pattern.compile("^(.+?)(?:\\.([a-zA-Z0-9_-]+))?\\.json$");
+    /**
+     * Pattern of the model file names: "template.modelId.json" or "template.json".
+     */
+    public static final Pattern MODEL_FILE_PATTERN = Pattern.compile("^(.+?)(?:\\.([a-zA-Z0-9_-]+))?\\.json$");
 
     /**
      * Discovers all data models for a specific template.
@@ -44,6 +47,8 @@ public class ModelLoader {
         }
 
         LOG.trace("Discovering models for template '{}' in test directory: {}", templateName, testPath);
+        var event = new DiscoveryEvent();
+        event.begin();
 
         try (Stream<Path> paths = Files.walk(testPath)) {
             paths.filter(Files::isRegularFile)
@@ -59,6 +64,13 @@ public class ModelLoader {
             LOG.error("Failed to discover models in {}: {}", testPath, e.getMessage());
         }
 
+        if (event.shouldCommit()) {
+            event.kind = "models";
+            event.template = templateName;
+            event.directory = testPath.toString();
+            event.found = models.size();
+            event.commit();
+        }
         LOG.trace("Discovered {} models for template '{}'", models.size(), templateName);
         return models;
     }
@@ -3,6 +3,7 @@ package pro.gammel.thymewire.discovery;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.jfr.DiscoveryEvent;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -34,12 +35,21 @@ public class TemplateLoader {
         List<TemplateInfo> templates = new ArrayList<>();
 
         Path srcPath = baseDirectory.resolve(config.pages());
+        var event = new DiscoveryEvent();
+        event.begin();
         if (Files.exists(srcPath)) {
             templates.addAll(discoverTemplatesInDirectory(srcPath, config, baseDirectory));
         } else {
             LOG.warn("Template source directory does not exist: {}", srcPath);
         }
 
+        if (event.shouldCommit()) {
+            event.kind = "templates";
+            event.template = "";
+            event.directory = srcPath.toString();
+            event.found = templates.size();
+            event.commit();
+        }
         LOG.info("Discovered {} templates", templates.size());
         return templates;
     }
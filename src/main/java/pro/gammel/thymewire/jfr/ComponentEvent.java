@@ -0,0 +1,21 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Component")
+@Label("Component Expansion")
+@Category({"Thymewire", "Rendering"})
+@Description("Render of a component instance, including its nested components")
+public class ComponentEvent extends Event {
+
+    @Label("Component")
+    public String component;
+
+    @Label("Template")
+    @Description("The template or the component using the component")
+    public String template;
+}
@@ -0,0 +1,21 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Deserialize")
+@Label("Model Deserialization")
+@Category({"Thymewire", "Models"})
+@Description("Conversion of model properties with the class meta field into objects")
+public class DeserializeEvent extends Event {
+
+    @Label("Properties")
+    public int properties;
+
+    @Label("Deserialized")
+    @Description("The number of properties converted into objects")
+    public int deserialized;
+}
@@ -0,0 +1,28 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Discovery")
+@Label("Discovery")
+@Category({"Thymewire", "Discovery"})
+@Description("Scan of a directory for templates or for the models of a template")
+public class DiscoveryEvent extends Event {
+
+    @Label("Kind")
+    @Description("What was discovered: templates or models")
+    public String kind;
+
+    @Label("Template")
+    @Description("The template whose models were discovered, empty for templates")
+    public String template;
+
+    @Label("Directory")
+    public String directory;
+
+    @Label("Found")
+    public int found;
+}
@@ -0,0 +1,30 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.ModelFile")
+@Label("Model File")
+@Category({"Thymewire", "Models"})
+@Description("Reading of one model file, or reuse of its cached composition")
+public class ModelFileEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Source")
+    @Description("How the model was read: json, snapshot, lazy or cached")
+    public String source;
+
+    @Label("Cache Hit")
+    @Description("Whether the model was served from the snapshot or composition cache")
+    public boolean cacheHit;
+}
@@ -0,0 +1,33 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.ModelLoad")
+@Label("Model Load")
+@Category({"Thymewire", "Models"})
+@Description("Loading of the model of a template for a request, including the models it extends")
+public class ModelLoadEvent extends Event {
+
+    @Label("Template")
+    public String template;
+
+    @Label("Model Id")
+    @Description("The selected model variant, empty for the default model")
+    public String modelId;
+
+    @Label("Path")
+    public String path;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Found")
+    @Description("Whether the model file exists")
+    public boolean found;
+}
@@ -0,0 +1,33 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Page")
+@Label("Page Request")
+@Category({"Thymewire", "Server"})
+@Description("Request of a page from the template controller")
+public class PageEvent extends Event {
+
+    @Label("Method")
+    public String method;
+
+    @Label("Page")
+    @Description("The path with sorted query parameters")
+    public String page;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Cache Hit")
+    @Description("Whether the page was served from the output cache")
+    public boolean cacheHit;
+}
@@ -0,0 +1,38 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Render")
+@Label("Render")
+@Category({"Thymewire", "Rendering"})
+@Description("Processing of a template or fragment by Thymeleaf")
+public class RenderEvent extends Event {
+
+    @Label("Template")
+    public String template;
+
+    @Label("Model")
+    @Description("The model variant of the page, empty for the default model or a render without page context")
+    public String modelId;
+
+    @Label("Selector")
+    @Description("The rendered fragment, empty for the whole template")
+    public String selector;
+
+    @Label("Output Size")
+    @DataAmount
+    public long bytes;
+
+    @Label("Presized")
+    @Description("Whether the output buffer was presized from the output size of a previous render")
+    public boolean presized;
+
+    @Label("Outcome")
+    @Description("ok, failed or timeout")
+    public String outcome;
+}
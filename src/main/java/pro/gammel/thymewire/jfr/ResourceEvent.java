@@ -0,0 +1,26 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.Resource")
+@Label("Resource Request")
+@Category({"Thymewire", "Server"})
+public class ResourceEvent extends Event {
+
+    @Label("Path")
+    public String path;
+
+    @Label("Content Type")
+    public String contentType;
+
+    @Label("Status")
+    public int status;
+
+    @Label("Size")
+    @DataAmount
+    public long bytes;
+}
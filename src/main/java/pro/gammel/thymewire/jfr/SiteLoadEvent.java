@@ -0,0 +1,26 @@
+package pro.gammel.thymewire.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("pro.gammel.thymewire.SiteLoad")
+@Label("Site Load")
+@Category({"Thymewire", "Discovery"})
+@Description("Loading of the site configuration and discovery of templates, models and layouts")
+public class SiteLoadEvent extends Event {
+
+    @Label("Directory")
+    public String directory;
+
+    @Label("Templates")
+    public int templates;
+
+    @Label("Models")
+    public int models;
+
+    @Label("Layouts")
+    public int layouts;
+}
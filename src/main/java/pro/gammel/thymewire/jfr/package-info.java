@@ -0,0 +1,7 @@
+/**
+ * JDK Flight Recorder events of the previewer. The events are enabled by default in recordings and can be
+ * correlated in JDK Mission Control with garbage collection, lock contention and other JVM events of the same
+ * thread and time. When no recording is running, instrumented code only creates the event, which the JIT
+ * compiler removes, and checks {@code shouldCommit()}.
+ */
+package pro.gammel.thymewire.jfr;
@@ -0,0 +1,103 @@
+package pro.gammel.thymewire.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram with fixed buckets. Recording a value increments one bucket counter and the sum without
+ * allocating, so it can be used on every request.
+ */
+public final class Histogram {
+
+    /**
+     * Upper bounds of the latency buckets in nanoseconds, from 0.5 ms to 10 s.
+     */
+    private static final long[] LATENCY_BOUNDS = {
+            500_000L, 1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L, 100_000_000L,
+            250_000_000L, 500_000_000L, 1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+    };
+
+    /**
+     * Upper bounds of the size buckets in bytes, from 16 KB to 1 GB in powers of four.
+     */
+    private static final long[] SIZE_BOUNDS = {
+            1L << 14, 1L << 16, 1L << 18, 1L << 20, 1L << 22, 1L << 24, 1L << 26, 1L << 28, 1L << 30
+    };
+
+    /**
+     * State of the histogram at a point of time.
+     *
+     * @param bounds upper bounds of the buckets, the last bucket is unbounded
+     * @param counts counts of values in every bucket, one more than bounds
+     * @param count number of recorded values
+     * @param sum sum of recorded values
+     */
+    public record Snapshot(long[] bounds, long[] counts, long count, long sum) {
+
+        /**
+         * Estimates the quantile as the upper bound of the bucket containing it.
+         *
+         * @param quantile the quantile, e.g. 0.95
+         * @return the upper bound, or the largest bound if the quantile falls into the unbounded bucket,
+         *         or 0 if nothing was recorded
+         */
+        public long quantile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < bounds.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return bounds[i];
+                }
+            }
+            return bounds[bounds.length - 1];
+        }
+    }
+
+    private final long[] bounds;
+
+    private final AtomicLongArray counts;
+
+    private final LongAdder sum = new LongAdder();
+
+    private Histogram(long[] bounds) {
+        this.bounds = bounds;
+        this.counts = new AtomicLongArray(bounds.length + 1);
+    }
+
+    /**
+     * Creates a histogram of durations in nanoseconds.
+     */
+    public static Histogram latency() {
+        return new Histogram(LATENCY_BOUNDS);
+    }
+
+    /**
+     * Creates a histogram of sizes in bytes.
+     */
+    public static Histogram size() {
+        return new Histogram(SIZE_BOUNDS);
+    }
+
+    public void record(long value) {
+        int bucket = 0;
+        while (bucket < bounds.length && value > bounds[bucket]) {
+            bucket++;
+        }
+        counts.incrementAndGet(bucket);
+        sum.add(value);
+    }
+
+    public Snapshot snapshot() {
+        var values = new long[counts.length()];
+        long count = 0;
+        for (int i = 0; i < values.length; i++) {
+            values[i] = counts.get(i);
+            count += values[i];
+        }
+        return new Snapshot(bounds, values, count, sum.sum());
+    }
+}
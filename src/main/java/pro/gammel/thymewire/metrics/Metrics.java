@@ -0,0 +1,215 @@
+package pro.gammel.thymewire.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+
+/**
+ * Metrics of the previewer: latency histograms of requests by controller and of renders by template, response
+ * statuses, bytes sent and memory allocated by requests, and gauges registered by other services, e.g. the hit
+ * ratio of the output cache. Recording does not allocate once the controller or template has been seen.
+ * <p>
+ * Metrics are exported in the Prometheus text format and as nested maps for JSON.
+ */
+public class Metrics {
+
+    private static final String PREFIX = "thymewire_";
+
+    private static final MathContext SIGNIFICANT_DIGITS = new MathContext(6);
+
+    private record Gauge(String name, String help, String label, String value, DoubleSupplier supplier) {}
+
+    private final Map<String, Histogram> requests = new ConcurrentHashMap<>();
+
+    private final Map<String, Histogram> allocations = new ConcurrentHashMap<>();
+
+    private final Map<String, Histogram> renders = new ConcurrentHashMap<>();
+
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    private final LongAdder bytesSent = new LongAdder();
+
+    private final List<Gauge> gauges = new CopyOnWriteArrayList<>();
+
+    /**
+     * Records the completed request.
+     *
+     * @param controller the name of the controller which served the request
+     * @param status the HTTP status of the response
+     * @param nanos the time of the request
+     * @param bytes the size of the response body
+     * @param allocated the bytes allocated by the request thread, negative if not measured
+     */
+    public void request(String controller, int status, long nanos, long bytes, long allocated) {
+        histogram(requests, controller, false).record(nanos);
+        if (status >= 0 && status < statuses.length()) {
+            statuses.incrementAndGet(status);
+        }
+        bytesSent.add(bytes);
+        if (allocated >= 0) {
+            histogram(allocations, controller, true).record(allocated);
+        }
+    }
+
+    /**
+     * Records the completed render of the template, including the time waiting for its turn.
+     */
+    public void render(String template, long nanos) {
+        histogram(renders, template, false).record(nanos);
+    }
+
+    /**
+     * Registers the gauge read on every export.
+     *
+     * @param name the name of the metric without prefix, e.g. "output_cache_hit_ratio"
+     * @param help the description of the metric
+     * @param supplier the current value
+     */
+    public void gauge(String name, String help, DoubleSupplier supplier) {
+        gauges.add(new Gauge(name, help, null, null, supplier));
+    }
+
+    /**
+     * Registers the gauge with a label, e.g. one per priority of the scheduler.
+     */
+    public void gauge(String name, String help, String label, String value, DoubleSupplier supplier) {
+        gauges.add(new Gauge(name, help, label, value, supplier));
+    }
+
+    private static Histogram histogram(Map<String, Histogram> histograms, String key, boolean size) {
+        var histogram = histograms.get(key);
+        if (histogram == null) {
+            histogram = histograms.computeIfAbsent(key, k -> size ? Histogram.size() : Histogram.latency());
+        }
+        return histogram;
+    }
+
+    /**
+     * Writes the metrics in the Prometheus text exposition format.
+     */
+    public void writePrometheus(Appendable out) throws IOException {
+        writeHistograms(out, "http_request_duration_seconds", "Time of HTTP requests by controller",
+                "controller", requests, 1e9);
+        writeHistograms(out, "http_request_allocated_bytes", "Bytes allocated by the thread serving the request",
+                "controller", allocations, 1);
+        writeHistograms(out, "render_duration_seconds", "Time of renders by template, including waiting for a slot",
+                "template", renders, 1e9);
+
+        header(out, "http_responses_total", "HTTP responses by status", "counter");
+        for (int status = 0; status < statuses.length(); status++) {
+            long count = statuses.get(status);
+            if (count > 0) {
+                out.append(PREFIX).append("http_responses_total{status=\"").append(String.valueOf(status))
+                        .append("\"} ").append(String.valueOf(count)).append('\n');
+            }
+        }
+        header(out, "http_response_bytes_total", "Bytes of HTTP response bodies", "counter");
+        out.append(PREFIX).append("http_response_bytes_total ").append(String.valueOf(bytesSent.sum())).append('\n');
+
+        String previous = null;
+        for (var gauge : gauges) {
+            if (!gauge.name().equals(previous)) {
+                header(out, gauge.name(), gauge.help(), "gauge");
+                previous = gauge.name();
+            }
+            out.append(PREFIX).append(gauge.name());
+            if (gauge.label() != null) {
+                out.append('{').append(gauge.label()).append("=\"").append(escape(gauge.value())).append("\"}");
+            }
+            out.append(' ').append(number(gauge.supplier().getAsDouble())).append('\n');
+        }
+    }
+
+    private static void writeHistograms(Appendable out, String name, String help, String label,
+                                        Map<String, Histogram> histograms, double scale) throws IOException {
+        header(out, name, help, "histogram");
+        for (var entry : new TreeMap<>(histograms).entrySet()) {
+            var labels = label + "=\"" + escape(entry.getKey()) + "\"";
+            var snapshot = entry.getValue().snapshot();
+            long cumulative = 0;
+            for (int i = 0; i < snapshot.counts().length; i++) {
+                cumulative += snapshot.counts()[i];
+                var bound = i < snapshot.bounds().length ? number(snapshot.bounds()[i] / scale) : "+Inf";
+                out.append(PREFIX).append(name).append("_bucket{").append(labels).append(",le=\"").append(bound)
+                        .append("\"} ").append(String.valueOf(cumulative)).append('\n');
+            }
+            out.append(PREFIX).append(name).append("_sum{").append(labels).append("} ")
+                    .append(number(snapshot.sum() / scale)).append('\n');
+            out.append(PREFIX).append(name).append("_count{").append(labels).append("} ")
+                    .append(String.valueOf(snapshot.count())).append('\n');
+        }
+    }
+
+    private static void header(Appendable out, String name, String help, String type) throws IOException {
+        out.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private static String number(double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return Double.isNaN(value) ? "NaN" : value > 0 ? "+Inf" : "-Inf";
+        }
+        return BigDecimal.valueOf(value).round(SIGNIFICANT_DIGITS).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    /**
+     * Returns the metrics as nested maps: histograms with count, mean and estimated quantiles in milliseconds
+     * or bytes, counters and gauges.
+     */
+    public Map<String, Object> toMap() {
+        var result = new LinkedHashMap<String, Object>();
+        result.put("requests", summaries(requests, 1e6));
+        result.put("allocatedBytes", summaries(allocations, 1));
+        result.put("renders", summaries(renders, 1e6));
+        var statusCounts = new TreeMap<String, Long>();
+        for (int status = 0; status < statuses.length(); status++) {
+            if (statuses.get(status) > 0) {
+                statusCounts.put(String.valueOf(status), statuses.get(status));
+            }
+        }
+        result.put("statuses", statusCounts);
+        result.put("bytesSent", bytesSent.sum());
+        var gaugeValues = new LinkedHashMap<String, Object>();
+        for (var gauge : gauges) {
+            var value = gauge.supplier().getAsDouble();
+            if (gauge.label() == null) {
+                gaugeValues.put(gauge.name(), value);
+            } else {
+                @SuppressWarnings("unchecked")
+                var labelled = (Map<String, Object>) gaugeValues.computeIfAbsent(gauge.name(),
+                        k -> new LinkedHashMap<String, Object>());
+                labelled.put(gauge.value(), value);
+            }
+        }
+        result.put("gauges", gaugeValues);
+        return result;
+    }
+
+    private static Map<String, Object> summaries(Map<String, Histogram> histograms, double scale) {
+        var result = new TreeMap<String, Object>();
+        histograms.forEach((key, histogram) -> {
+            var snapshot = histogram.snapshot();
+            var summary = new LinkedHashMap<String, Object>();
+            summary.put("count", snapshot.count());
+            summary.put("mean", snapshot.count() == 0 ? 0 : snapshot.sum() / scale / snapshot.count());
+            summary.put("p50", snapshot.quantile(0.5) / scale);
+            summary.put("p95", snapshot.quantile(0.95) / scale);
+            summary.put("p99", snapshot.quantile(0.99) / scale);
+            result.put(key, summary);
+        });
+        return result;
+    }
+}
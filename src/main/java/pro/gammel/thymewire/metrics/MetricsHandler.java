@@ -0,0 +1,43 @@
+package pro.gammel.thymewire.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves the metrics in the Prometheus text format at {@link #PATH} and as JSON at {@link #PATH}.json.
+ */
+public class MetricsHandler implements HttpHandler {
+
+    public static final String PATH = "/__thymewire/metrics";
+
+    private final Metrics metrics;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public MetricsHandler(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        byte[] body;
+        if (exchange.getRequestURI().getPath().endsWith(".json")) {
+            body = mapper.writeValueAsBytes(metrics.toMap());
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+        } else {
+            var text = new StringBuilder();
+            metrics.writePrometheus(text);
+            body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        }
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package pro.gammel.thymewire.models;
+
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+/**
+ * Deeply read-only copies of models shared between requests. Objects and arrays that are already frozen,
+ * e.g. subtrees of a frozen base model referenced by a {@link MergePatch merge patch}, and lazy or snapshot views
+ * are kept
+ * as they are, so freezing a composed model copies only its own parts.
+ */
+final class FrozenModel {
+
+    private FrozenModel() {
+    }
+
+    /**
+     * Returns the read-only copy of the model.
+     *
+     * @param model the model, which is not modified
+     * @return the model itself if it is already read-only, otherwise its read-only copy
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> freeze(Map<String, Object> model) {
+        return (Map<String, Object>) freezeValue(model);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object freezeValue(Object value) {
+        if (value instanceof FrozenMap || value instanceof FrozenList || LazyJsonModel.isLazy(value)
+                || ModelSnapshotCodec.isView(value)) {
+            return value;
+        }
+        if (value instanceof Map<?, ?> map) {
+            var copy = new LinkedHashMap<String, Object>(map.size() * 4 / 3 + 1);
+            ((Map<String, Object>) map).forEach((key, element) -> copy.put(key, freezeValue(element)));
+            return new FrozenMap(copy);
+        }
+        if (value instanceof List<?> list) {
+            var copy = new ArrayList<>(list.size());
+            for (var element : list) {
+                copy.add(freezeValue(element));
+            }
+            return new FrozenList(copy);
+        }
+        return value;
+    }
+
+    private static final class FrozenMap extends AbstractMap<String, Object> {
+
+        private final Map<String, Object> map;
+
+        FrozenMap(Map<String, Object> map) {
+            this.map = Collections.unmodifiableMap(map);
+        }
+
+        @Override
+        public Object get(Object key) {
+            return map.get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return map.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return map.size();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return map.entrySet();
+        }
+    }
+
+    private static final class FrozenList extends AbstractList<Object> implements RandomAccess {
+
+        private final List<Object> list;
+
+        FrozenList(List<Object> list) {
+            this.list = list;
+        }
+
+        @Override
+        public Object get(int index) {
+            return list.get(index);
+        }
+
+        @Override
+        public int size() {
+            return list.size();
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package pro.gammel.thymewire.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * JSON document kept as bytes, from which parsers can be started at arbitrary token offsets. The end offsets of
+ * all objects and arrays are recorded in one pass on first use, so that reading the members of a container
+ * continues after nested containers instead of parsing them again at every nesting level.
+ * <p>
+ * If the document is a mapped file truncated while it is read, the access fault of the mapping is reported as
+ * a failure of the model, which has to be read again.
+ */
+final class JsonSource {
+
+    /**
+     * Receives the direct members of a container.
+     */
+    interface Members {
+
+        /**
+         * Receives the member.
+         *
+         * @param name the name of the object member, null for array elements
+         * @param offset the offset of the value
+         * @param token the first token of the value
+         * @param parser the parser positioned at the value; the content of objects and arrays must not be read
+         */
+        void member(String name, int offset, JsonToken token, JsonParser parser) throws IOException;
+    }
+
+    private final ByteBuffer buffer;
+
+    private final JsonFactory factory;
+
+    private final String description;
+
+    // Start offsets of all objects and arrays in the order of the document and their end offsets, exclusive
+    private volatile int[] starts;
+
+    private int[] ends;
+
+    JsonSource(ByteBuffer buffer, JsonFactory factory, String description) {
+        this.buffer = buffer;
+        this.factory = factory;
+        this.description = description;
+    }
+
+    /**
+     * Creates a parser positioned before the token starting at the given offset.
+     */
+    JsonParser parserAt(int offset) {
+        try {
+            return factory.createParser(new BufferInputStream(buffer.duplicate().position(offset), -1));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the value starting at the given offset, creating lazy views for objects and arrays.
+     */
+    Object valueAt(int offset) {
+        return switch (byteAt(offset)) {
+            case '{' -> new LazyJsonObject(this, offset);
+            case '[' -> new LazyJsonArray(this, offset);
+            default -> scalarAt(offset);
+        };
+    }
+
+    /**
+     * Reads the value of the scalar token at the given offset. The token is parsed as an element of an array,
+     * because the parser does not accept root-level numbers followed by a separator.
+     */
+    private Object scalarAt(int offset) {
+        try (var parser = factory.createParser(new BufferInputStream(buffer.duplicate().position(offset), '['))) {
+            parser.nextToken();
+            return scalar(parser, parser.nextToken());
+        } catch (IOException e) {
+            throw failure(e);
+        }
+    }
+
+    /**
+     * Converts the current scalar token to the same Java type as databind uses for untyped values.
+     */
+    static Object scalar(JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT -> parser.getNumberValue();
+            case VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case VALUE_NULL -> null;
+            default -> throw new IOException("Unexpected token " + token + " at " + parser.currentTokenLocation());
+        };
+    }
+
+    /**
+     * Reads the value at the given offset, creating lazy views for objects and arrays, whose content is not read.
+     */
+    Object valueAt(int offset, JsonParser parser, JsonToken token) throws IOException {
+        return switch (token) {
+            case START_OBJECT -> new LazyJsonObject(this, offset);
+            case START_ARRAY -> new LazyJsonArray(this, offset);
+            default -> scalar(parser, token);
+        };
+    }
+
+    /**
+     * Reads the direct members of the object or array starting at the given offset. Nested objects and arrays
+     * are not parsed: reading continues after their recorded end.
+     *
+     * @param offset the offset of the container
+     * @param members the receiver of the members
+     */
+    void members(int offset, Members members) throws IOException {
+        boolean object = byteAt(offset) == '{';
+        var parser = parserAt(offset);
+        try {
+            parser.nextToken();
+            // Offset of the first byte read by the parser in the buffer
+            int base = offset;
+            while (true) {
+                var token = parser.nextToken();
+                if (token == null || token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    return;
+                }
+                String name = null;
+                if (object) {
+                    name = parser.currentName();
+                    token = parser.nextToken();
+                }
+                int at = base + (int) parser.currentTokenLocation().getByteOffset();
+                members.member(name, at, token, parser);
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    int next = skipWhitespace(end(at));
+                    if (byteAt(next) != ',') {
+                        return;
+                    }
+                    // The rest of the members is parsed as a container opened right before them
+                    parser.close();
+                    parser = factory.createParser(new BufferInputStream(buffer.duplicate().position(next + 1),
+                            object ? '{' : '['));
+                    parser.nextToken();
+                    base = next;
+                }
+            }
+        } finally {
+            parser.close();
+        }
+    }
+
+    /**
+     * Returns the offset after the end of the object or array starting at the given offset.
+     */
+    private int end(int start) throws IOException {
+        var indexed = starts;
+        if (indexed == null) {
+            synchronized (this) {
+                indexed = starts;
+                if (indexed == null) {
+                    indexed = indexContainers();
+                }
+            }
+        }
+        int position = Arrays.binarySearch(indexed, start);
+        if (position < 0) {
+            throw new IOException("No object or array at " + start);
+        }
+        return ends[position];
+    }
+
+    private int[] indexContainers() throws IOException {
+        var startOffsets = new int[64];
+        var endOffsets = new int[64];
+        var open = new int[16];
+        int count = 0;
+        int depth = 0;
+        try (var parser = parserAt(0)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+                    if (count == startOffsets.length) {
+                        startOffsets = Arrays.copyOf(startOffsets, count * 2);
+                        endOffsets = Arrays.copyOf(endOffsets, count * 2);
+                    }
+                    if (depth == open.length) {
+                        open = Arrays.copyOf(open, depth * 2);
+                    }
+                    startOffsets[count] = (int) parser.currentTokenLocation().getByteOffset();
+                    open[depth++] = count++;
+                } else if (token == JsonToken.END_OBJECT || token == JsonToken.END_ARRAY) {
+                    endOffsets[open[--depth]] = (int) parser.currentTokenLocation().getByteOffset() + 1;
+                }
+            }
+        }
+        ends = Arrays.copyOf(endOffsets, count);
+        var indexed = Arrays.copyOf(startOffsets, count);
+        starts = indexed;
+        return indexed;
+    }
+
+    private int skipWhitespace(int offset) throws IOException {
+        int position = offset;
+        while (position < buffer.limit()) {
+            var b = byteAt(position);
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return position;
+            }
+            position++;
+        }
+        throw new IOException("Unexpected end of document at " + position);
+    }
+
+    private byte byteAt(int offset) {
+        try {
+            return buffer.get(offset);
+        } catch (InternalError e) {
+            throw failure(truncated(e));
+        }
+    }
+
+    /**
+     * Converts the fault of a mapped buffer, raised when the file was truncated after mapping.
+     */
+    private static IOException truncated(InternalError fault) {
+        return new IOException("File changed while being read", fault);
+    }
+
+    RuntimeException failure(Exception cause) {
+        return new IllegalStateException("Failed to read model " + description + ": " + cause.getMessage(), cause);
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+    private static class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        // Byte returned before the buffer content or -1 if there is none
+        private int prefix;
+
+        BufferInputStream(ByteBuffer buffer, int prefix) {
+            this.buffer = buffer;
+            this.prefix = prefix;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (prefix >= 0) {
+                int result = prefix;
+                prefix = -1;
+                return result;
+            }
+            try {
+                return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+            } catch (InternalError e) {
+                throw truncated(e);
+            }
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            int count = 0;
+            if (prefix >= 0) {
+                bytes[offset] = (byte) prefix;
+                prefix = -1;
+                count = 1;
+            }
+            int remaining = Math.min(length - count, buffer.remaining());
+            try {
+                buffer.get(bytes, offset + count, remaining);
+            } catch (InternalError e) {
+                throw truncated(e);
+            }
+            count += remaining;
+            return count == 0 ? -1 : count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining() + (prefix >= 0 ? 1 : 0);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package pro.gammel.thymewire.models;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * Read-only list view of a JSON array. On first access only the offsets of the elements are indexed,
+ * elements are read when they are requested.
+ */
+final class LazyJsonArray extends AbstractList<Object> implements RandomAccess {
+
+    private static final Object UNREAD = new Object();
+
+    private final JsonSource source;
+
+    private final int offset;
+
+    private volatile int[] offsets;
+
+    private Object[] elements;
+
+    LazyJsonArray(JsonSource source, int offset) {
+        this.source = source;
+        this.offset = offset;
+    }
+
+    @Override
+    public int size() {
+        return index().length;
+    }
+
+    @Override
+    public Object get(int index) {
+        var offsets = index();
+        if (index < 0 || index >= offsets.length) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + offsets.length);
+        }
+        synchronized (this) {
+            var element = elements[index];
+            if (element == UNREAD) {
+                element = source.valueAt(offsets[index]);
+                elements[index] = element;
+            }
+            return element;
+        }
+    }
+
+    private int[] index() {
+        var indexed = offsets;
+        if (indexed == null) {
+            synchronized (this) {
+                indexed = offsets;
+                if (indexed == null) {
+                    indexed = build();
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private int[] build() {
+        var elementOffsets = new Offsets();
+        try {
+            source.members(offset, elementOffsets);
+        } catch (IOException e) {
+            throw source.failure(e);
+        }
+        var indexed = Arrays.copyOf(elementOffsets.offsets, elementOffsets.count);
+        elements = new Object[indexed.length];
+        Arrays.fill(elements, UNREAD);
+        offsets = indexed;
+        return indexed;
+    }
+
+    private static final class Offsets implements JsonSource.Members {
+
+        private int[] offsets = new int[16];
+
+        private int count;
+
+        @Override
+        public void member(String name, int offset, JsonToken token, JsonParser parser) {
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            offsets[count++] = offset;
+        }
+    }
+}
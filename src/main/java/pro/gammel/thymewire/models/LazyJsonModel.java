@@ -0,0 +1,67 @@
+package pro.gammel.thymewire.models;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+
+/**
+ * Lazily parsed JSON model. The file is exposed as read-only {@link Map} and {@link java.util.List} views, which
+ * read and index only the parts of the document that the template actually reaches. Files up to 16 MB are read
+ * into the heap, larger ones are memory-mapped; if a mapped file is truncated, reading the model fails.
+ * Values have the same types as produced by parsing into {@code HashMap} with Jackson: strings, integers,
+ * longs, big integers, doubles, booleans and nulls.
+ * <p>
+ * The mapping is kept while the model is referenced, so the model must be reloaded after the file changes.
+ */
+public final class LazyJsonModel {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    // Files up to this size are copied to the heap instead of being mapped
+    private static final long MAX_COPIED_SIZE = 16 * 1024 * 1024;
+
+    private LazyJsonModel() {
+    }
+
+    /**
+     * Opens the JSON file as a lazy model.
+     *
+     * @param file the JSON file containing an object
+     * @return lazy map view of the root object
+     * @throws IOException if the file cannot be read or does not contain a JSON object
+     */
+    public static Map<String, Object> open(Path file) throws IOException {
+        ByteBuffer buffer;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            var size = channel.size();
+            if (size <= MAX_COPIED_SIZE) {
+                // A copy is not affected by an editor truncating the file while saving it
+                buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+            } else {
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            }
+        }
+        var source = new JsonSource(buffer, FACTORY, file.toString());
+        try (var parser = source.parserAt(0)) {
+            var token = parser.nextToken();
+            if (token != JsonToken.START_OBJECT) {
+                throw new IOException("Model " + file + " must contain a JSON object, but starts with " + token);
+            }
+            return new LazyJsonObject(source, (int) parser.currentTokenLocation().getByteOffset());
+        }
+    }
+
+    /**
+     * Checks if the value is a lazy view created by this class.
+     */
+    public static boolean isLazy(Object value) {
+        return value instanceof LazyJsonObject || value instanceof LazyJsonArray;
+    }
+}
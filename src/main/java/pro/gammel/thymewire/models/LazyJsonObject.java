@@ -0,0 +1,129 @@
+package pro.gammel.thymewire.models;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Read-only map view of a JSON object that is indexed on first access. Indexing reads only the members
+ * of this object: nested objects and arrays are not parsed and are exposed as lazy views themselves.
+ */
+final class LazyJsonObject extends AbstractMap<String, Object> {
+
+    // Small objects are searched linearly instead of allocating a hash index
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+
+    private final JsonSource source;
+
+    private final int offset;
+
+    private volatile String[] keys;
+
+    private Object[] values;
+
+    private Map<String, Integer> positions;
+
+    LazyJsonObject(JsonSource source, int offset) {
+        this.source = source;
+        this.offset = offset;
+    }
+
+    @Override
+    public int size() {
+        return index().length;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return position(key) >= 0;
+    }
+
+    @Override
+    public Object get(Object key) {
+        int position = position(key);
+        return position >= 0 ? values[position] : null;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        var keys = index();
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<>() {
+                    private int next = 0;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < keys.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= keys.length) {
+                            throw new NoSuchElementException();
+                        }
+                        var entry = new SimpleImmutableEntry<>(keys[next], values[next]);
+                        next++;
+                        return entry;
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return keys.length;
+            }
+        };
+    }
+
+    private int position(Object key) {
+        var keys = index();
+        if (positions != null) {
+            var position = positions.get(key);
+            return position != null ? position : -1;
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].equals(key)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private String[] index() {
+        var indexed = keys;
+        if (indexed == null) {
+            synchronized (this) {
+                indexed = keys;
+                if (indexed == null) {
+                    indexed = build();
+                }
+            }
+        }
+        return indexed;
+    }
+
+    private String[] build() {
+        var names = new ArrayList<String>();
+        var members = new ArrayList<>();
+        try {
+            source.members(offset, (name, at, token, parser) -> {
+                names.add(name);
+                members.add(source.valueAt(at, parser, token));
+            });
+        } catch (IOException e) {
+            throw source.failure(e);
+        }
+        var indexed = names.toArray(new String[0]);
+        values = members.toArray();
+        if (indexed.length > LINEAR_SEARCH_LIMIT) {
+            var map = new HashMap<String, Integer>(indexed.length * 2);
+            for (int i = 0; i < indexed.length; i++) {
+                map.put(indexed[i], i);
+            }
+            positions = map;
+        }
+        keys = indexed;
+        return indexed;
+    }
+}
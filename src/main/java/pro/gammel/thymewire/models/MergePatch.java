@@ -0,0 +1,43 @@
+package pro.gammel.thymewire.models;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * JSON merge patch (RFC 7386) over model maps with structural sharing: only the objects on the paths changed
+ * by the patch are copied, all other subtrees of the target are referenced by the result as they are.
+ * Neither the target nor the patch is modified, so both must be treated as read-only afterwards.
+ */
+public final class MergePatch {
+
+    private MergePatch() {
+    }
+
+    /**
+     * Applies the patch to the target.
+     *
+     * @param target the base model
+     * @param patch the patch: null values remove properties, objects are merged recursively,
+     *              all other values including arrays replace the properties of the target
+     * @return the patched model
+     */
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> apply(Map<String, Object> target, Map<String, Object> patch) {
+        var result = new LinkedHashMap<>(target);
+        for (var entry : patch.entrySet()) {
+            var key = entry.getKey();
+            var value = entry.getValue();
+            if (value == null) {
+                result.remove(key);
+            } else if (value instanceof Map<?, ?> patchValue && result.get(key) instanceof Map<?, ?> targetValue) {
+                result.put(key, apply((Map<String, Object>) targetValue, (Map<String, Object>) patchValue));
+            } else if (value instanceof Map<?, ?> patchValue) {
+                // Patch applied to a missing or non-object value is applied to an empty object
+                result.put(key, apply(Map.of(), (Map<String, Object>) patchValue));
+            } else {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+}
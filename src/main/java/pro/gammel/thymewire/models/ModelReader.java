@@ -0,0 +1,206 @@
+package pro.gammel.thymewire.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.discovery.ModelLoader;
+import pro.gammel.thymewire.jfr.ModelFileEvent;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Reads model files. Files exceeding the lazy model threshold from the site configuration are opened
+ * as {@link LazyJsonModel}. Other files are decoded from their {@link ModelSnapshots snapshots} when these are
+ * enabled and fresh, or parsed from JSON into maps.
+ * <p>
+ * A model variant may contain only the differences from another model of the same template, declaring it
+ * in the "extends" property: empty string or "default" for the default model, or the id of another variant.
+ * The rest of the variant is a {@link MergePatch merge patch} of the extended model. Composed models share
+ * unchanged subtrees with their base and are cached until any file in the chain changes. Cached models are
+ * read-only and shared by all callers.
+ */
+public class ModelReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelReader.class);
+
+    public static final String EXTENDS_META_FIELD = "extends";
+
+    private static final String DEFAULT_MODEL_ID = "default";
+
+    /**
+     * State of the file used in model composition.
+     */
+    private record Stamp(Path file, long modified, long size) {
+
+        static Stamp of(Path file) throws IOException {
+            var attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new Stamp(file, attributes.lastModifiedTime().toMillis(), attributes.size());
+        }
+
+        boolean isCurrent() {
+            try {
+                return equals(of(file));
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+    private record Composition(Map<String, Object> model, List<Stamp> chain) {
+
+        boolean isCurrent() {
+            return chain.stream().allMatch(Stamp::isCurrent);
+        }
+    }
+
+    private final Map<Path, Composition> compositions = new ConcurrentHashMap<>();
+
+    private final SiteProvider site;
+
+    private final ObjectMapper mapper;
+
+    private final ModelSnapshots snapshots;
+
+    /**
+     * Creates the reader.
+     *
+     * @param site the site
+     * @param mapper the mapper parsing JSON models, shared with the controller
+     * @param snapshots the snapshots of the models, or null if snapshots are not used
+     */
+    public ModelReader(SiteProvider site, ObjectMapper mapper, ModelSnapshots snapshots) {
+        this.site = site;
+        this.mapper = mapper;
+        this.snapshots = snapshots;
+    }
+
+    /**
+     * Returns the number of cached model compositions.
+     */
+    public int compositions() {
+        return compositions.size();
+    }
+
+    /**
+     * Reads the model file.
+     *
+     * @param file the JSON file containing the model
+     * @return the model
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public Map<String, Object> read(Path file) throws IOException {
+        return read(file, path -> {});
+    }
+
+    /**
+     * Reads the model file, reporting every file the model is composed of.
+     *
+     * @param file the JSON file containing the model
+     * @param files consumer of the model file and the files of the models it extends
+     * @return the model
+     * @throws IOException if the file cannot be read or parsed
+     */
+    public Map<String, Object> read(Path file, Consumer<Path> files) throws IOException {
+        var chain = new ArrayList<Stamp>();
+        try {
+            return resolve(file, chain, false);
+        } finally {
+            chain.forEach(stamp -> files.accept(stamp.file()));
+        }
+    }
+
+    /**
+     * Reads the model and the models it extends, reusing cached compositions.
+     *
+     * @param file the model file
+     * @param chain the files read so far, extended with the files of this model
+     * @param base whether the model is extended by another one and should be cached for sharing
+     */
+    private Map<String, Object> resolve(Path file, List<Stamp> chain, boolean base) throws IOException {
+        var event = new ModelFileEvent();
+        event.begin();
+        var cached = compositions.get(file);
+        if (cached != null && cached.isCurrent()) {
+            chain.addAll(cached.chain());
+            commit(event, file, cached.chain().getFirst().size(), "cached", true);
+            return cached.model();
+        }
+        for (var stamp : chain) {
+            if (stamp.file().equals(file)) {
+                throw new IOException("Cyclic model inheritance: " + chain.stream().map(Stamp::file).toList() + " -> " + file);
+            }
+        }
+        int start = chain.size();
+        var stamp = Stamp.of(file);
+        chain.add(stamp);
+        var model = readFile(file, stamp.size(), event);
+        if (model.get(EXTENDS_META_FIELD) instanceof String parent) {
+            var baseModel = resolve(baseModelPath(file, parent), chain, true);
+            var patch = new LinkedHashMap<>(model);
+            patch.remove(EXTENDS_META_FIELD);
+            LOG.debug("Model {} extends {}", file, parent.isEmpty() ? DEFAULT_MODEL_ID : parent);
+            model = MergePatch.apply(baseModel, patch);
+        }
+        if (base || chain.size() - start > 1) {
+            // Cached models are shared by all callers, so they are frozen instead of being copied on every read
+            model = FrozenModel.freeze(model);
+            compositions.put(file, new Composition(model, List.copyOf(chain.subList(start, chain.size()))));
+        } else {
+            compositions.remove(file);
+        }
+        return model;
+    }
+
+    /**
+     * Returns the path of the model extended by the variant, e.g. "login.locked.json" for "login.error.json"
+     * extending "locked".
+     */
+    private static Path baseModelPath(Path variant, String parent) throws IOException {
+        var name = ModelLoader.MODEL_FILE_PATTERN.matcher(variant.getFileName().toString());
+        if (!name.matches() || name.group(2) == null) {
+            throw new IOException("Default model " + variant + " cannot extend another model");
+        }
+        var template = name.group(1);
+        var baseName = parent.isEmpty() || DEFAULT_MODEL_ID.equals(parent) ? template : template + "." + parent;
+        return variant.resolveSibling(baseName + ".json");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> readFile(Path file, long size, ModelFileEvent event) throws IOException {
+        var threshold = site.config().lazyModelThreshold();
+        if (threshold != null && size >= threshold) {
+            LOG.debug("Opening lazy model {}", file);
+            var model = LazyJsonModel.open(file);
+            commit(event, file, size, "lazy", false);
+            return model;
+        }
+        if (snapshots != null && snapshots.enabled()) {
+            var model = snapshots.read(file);
+            if (model != null) {
+                LOG.debug("Model {} read from snapshot", file);
+                commit(event, file, size, "snapshot", true);
+                return model;
+            }
+        }
+        Map<String, Object> model = mapper.readValue(file.toFile(), HashMap.class);
+        commit(event, file, size, "json", false);
+        return model;
+    }
+
+    private static void commit(ModelFileEvent event, Path file, long size, String source, boolean cacheHit) {
+        if (event.shouldCommit()) {
+            event.path = file.toString();
+            event.bytes = size;
+            event.source = source;
+            event.cacheHit = cacheHit;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package pro.gammel.thymewire.models;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Multiplies arrays of the model to the requested number of elements, e.g. to see how a template renders
+ * a table of 10,000 rows having a fixture of 3. Generated elements repeat the original ones with varied values:
+ * numbers are incremented, strings receive a suffix with the element number and booleans alternate.
+ * Scaled arrays are generated on access, and the model is copied only on the paths to the scaled arrays.
+ */
+public final class ModelScaler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelScaler.class);
+
+    public static final String SCALE_META_FIELD = "scale";
+
+    private ModelScaler() {
+    }
+
+    /**
+     * Parses scaling specification.
+     *
+     * @param specification comma-separated pairs of array path and size, e.g. "items:10000,orders.lines:20"
+     * @return sizes by array path
+     * @throws IllegalArgumentException if the specification is invalid
+     */
+    public static Map<String, Integer> parse(String specification) {
+        var sizes = new LinkedHashMap<String, Integer>();
+        for (var pair : specification.split(",")) {
+            if (pair.isBlank()) {
+                continue;
+            }
+            var separator = pair.lastIndexOf(':');
+            if (separator <= 0) {
+                throw new IllegalArgumentException("Invalid scale '" + pair + "', expected <path>:<size>");
+            }
+            try {
+                var size = Integer.parseInt(pair.substring(separator + 1).trim());
+                if (size < 0) {
+                    throw new IllegalArgumentException("Scale of '" + pair + "' must not be negative");
+                }
+                sizes.put(pair.substring(0, separator).trim(), size);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid scale '" + pair + "', expected <path>:<size>");
+            }
+        }
+        return sizes;
+    }
+
+    /**
+     * Scales the arrays of the model.
+     *
+     * @param model the model, which is not modified
+     * @param sizes sizes by dot-separated array path; a path may go through arrays, then the array
+     *              is scaled in every element
+     * @return the scaled model
+     */
+    public static Map<String, Object> scale(Map<String, Object> model, Map<String, Integer> sizes) {
+        if (sizes.isEmpty()) {
+            return model;
+        }
+        // Deeper arrays first, so that outer arrays repeat already scaled elements
+        var paths = new ArrayList<>(sizes.keySet());
+        paths.sort(Comparator.comparingInt((String path) -> path.split("\\.").length).reversed());
+        var result = model;
+        for (var path : paths) {
+            result = scale(result, path.split("\\."), 0, sizes.get(path), path);
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> scale(Map<String, Object> model, String[] path, int depth, int size,
+                                             String fullPath) {
+        var key = path[depth];
+        var value = model.get(key);
+        Object scaled;
+        if (depth == path.length - 1) {
+            if (!(value instanceof List<?> list) || list.isEmpty()) {
+                LOG.warn("Cannot scale '{}': not a non-empty array", fullPath);
+                return model;
+            }
+            scaled = new ScaledList((List<Object>) list, size);
+        } else if (value instanceof Map<?, ?> map) {
+            scaled = scale((Map<String, Object>) map, path, depth + 1, size, fullPath);
+        } else if (value instanceof List<?> list) {
+            var elements = new ArrayList<>(list.size());
+            for (var element : list) {
+                elements.add(element instanceof Map<?, ?> map
+                        ? scale((Map<String, Object>) map, path, depth + 1, size, fullPath)
+                        : element);
+            }
+            scaled = elements;
+        } else {
+            LOG.warn("Cannot scale '{}': '{}' is not an object or array", fullPath, key);
+            return model;
+        }
+        var result = new LinkedHashMap<>(model);
+        result.put(key, scaled);
+        return result;
+    }
+
+    /**
+     * Varies the value of the original element for the generated element with the given index.
+     */
+    @SuppressWarnings("unchecked")
+    private static Object vary(Object value, int index) {
+        return switch (value) {
+            case null -> null;
+            case String s -> s + "-" + (index + 1);
+            case Integer i -> i + index;
+            case Long l -> l + index;
+            case Double d -> d + index;
+            case Boolean b -> index % 2 == 0 ? b : !b;
+            case Map<?, ?> map -> {
+                var varied = new LinkedHashMap<String, Object>();
+                ((Map<String, Object>) map).forEach((k, v) -> varied.put(k, vary(v, index)));
+                yield varied;
+            }
+            default -> value;
+        };
+    }
+
+    private static class ScaledList extends AbstractList<Object> implements RandomAccess {
+
+        private final List<Object> original;
+
+        private final int size;
+
+        ScaledList(List<Object> original, int size) {
+            this.original = original;
+            this.size = size;
+        }
+
+        @Override
+        public Object get(int index) {
+            Objects.checkIndex(index, size);
+            if (index < original.size()) {
+                return original.get(index);
+            }
+            return vary(original.get(index % original.size()), index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
@@ -0,0 +1,487 @@
+package pro.gammel.thymewire.models;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Binary format of the model snapshots.
+ * <pre>
+ * snapshot := magic:int version:byte sourceModified:long sourceSize:long keys value
+ * keys     := count:varint (length:varint utf8)*
+ * value    := NULL | TRUE | FALSE | INT zigzag:varint | LONG long | BIG_INTEGER length:varint bytes
+ *           | DOUBLE double | STRING length:varint utf8 | ARRAY size:varint count:varint value*
+ *           | OBJECT size:varint count:varint (key:varint value)*
+ * </pre>
+ * Object keys are interned in the key table and referenced by index. The size of arrays and objects is the number
+ * of bytes following it, so that a reader can skip them. Decoding reads the snapshot in place: objects and arrays
+ * are read-only {@link Map} and {@link List} views that index their members on first access and read values
+ * on request, with the same value types as parsing the JSON with Jackson.
+ */
+public final class ModelSnapshotCodec {
+
+    /**
+     * Header of the snapshot.
+     *
+     * @param sourceModified last modification time of the source file in milliseconds
+     * @param sourceSize size of the source file in bytes
+     */
+    public record Header(long sourceModified, long sourceSize) {}
+
+    /**
+     * Size of the encoded header in bytes: magic number, version, modification time and size of the source file.
+     */
+    public static final int HEADER_SIZE = 4 + 1 + 8 + 8;
+
+    private static final int MAGIC = 0x54574D53; // "TWMS"
+    private static final byte VERSION = 2;
+
+    private static final byte NULL = 0;
+    private static final byte TRUE = 1;
+    private static final byte FALSE = 2;
+    private static final byte INT = 3;
+    private static final byte LONG = 4;
+    private static final byte BIG_INTEGER = 5;
+    private static final byte DOUBLE = 6;
+    private static final byte STRING = 7;
+    private static final byte ARRAY = 8;
+    private static final byte OBJECT = 9;
+
+    // Marker of a value not read from the snapshot yet
+    private static final Object UNREAD = new Object();
+
+    private ModelSnapshotCodec() {
+    }
+
+    /**
+     * Encodes the model.
+     *
+     * @param model the model as parsed from JSON
+     * @param header the header identifying the source file
+     * @return encoded snapshot
+     */
+    public static byte[] encode(Map<String, Object> model, Header header) throws IOException {
+        var keys = new LinkedHashMap<String, Integer>();
+        collectKeys(model, keys);
+
+        var bytes = new ByteArrayOutputStream();
+        var out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(header.sourceModified());
+        out.writeLong(header.sourceSize());
+        writeVarInt(out, keys.size());
+        for (var key : keys.keySet()) {
+            writeString(out, key);
+        }
+        writeValue(out, model, keys);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads the header of the snapshot.
+     *
+     * @return the header or null if the buffer does not contain a snapshot of the supported version
+     */
+    public static Header header(ByteBuffer buffer) {
+        if (buffer.remaining() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.get(4) != VERSION) {
+            return null;
+        }
+        return new Header(buffer.getLong(5), buffer.getLong(13));
+    }
+
+    /**
+     * Decodes the model directly from the buffer, which is typically a mapped snapshot file. Only the key table
+     * is read, the model is read from the buffer when it is accessed.
+     *
+     * @param buffer the snapshot, which must not be modified while the model is used
+     * @return the read-only model
+     * @throws IllegalArgumentException if the buffer does not contain a valid snapshot
+     */
+    public static Map<String, Object> decode(ByteBuffer buffer) {
+        if (header(buffer) == null) {
+            throw new IllegalArgumentException("Not a model snapshot");
+        }
+        var in = buffer.duplicate().position(HEADER_SIZE);
+        var keys = new String[readVarInt(in)];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = readString(in);
+        }
+        if (in.get(in.position()) != OBJECT) {
+            throw new IllegalArgumentException("Snapshot root is not an object");
+        }
+        return new SnapshotObject(in.slice(), keys, 0);
+    }
+
+    /**
+     * Checks if the value is a view of a decoded snapshot.
+     */
+    static boolean isView(Object value) {
+        return value instanceof SnapshotObject || value instanceof SnapshotArray;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectKeys(Object value, Map<String, Integer> keys) {
+        if (value instanceof Map<?, ?> map) {
+            for (var entry : ((Map<String, Object>) map).entrySet()) {
+                keys.putIfAbsent(entry.getKey(), keys.size());
+                collectKeys(entry.getValue(), keys);
+            }
+        } else if (value instanceof List<?> list) {
+            for (var element : list) {
+                collectKeys(element, keys);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void writeValue(DataOutputStream out, Object value, Map<String, Integer> keys) throws IOException {
+        switch (value) {
+            case null -> out.writeByte(NULL);
+            case Boolean b -> out.writeByte(b ? TRUE : FALSE);
+            case Integer i -> {
+                out.writeByte(INT);
+                writeVarInt(out, (i << 1) ^ (i >> 31));
+            }
+            case Long l -> {
+                out.writeByte(LONG);
+                out.writeLong(l);
+            }
+            case BigInteger bi -> {
+                out.writeByte(BIG_INTEGER);
+                var bytes = bi.toByteArray();
+                writeVarInt(out, bytes.length);
+                out.write(bytes);
+            }
+            case Double d -> {
+                out.writeByte(DOUBLE);
+                out.writeDouble(d);
+            }
+            case String s -> {
+                out.writeByte(STRING);
+                writeString(out, s);
+            }
+            case List<?> list -> {
+                var content = new ByteArrayOutputStream();
+                var contentOut = new DataOutputStream(content);
+                writeVarInt(contentOut, list.size());
+                for (var element : list) {
+                    writeValue(contentOut, element, keys);
+                }
+                out.writeByte(ARRAY);
+                writeVarInt(out, content.size());
+                content.writeTo(out);
+            }
+            case Map<?, ?> map -> {
+                var content = new ByteArrayOutputStream();
+                var contentOut = new DataOutputStream(content);
+                writeVarInt(contentOut, map.size());
+                for (var entry : ((Map<String, Object>) map).entrySet()) {
+                    writeVarInt(contentOut, keys.get(entry.getKey()));
+                    writeValue(contentOut, entry.getValue(), keys);
+                }
+                out.writeByte(OBJECT);
+                writeVarInt(out, content.size());
+                content.writeTo(out);
+            }
+            default -> throw new IOException("Unsupported model value type: " + value.getClass().getName());
+        }
+    }
+
+    /**
+     * Reads the value at the given position, creating views for objects and arrays.
+     */
+    private static Object readValue(ByteBuffer in, String[] keys, int position) {
+        var tag = in.get(position);
+        return switch (tag) {
+            case NULL -> null;
+            case TRUE -> Boolean.TRUE;
+            case FALSE -> Boolean.FALSE;
+            case INT -> {
+                int zigzag = readVarInt(in.position(position + 1));
+                yield (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+            case LONG -> in.getLong(position + 1);
+            case BIG_INTEGER -> {
+                var bytes = new byte[readVarInt(in.position(position + 1))];
+                in.get(bytes);
+                yield new BigInteger(bytes);
+            }
+            case DOUBLE -> in.getDouble(position + 1);
+            case STRING -> readString(in.position(position + 1));
+            case ARRAY -> new SnapshotArray(in, keys, position);
+            case OBJECT -> new SnapshotObject(in, keys, position);
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag + " at " + position);
+        };
+    }
+
+    /**
+     * Returns the position after the value at the given position, without reading it.
+     */
+    private static int skipValue(ByteBuffer in, int position) {
+        var tag = in.get(position);
+        in.position(position + 1);
+        return switch (tag) {
+            case NULL, TRUE, FALSE -> position + 1;
+            case INT -> {
+                readVarInt(in);
+                yield in.position();
+            }
+            case LONG, DOUBLE -> position + 9;
+            case BIG_INTEGER, STRING, ARRAY, OBJECT -> {
+                int length = readVarInt(in);
+                yield in.position() + length;
+            }
+            default -> throw new IllegalArgumentException("Unknown value tag " + tag + " at " + position);
+        };
+    }
+
+    /**
+     * Object of the snapshot, indexed on first access. Values are read when they are requested.
+     */
+    private static final class SnapshotObject extends AbstractMap<String, Object> {
+
+        // Small objects are searched linearly instead of allocating a hash index
+        private static final int LINEAR_SEARCH_LIMIT = 8;
+
+        private final ByteBuffer buffer;
+
+        private final String[] keyTable;
+
+        private final int position;
+
+        private volatile String[] keys;
+
+        private int[] offsets;
+
+        private Object[] values;
+
+        private Map<String, Integer> positions;
+
+        SnapshotObject(ByteBuffer buffer, String[] keyTable, int position) {
+            this.buffer = buffer;
+            this.keyTable = keyTable;
+            this.position = position;
+        }
+
+        @Override
+        public int size() {
+            return index().length;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return find(key) >= 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int member = find(key);
+            return member >= 0 ? value(member) : null;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            var keys = index();
+            return new AbstractSet<>() {
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<>() {
+                        private int next = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < keys.length;
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (next >= keys.length) {
+                                throw new NoSuchElementException();
+                            }
+                            var entry = new SimpleImmutableEntry<>(keys[next], value(next));
+                            next++;
+                            return entry;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return keys.length;
+                }
+            };
+        }
+
+        private synchronized Object value(int member) {
+            var value = values[member];
+            if (value == UNREAD) {
+                value = readValue(buffer.duplicate(), keyTable, offsets[member]);
+                values[member] = value;
+            }
+            return value;
+        }
+
+        private int find(Object key) {
+            var keys = index();
+            if (positions != null) {
+                var member = positions.get(key);
+                return member != null ? member : -1;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private String[] index() {
+            var indexed = keys;
+            if (indexed == null) {
+                synchronized (this) {
+                    indexed = keys;
+                    if (indexed == null) {
+                        indexed = build();
+                    }
+                }
+            }
+            return indexed;
+        }
+
+        private String[] build() {
+            var in = buffer.duplicate().position(position + 1);
+            readVarInt(in);
+            int count = readVarInt(in);
+            var names = new String[count];
+            var valueOffsets = new int[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = keyTable[readVarInt(in)];
+                valueOffsets[i] = in.position();
+                in.position(skipValue(in, valueOffsets[i]));
+            }
+            offsets = valueOffsets;
+            values = new Object[count];
+            Arrays.fill(values, UNREAD);
+            if (count > LINEAR_SEARCH_LIMIT) {
+                var map = new HashMap<String, Integer>(count * 2);
+                for (int i = 0; i < count; i++) {
+                    map.put(names[i], i);
+                }
+                positions = map;
+            }
+            keys = names;
+            return names;
+        }
+    }
+
+    /**
+     * Array of the snapshot. On first access only the offsets of the elements are indexed, elements are read
+     * when they are requested.
+     */
+    private static final class SnapshotArray extends AbstractList<Object> implements RandomAccess {
+
+        private final ByteBuffer buffer;
+
+        private final String[] keyTable;
+
+        private final int position;
+
+        private volatile int[] offsets;
+
+        private Object[] elements;
+
+        SnapshotArray(ByteBuffer buffer, String[] keyTable, int position) {
+            this.buffer = buffer;
+            this.keyTable = keyTable;
+            this.position = position;
+        }
+
+        @Override
+        public int size() {
+            return index().length;
+        }
+
+        @Override
+        public Object get(int index) {
+            var offsets = index();
+            Objects.checkIndex(index, offsets.length);
+            synchronized (this) {
+                var element = elements[index];
+                if (element == UNREAD) {
+                    element = readValue(buffer.duplicate(), keyTable, offsets[index]);
+                    elements[index] = element;
+                }
+                return element;
+            }
+        }
+
+        private int[] index() {
+            var indexed = offsets;
+            if (indexed == null) {
+                synchronized (this) {
+                    indexed = offsets;
+                    if (indexed == null) {
+                        var in = buffer.duplicate().position(position + 1);
+                        readVarInt(in);
+                        indexed = new int[readVarInt(in)];
+                        int next = in.position();
+                        for (int i = 0; i < indexed.length; i++) {
+                            indexed[i] = next;
+                            next = skipValue(in, next);
+                        }
+                        elements = new Object[indexed.length];
+                        Arrays.fill(elements, UNREAD);
+                        offsets = indexed;
+                    }
+                }
+            }
+            return indexed;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            var bytes = new byte[length];
+            in.get(in.position(), bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
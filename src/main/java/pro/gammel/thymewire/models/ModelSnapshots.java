@@ -0,0 +1,166 @@
+package pro.gammel.thymewire.models;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.discovery.ModelInfo;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Binary snapshots of the model files, stored in the cache directory configured in the site configuration.
+ * A snapshot is used only while the modification time and size of its source file match the ones recorded
+ * in the snapshot, otherwise the model has to be parsed from JSON.
+ */
+public class ModelSnapshots implements SiteProvider.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ModelSnapshots.class);
+
+    private static final String SNAPSHOT_EXTENSION = ".bin";
+
+    private final SiteProvider site;
+
+    private final ObjectMapper mapper;
+
+    public ModelSnapshots(SiteProvider site, ObjectMapper mapper) {
+        this.site = site;
+        this.mapper = mapper;
+    }
+
+    /**
+     * Checks if snapshots are enabled in the site configuration.
+     */
+    public boolean enabled() {
+        return site.config().cache() != null;
+    }
+
+    /**
+     * Compiles snapshots of all discovered models that have no fresh snapshot yet.
+     */
+    public void compileAll() {
+        if (!enabled()) {
+            return;
+        }
+        var compiled = new AtomicInteger();
+        site.templates().values().parallelStream()
+                .flatMap(template -> template.models().stream())
+                .map(ModelInfo::path)
+                .forEach(path -> {
+                    if (compile(path)) {
+                        compiled.incrementAndGet();
+                    }
+                });
+        LOG.info("- {} model snapshots compiled", compiled.get());
+    }
+
+    /**
+     * Compiles the snapshot of the model file, if the existing snapshot is missing or stale.
+     *
+     * @param source the JSON file
+     * @return true if a new snapshot was written
+     */
+    @SuppressWarnings("unchecked")
+    public boolean compile(Path source) {
+        var snapshot = snapshotPath(source);
+        if (snapshot == null) {
+            return false;
+        }
+        try {
+            var header = header(source);
+            if (header.equals(readHeader(snapshot))) {
+                return false;
+            }
+            Map<String, Object> model = mapper.readValue(source.toFile(), HashMap.class);
+            var bytes = ModelSnapshotCodec.encode(model, header);
+            Files.createDirectories(snapshot.getParent());
+            var temporary = Files.createTempFile(snapshot.getParent(), snapshot.getFileName().toString(), ".tmp");
+            Files.write(temporary, bytes);
+            Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOG.debug("Compiled model snapshot {} ({} bytes)", snapshot, bytes.length);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to compile model snapshot of {}: {}", source, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Reads the model from the snapshot of the given JSON file.
+     *
+     * @param source the JSON file
+     * @return the read-only model backed by the mapped snapshot, or null if there is no fresh snapshot
+     */
+    public Map<String, Object> read(Path source) {
+        var snapshot = snapshotPath(source);
+        if (snapshot == null || !Files.exists(snapshot)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (!header(source).equals(ModelSnapshotCodec.header(buffer))) {
+                LOG.debug("Model snapshot {} is stale", snapshot);
+                return null;
+            }
+            return ModelSnapshotCodec.decode(buffer);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Failed to read model snapshot {}: {}", snapshot, e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void modelUpdated(String template, String model) {
+        var info = site.templates().get(template);
+        if (info != null && enabled()) {
+            info.models().stream()
+                    .filter(candidate -> candidate.id().equals(model))
+                    .findFirst()
+                    .ifPresent(candidate -> compile(candidate.path()));
+        }
+    }
+
+    @Override
+    public void configUpdated(SiteConfig config) {
+        compileAll();
+    }
+
+    private Path snapshotPath(Path source) {
+        var config = site.config();
+        if (config.cache() == null) {
+            return null;
+        }
+        var testPath = site.basePath().resolve(config.test()).toAbsolutePath().normalize();
+        var sourcePath = source.toAbsolutePath().normalize();
+        if (!sourcePath.startsWith(testPath)) {
+            return null;
+        }
+        var relative = testPath.relativize(sourcePath).toString();
+        return site.basePath().resolve(config.cache()).resolve("models").resolve(relative + SNAPSHOT_EXTENSION);
+    }
+
+    private static ModelSnapshotCodec.Header header(Path source) throws IOException {
+        var attributes = Files.readAttributes(source, BasicFileAttributes.class);
+        return new ModelSnapshotCodec.Header(attributes.lastModifiedTime().toMillis(), attributes.size());
+    }
+
+    private static ModelSnapshotCodec.Header readHeader(Path snapshot) throws IOException {
+        if (!Files.exists(snapshot)) {
+            return null;
+        }
+        try (var channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            var size = Math.min(channel.size(), ModelSnapshotCodec.HEADER_SIZE);
+            return ModelSnapshotCodec.header(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+}
@@ -3,7 +3,9 @@ package pro.gammel.thymewire.rendering;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.jfr.DeserializeEvent;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -23,10 +25,15 @@ public class ClassAwareDeserializer {
 
     /**
      * Processes properties of the model map, deserializing those with "class" meta field.
+     * The model is copied only if some property was deserialized. The result is a read-only view, because
+     * the model may be shared with later requests through the caches of the model reader.
      */
     @SuppressWarnings("unchecked")
     public Map<String, Object> processModel(Map<String, Object> model) {
-        Map<String, Object> result = new HashMap<>();
+        var event = new DeserializeEvent();
+        event.begin();
+        Map<String, Object> result = null;
+        int deserialized = 0;
 
         for (Map.Entry<String, Object> entry : model.entrySet()) {
             String key = entry.getKey();
@@ -48,8 +55,11 @@ public class ClassAwareDeserializer {
                         // Deserialize to the specified class
                         Object typedObject = mapper.convertValue(dataMap, targetClass);
                         LOG.debug("Deserialized model property '{}' as {}", key, targetClass.getSimpleName());
+                        if (result == null) {
+                            result = new HashMap<>(model);
+                        }
                         result.put(key, typedObject);
-                        continue;
+                        deserialized++;
                     } catch (ClassNotFoundException e) {
                         LOG.warn("Class not found: {}, keeping property '{}' as Map", className, key);
                     } catch (Exception e) {
@@ -57,11 +67,13 @@ public class ClassAwareDeserializer {
                     }
                 }
             }
-
-            // No class field or deserialization failed, keep original value
-            result.put(key, value);
         }
 
-        return result;
+        if (event.shouldCommit()) {
+            event.properties = model.size();
+            event.deserialized = deserialized;
+            event.commit();
+        }
+        return Collections.unmodifiableMap(result != null ? result : model);
     }
 }
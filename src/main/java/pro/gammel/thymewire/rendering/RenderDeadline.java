@@ -0,0 +1,142 @@
+package pro.gammel.thymewire.rendering;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Deadline of the render running on the current thread. Thymeleaf cannot be interrupted, so the render is stopped
+ * cooperatively: hooks in the template processing call {@link #check()} for every produced event and
+ * {@link #enter(String)} for every included component, and the render fails with {@link RenderTimeoutException}
+ * at the first check after the deadline. The deadline also collects the timings reported by the exception.
+ * This class is not thread safe, a deadline is only used by the thread that started it.
+ */
+public final class RenderDeadline implements AutoCloseable {
+
+    private static final ThreadLocal<RenderDeadline> CURRENT = new ThreadLocal<>();
+
+    // Events between two readings of the clock
+    private static final int CHECK_INTERVAL = 64;
+
+    // Templates tracked for the report, later ones are only counted
+    private static final int MAX_TRACKED_TEMPLATES = 256;
+
+    /**
+     * Time spent in the template before the render was stopped.
+     *
+     * @param template the template name
+     * @param count the number of times the template was entered
+     * @param firstNanos time of the first entry since the start of the render
+     * @param lastNanos time of the last entry since the start of the render
+     */
+    public record Timing(String template, int count, long firstNanos, long lastNanos) {}
+
+    private final String template;
+    private final long timeoutNanos;
+    private final long start;
+    private final long deadline;
+
+    private final Map<String, long[]> templates = new LinkedHashMap<>();
+    private long events;
+    private int countdown = CHECK_INTERVAL;
+    private String last;
+
+    private RenderDeadline(String template, Duration timeout) {
+        this.template = template;
+        this.timeoutNanos = timeout.toNanos();
+        this.start = System.nanoTime();
+        this.deadline = start + timeoutNanos;
+    }
+
+    /**
+     * Starts the deadline of the render on the current thread, unless a render with deadline is already running
+     * on it, e.g. when a layout is rendered as part of the page.
+     *
+     * @param template the name of the rendered template
+     * @param timeout the time limit of the render
+     * @return the deadline to close when the render completes, or null if the outer deadline applies
+     */
+    public static RenderDeadline start(String template, Duration timeout) {
+        if (CURRENT.get() != null) {
+            return null;
+        }
+        var deadline = new RenderDeadline(template, timeout);
+        CURRENT.set(deadline);
+        return deadline;
+    }
+
+    /**
+     * Returns the deadline of the render running on the current thread.
+     *
+     * @return the deadline or null if the render has no deadline
+     */
+    public static RenderDeadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the time left until the deadline, zero if it has passed.
+     */
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0, deadline - System.nanoTime()));
+    }
+
+    /**
+     * Counts an event of the render and stops the render if the deadline has passed.
+     *
+     * @throws RenderTimeoutException if the deadline has passed
+     */
+    public void check() {
+        if (--countdown <= 0) {
+            countdown = CHECK_INTERVAL;
+            events += CHECK_INTERVAL;
+            checkClock();
+        }
+    }
+
+    /**
+     * Records the inclusion of the template into the render and stops the render if the deadline has passed.
+     *
+     * @param template the name of the included template
+     * @throws RenderTimeoutException if the deadline has passed
+     */
+    public static void enter(String template) {
+        var deadline = CURRENT.get();
+        if (deadline == null) {
+            return;
+        }
+        long now = System.nanoTime() - deadline.start;
+        var timing = deadline.templates.get(template);
+        if (timing == null && deadline.templates.size() < MAX_TRACKED_TEMPLATES) {
+            deadline.templates.put(template, new long[]{0, now, now});
+            timing = deadline.templates.get(template);
+        }
+        if (timing != null) {
+            timing[0]++;
+            timing[2] = now;
+        }
+        deadline.last = template;
+        deadline.checkClock();
+    }
+
+    private void checkClock() {
+        long now = System.nanoTime();
+        if (now - deadline > 0) {
+            throw new RenderTimeoutException(template, Duration.ofNanos(timeoutNanos), Duration.ofNanos(now - start),
+                    events + CHECK_INTERVAL - countdown, last, timings());
+        }
+    }
+
+    private List<Timing> timings() {
+        var timings = new ArrayList<Timing>(templates.size());
+        templates.forEach((name, timing) -> timings.add(new Timing(name, (int) timing[0], timing[1], timing[2])));
+        return timings;
+    }
+
+    @Override
+    public void close() {
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,325 @@
+package pro.gammel.thymewire.rendering;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Profile of the request rendered on the current thread. Instrumented code opens a {@link Span} for every step,
+ * which costs a thread local lookup when no profile is running. Spans nest: the time of a span is split into
+ * its own time and the time of the spans opened within it, so that the profile can be shown both as totals by
+ * category and as a tree of calls. This class is not thread safe, a profile is only used by the thread that
+ * started it.
+ */
+public final class RenderProfile implements AutoCloseable {
+
+    public static final String ROUTE = "route";
+    public static final String MODEL = "model";
+    public static final String DESERIALIZE = "deserialize";
+    public static final String LAYOUT = "layout";
+    public static final String RENDER = "render";
+    public static final String PARSE = "parse";
+    public static final String COMPONENT = "component";
+    public static final String MESSAGES = "messages";
+    public static final String OUTPUT = "output";
+
+    private static final Map<String, String> DESCRIPTIONS = Map.of(
+            ROUTE, "Route matching",
+            MODEL, "Model load and parse",
+            DESERIALIZE, "Model deserialization",
+            LAYOUT, "Layout resolution",
+            RENDER, "Template processing",
+            PARSE, "Template parse",
+            COMPONENT, "Components",
+            MESSAGES, "Message lookups",
+            OUTPUT, "Output writing");
+
+    private static final ThreadLocal<RenderProfile> CURRENT = new ThreadLocal<>();
+
+    // Children of a node tracked in the tree, later ones are merged into the parent
+    private static final int MAX_CHILDREN = 64;
+
+    /**
+     * Open step of the profile, closing it records its time.
+     */
+    public interface Span extends AutoCloseable {
+
+        @Override
+        void close();
+    }
+
+    private static final Span NONE = () -> {};
+
+    /**
+     * Node of the call tree, with the times of all calls of the same step at the same position.
+     *
+     * @param category the category of the step
+     * @param name the name of the step, e.g. the component name
+     * @param count the number of calls
+     * @param totalNanos time of the calls including nested steps
+     * @param selfNanos time of the calls excluding nested steps
+     * @param children the nested steps
+     */
+    public record Node(String category, String name, int count, long totalNanos, long selfNanos, List<Node> children) {}
+
+    private static final class MutableNode implements Span {
+
+        private final String category;
+        private final String name;
+        private final MutableNode parent;
+        private final Map<String, MutableNode> children = new LinkedHashMap<>();
+        private final RenderProfile profile;
+        private int count;
+        private long total;
+        private long nested;
+        private long started;
+
+        MutableNode(RenderProfile profile, MutableNode parent, String category, String name) {
+            this.profile = profile;
+            this.parent = parent;
+            this.category = category;
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            profile.end(this);
+        }
+
+        Node freeze() {
+            var frozen = new ArrayList<Node>(children.size());
+            children.values().forEach(child -> frozen.add(child.freeze()));
+            return new Node(category, name, count, total, total - nested, frozen);
+        }
+    }
+
+    private final long start = System.nanoTime();
+
+    private final MutableNode root = new MutableNode(this, null, "total", "total");
+
+    private final Deque<MutableNode> open = new ArrayDeque<>();
+
+    private long elapsed = -1;
+
+    private RenderProfile() {
+        root.started = start;
+        root.count = 1;
+        open.push(root);
+    }
+
+    /**
+     * Starts profiling on the current thread.
+     *
+     * @return the profile to close when the request is complete
+     */
+    public static RenderProfile start() {
+        var profile = new RenderProfile();
+        CURRENT.set(profile);
+        return profile;
+    }
+
+    /**
+     * Returns the profile running on the current thread.
+     *
+     * @return the profile or null if the request is not profiled
+     */
+    public static RenderProfile current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Opens the step in the profile of the current thread.
+     *
+     * @param category the category of the step, e.g. {@link #COMPONENT}
+     * @param name the name of the step, e.g. the component name
+     * @return the span to close when the step is complete
+     */
+    public static Span span(String category, String name) {
+        var profile = CURRENT.get();
+        return profile != null ? profile.begin(category, name) : NONE;
+    }
+
+    /**
+     * Opens the step in this profile.
+     */
+    public Span begin(String category, String name) {
+        var parent = open.peek();
+        var key = category + ':' + name;
+        var node = parent.children.get(key);
+        if (node == null) {
+            if (parent.children.size() < MAX_CHILDREN) {
+                node = new MutableNode(this, parent, category, name);
+                parent.children.put(key, node);
+            } else {
+                node = parent.children.computeIfAbsent(category + ":...",
+                        k -> new MutableNode(this, parent, category, "..."));
+            }
+        }
+        node.started = System.nanoTime();
+        open.push(node);
+        return node;
+    }
+
+    /**
+     * Records the time of a step measured by the caller as nested in the open step, e.g. the sum of many calls
+     * too short to be opened as spans one by one.
+     *
+     * @param category the category of the step
+     * @param name the name of the step
+     * @param count the number of calls
+     * @param nanos the time of the calls
+     */
+    public void record(String category, String name, int count, long nanos) {
+        if (count == 0) {
+            return;
+        }
+        var node = (MutableNode) begin(category, name);
+        open.pop();
+        node.count += count;
+        node.total += nanos;
+        node.parent.nested += nanos;
+    }
+
+    private void end(MutableNode node) {
+        long duration = System.nanoTime() - node.started;
+        if (node == root || !open.contains(node)) {
+            return;
+        }
+        // Spans left open by an exception are closed with the enclosing one
+        while (open.peek() != node) {
+            open.pop();
+        }
+        open.pop();
+        node.count++;
+        node.total += duration;
+        if (node.parent != null) {
+            node.parent.nested += duration;
+        }
+    }
+
+    /**
+     * Returns the call tree of the profile.
+     */
+    public Node tree() {
+        var frozen = root.freeze();
+        long total = elapsed >= 0 ? elapsed : System.nanoTime() - start;
+        long nested = frozen.children().stream().mapToLong(Node::totalNanos).sum();
+        return new Node(frozen.category(), frozen.name(), 1, total, total - nested, frozen.children());
+    }
+
+    /**
+     * Returns the own time of the steps by category, in the order of the first step of the category.
+     */
+    public Map<String, Long> categories() {
+        var categories = new LinkedHashMap<String, Long>();
+        collect(tree(), categories);
+        return categories;
+    }
+
+    private static void collect(Node node, Map<String, Long> categories) {
+        for (var child : node.children()) {
+            categories.merge(child.category(), child.selfNanos(), Long::sum);
+            collect(child, categories);
+        }
+    }
+
+    /**
+     * Returns the value of the Server-Timing header: own times by category and the total time.
+     */
+    public String serverTiming() {
+        var timings = categories().entrySet().stream()
+                .map(entry -> metric(entry.getKey(), entry.getValue(), DESCRIPTIONS.get(entry.getKey())))
+                .collect(Collectors.toCollection(ArrayList::new));
+        timings.add(metric("total", tree().totalNanos(), null));
+        return String.join(", ", timings);
+    }
+
+    private static String metric(String name, long nanos, String description) {
+        var metric = name + ";dur=" + String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+        return description != null ? metric + ";desc=\"" + description + "\"" : metric;
+    }
+
+    /**
+     * Returns the call tree as nested maps for JSON, with times in milliseconds.
+     */
+    public Map<String, Object> toMap() {
+        return toMap(tree());
+    }
+
+    private static Map<String, Object> toMap(Node node) {
+        var map = new LinkedHashMap<String, Object>();
+        map.put("category", node.category());
+        map.put("name", node.name());
+        map.put("count", node.count());
+        map.put("totalMillis", node.totalNanos() / 1e6);
+        map.put("selfMillis", node.selfNanos() / 1e6);
+        if (!node.children().isEmpty()) {
+            map.put("children", node.children().stream().map(RenderProfile::toMap).toList());
+        }
+        return map;
+    }
+
+    /**
+     * Returns the profile as HTML page: the times by category and the call tree with bars proportional
+     * to the total time.
+     *
+     * @param title the title of the page, e.g. the profiled path
+     */
+    public String toHtml(String title) {
+        var tree = tree();
+        var html = new StringBuilder();
+        html.append("""
+                <!DOCTYPE html>
+                <html>
+                <head>
+                    <title>Profile of %s</title>
+                    <style>
+                        body { font-family: monospace; margin: 20px; }
+                        ul { list-style: none; padding-left: 16px; }
+                        .bar { display: inline-block; height: 10px; background: #e8a33d; margin-right: 8px; }
+                        td { padding: 2px 12px; text-align: right; }
+                        td:first-child { text-align: left; }
+                    </style>
+                </head>
+                <body>
+                <h1>Profile of %s</h1>
+                <table>
+                """.formatted(escape(title), escape(title)));
+        categories().forEach((category, nanos) -> html.append("<tr><td>%s</td><td>%.3f ms</td></tr>%n".formatted(
+                escape(DESCRIPTIONS.getOrDefault(category, category)), nanos / 1e6)));
+        html.append("<tr><td><strong>Total</strong></td><td><strong>%.3f ms</strong></td></tr>%n</table>%n<ul>%n"
+                .formatted(tree.totalNanos() / 1e6));
+        appendNode(html, tree, Math.max(1, tree.totalNanos()));
+        html.append("</ul>\n</body>\n</html>\n");
+        return html.toString();
+    }
+
+    private static void appendNode(StringBuilder html, Node node, long scale) {
+        html.append("<li><span class=\"bar\" style=\"width: %dpx\"></span>%s %s &times;%d: %.3f ms (self %.3f ms)"
+                .formatted(Math.max(1, node.totalNanos() * 400 / scale), escape(node.category()), escape(node.name()),
+                        node.count(), node.totalNanos() / 1e6, node.selfNanos() / 1e6));
+        if (!node.children().isEmpty()) {
+            html.append("\n<ul>\n");
+            node.children().forEach(child -> appendNode(html, child, scale));
+            html.append("</ul>");
+        }
+        html.append("</li>\n");
+    }
+
+    private static String escape(String text) {
+        return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;");
+    }
+
+    @Override
+    public void close() {
+        if (elapsed < 0) {
+            elapsed = System.nanoTime() - start;
+        }
+        CURRENT.remove();
+    }
+}
@@ -0,0 +1,76 @@
+package pro.gammel.thymewire.rendering;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Thrown when a render is stopped by its {@link RenderDeadline}.
+ */
+public class RenderTimeoutException extends RuntimeException {
+
+    private final String template;
+    private final Duration timeout;
+    private final Duration elapsed;
+    private final long events;
+    private final String lastTemplate;
+    private final List<RenderDeadline.Timing> timings;
+
+    public RenderTimeoutException(String template, Duration timeout, Duration elapsed, long events,
+                                  String lastTemplate, List<RenderDeadline.Timing> timings) {
+        super("Rendering of " + template + " exceeded " + timeout.toMillis() + " ms"
+                + (lastTemplate != null ? ", last entered " + lastTemplate : ""));
+        this.template = template;
+        this.timeout = timeout;
+        this.elapsed = elapsed;
+        this.events = events;
+        this.lastTemplate = lastTemplate;
+        this.timings = List.copyOf(timings);
+    }
+
+    public String template() {
+        return template;
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    public Duration elapsed() {
+        return elapsed;
+    }
+
+    /**
+     * Returns the number of template events processed before the render was stopped.
+     */
+    public long events() {
+        return events;
+    }
+
+    /**
+     * Returns the template entered last before the render was stopped, or null if no component was included.
+     */
+    public String lastTemplate() {
+        return lastTemplate;
+    }
+
+    /**
+     * Returns the timings of the templates entered before the render was stopped, in the order of first entry.
+     */
+    public List<RenderDeadline.Timing> timings() {
+        return timings;
+    }
+
+    /**
+     * Finds the timeout in the causes of the exception, as Thymeleaf wraps exceptions of processors.
+     *
+     * @return the timeout or null if the exception was not caused by one
+     */
+    public static RenderTimeoutException find(Throwable exception) {
+        for (var cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof RenderTimeoutException timeout) {
+                return timeout;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,166 @@
+package pro.gammel.thymewire.rendering;
+
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * Writer encoding characters directly to UTF-8 into a growable byte buffer. The buffer is kept on {@link #reset()},
+ * so that instances can be pooled and reused across renders without re-growing.
+ * This class is not thread safe.
+ */
+public class Utf8BufferWriter extends Writer {
+
+    private byte[] buffer;
+
+    private int count;
+
+    // High surrogate written as the last character of the previous write call
+    private char pendingSurrogate;
+
+    public Utf8BufferWriter(int capacity) {
+        this.buffer = new byte[Math.max(capacity, 16)];
+    }
+
+    /**
+     * Makes sure the buffer can hold the given number of bytes without growing.
+     */
+    public void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, capacity);
+        }
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Discards the written content, keeping the allocated buffer.
+     */
+    public void reset() {
+        count = 0;
+        pendingSurrogate = 0;
+    }
+
+    /**
+     * Returns a copy of the written content of exact size. A high surrogate without its pair at the end of
+     * the content is replaced with '?', as {@link String#getBytes(java.nio.charset.Charset)} does.
+     */
+    public byte[] toByteArray() {
+        if (pendingSurrogate != 0) {
+            pendingSurrogate = 0;
+            putByte('?');
+        }
+        return Arrays.copyOf(buffer, count);
+    }
+
+    @Override
+    public void write(int c) {
+        encode((char) c);
+    }
+
+    @Override
+    public void write(char[] chars, int offset, int length) {
+        grow(length);
+        int end = offset + length;
+        int i = offset;
+        // ASCII fast path
+        while (i < end && pendingSurrogate == 0) {
+            char c = chars[i];
+            if (c >= 0x80) {
+                break;
+            }
+            buffer[count++] = (byte) c;
+            i++;
+        }
+        for (; i < end; i++) {
+            encode(chars[i]);
+        }
+    }
+
+    @Override
+    public void write(String str, int offset, int length) {
+        grow(length);
+        int end = offset + length;
+        int i = offset;
+        // ASCII fast path
+        while (i < end && pendingSurrogate == 0) {
+            char c = str.charAt(i);
+            if (c >= 0x80) {
+                break;
+            }
+            buffer[count++] = (byte) c;
+            i++;
+        }
+        for (; i < end; i++) {
+            encode(str.charAt(i));
+        }
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        var value = String.valueOf(csq);
+        write(value, 0, value.length());
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private void encode(char c) {
+        if (pendingSurrogate != 0) {
+            char high = pendingSurrogate;
+            pendingSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                putCodePoint(Character.toCodePoint(high, c));
+                return;
+            }
+            putByte('?');
+        }
+        if (c < 0x80) {
+            putByte(c);
+        } else if (c < 0x800) {
+            grow(2);
+            buffer[count++] = (byte) (0xC0 | (c >> 6));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            pendingSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            putByte('?');
+        } else {
+            grow(3);
+            buffer[count++] = (byte) (0xE0 | (c >> 12));
+            buffer[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+            buffer[count++] = (byte) (0x80 | (c & 0x3F));
+        }
+    }
+
+    private void putCodePoint(int codePoint) {
+        grow(4);
+        buffer[count++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[count++] = (byte) (0x80 | (codePoint & 0x3F));
+    }
+
+    private void putByte(int b) {
+        grow(1);
+        buffer[count++] = (byte) b;
+    }
+
+    private void grow(int additional) {
+        int required = count + additional;
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+    }
+}
@@ -9,6 +9,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 public class LayoutConfiguration {
 
@@ -33,6 +34,10 @@ public class LayoutConfiguration {
         return Optional.ofNullable(layouts.get(name));
     }
 
+    public Set<String> names() {
+        return Collections.unmodifiableSet(layouts.keySet());
+    }
+
 
     /**
      * Returns layout name by matching path
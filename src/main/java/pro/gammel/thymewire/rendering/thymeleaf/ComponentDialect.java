@@ -2,6 +2,7 @@ package pro.gammel.thymewire.rendering.thymeleaf;
 
 import org.thymeleaf.dialect.AbstractProcessorDialect;
 import org.thymeleaf.processor.IProcessor;
+import pro.gammel.thymewire.core.ComponentRegistry;
 
 import java.util.HashSet;
 import java.util.Set;
@@ -15,16 +16,30 @@ public class ComponentDialect extends AbstractProcessorDialect {
 
     public static final int PROCESSOR_PRECEDENCE = 1;
 
+    private final ComponentRegistry registry;
+
+    private final ComponentInstances instances;
+
     public ComponentDialect() {
+        this(null);
+    }
+
+    public ComponentDialect(ComponentRegistry registry) {
+        this(registry, null);
+    }
+
+    public ComponentDialect(ComponentRegistry registry, ComponentInstances instances) {
         super("Components",
               "c",
               PROCESSOR_PRECEDENCE);
+        this.registry = registry;
+        this.instances = instances;
     }
 
     @Override
     public Set<IProcessor> getProcessors(String dialectPrefix) {
         Set<IProcessor> processors = new HashSet<>();
-        processors.add(new ComponentElementProcessor(dialectPrefix));
+        processors.add(new ComponentElementProcessor(dialectPrefix, registry, instances));
         return processors;
     }
 }
\ No newline at end of file
@@ -3,6 +3,7 @@ package pro.gammel.thymewire.rendering.thymeleaf;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.exceptions.TemplateProcessingException;
 import org.thymeleaf.model.*;
 import org.thymeleaf.processor.element.AbstractElementModelProcessor;
 import org.thymeleaf.processor.element.IElementModelStructureHandler;
@@ -10,6 +11,10 @@ import org.thymeleaf.standard.expression.IStandardExpression;
 import org.thymeleaf.standard.expression.IStandardExpressionParser;
 import org.thymeleaf.standard.expression.StandardExpressions;
 import org.thymeleaf.templatemode.TemplateMode;
+import pro.gammel.thymewire.core.ComponentRegistry;
+import pro.gammel.thymewire.jfr.ComponentEvent;
+import pro.gammel.thymewire.rendering.RenderDeadline;
+import pro.gammel.thymewire.rendering.RenderProfile;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -30,7 +35,19 @@ public class ComponentElementProcessor extends AbstractElementModelProcessor {
 
     private final String componentType;
 
+    private final ComponentRegistry registry;
+
+    private final ComponentInstances instances;
+
     public ComponentElementProcessor(String dialectPrefix) {
+        this(dialectPrefix, null);
+    }
+
+    public ComponentElementProcessor(String dialectPrefix, ComponentRegistry registry) {
+        this(dialectPrefix, registry, null);
+    }
+
+    public ComponentElementProcessor(String dialectPrefix, ComponentRegistry registry, ComponentInstances instances) {
         super(
             TemplateMode.HTML,
             dialectPrefix,
@@ -41,6 +58,8 @@ public class ComponentElementProcessor extends AbstractElementModelProcessor {
             PRECEDENCE
         );
         this.componentType = dialectPrefix;
+        this.registry = registry;
+        this.instances = instances;
     }
 
     @Override
@@ -66,6 +85,13 @@ public class ComponentElementProcessor extends AbstractElementModelProcessor {
 
         // Convert component name from kebab-case to component filename
         String componentPath = String.format(COMPONENT_NAME_PATTERN, componentName.replace('.', '/'));
+        if (registry != null && !registry.exists(componentPath)) {
+            throw new TemplateProcessingException("Component " + elementName + " does not exist: expected template "
+                    + "templates/components/" + componentPath + ".html",
+                    context.getTemplateData().getTemplate(), elementTag.getLine(), elementTag.getCol());
+        }
+        // Recursive components are stopped here, before they include themselves again
+        RenderDeadline.enter(componentPath);
 
         // Build fragment expression with parameters
         StringBuilder fragmentExpr = new StringBuilder();
@@ -113,7 +139,20 @@ public class ComponentElementProcessor extends AbstractElementModelProcessor {
 
         // Replace the entire model with the new div
         model.reset();
-        model.add(divTag);
+        int id = instances != null ? instances.add(componentPath, componentModel) : -1;
+        if (id >= 0) {
+            // Markers allow to find and replace this instance in the page when the component changes
+            model.add(modelFactory.createComment(ComponentInstances.MARKER_PREFIX + id));
+            model.add(divTag);
+            model.add(modelFactory.createComment("/" + ComponentInstances.MARKER_PREFIX + id));
+        } else {
+            model.add(divTag);
+        }
+        if (RenderProfile.current() != null || new ComponentEvent().isEnabled()) {
+            // The render monitor times the component between the markers
+            model.insert(0, modelFactory.createComment(RenderMonitorDialect.PROFILE_MARKER_PREFIX + componentPath));
+            model.add(modelFactory.createComment("/" + RenderMonitorDialect.PROFILE_MARKER_PREFIX + componentPath));
+        }
     }
 
     private Map<String, Object> extractComponentModel(IProcessableElementTag tag, ITemplateContext context) {
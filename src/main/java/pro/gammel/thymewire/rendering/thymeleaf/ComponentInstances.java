@@ -0,0 +1,83 @@
+package pro.gammel.thymewire.rendering.thymeleaf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Records the components rendered into a page together with their models, so that a single component instance
+ * can be rendered again without the rest of the page. While recording, the {@link ComponentElementProcessor}
+ * surrounds every component with comment markers {@code <!--tw:c:<id>-->} and {@code <!--/tw:c:<id>-->}.
+ * Recording is bound to the rendering thread.
+ */
+public class ComponentInstances {
+
+    public static final String MARKER_PREFIX = "tw:c:";
+
+    /**
+     * Rendered component.
+     *
+     * @param id the id of the instance in the page, used in its markers
+     * @param component the component template name, e.g. "forms/input-c"
+     * @param model the model passed to the component as "__model", empty if the component has no attributes
+     */
+    public record Instance(int id, String component, Map<String, Object> model) {}
+
+    /**
+     * Components recorded on the current thread.
+     */
+    public final class Recording implements AutoCloseable {
+
+        private final List<Instance> instances = new ArrayList<>();
+
+        private int nextId;
+
+        private Recording(int firstId) {
+            this.nextId = firstId;
+        }
+
+        public List<Instance> instances() {
+            return instances;
+        }
+
+        /**
+         * Returns the id the next recorded instance would get.
+         */
+        public int nextId() {
+            return nextId;
+        }
+
+        @Override
+        public void close() {
+            current.remove();
+        }
+    }
+
+    private final ThreadLocal<Recording> current = new ThreadLocal<>();
+
+    /**
+     * Starts recording components on the current thread.
+     *
+     * @param firstId the id of the first recorded instance
+     */
+    public Recording begin(int firstId) {
+        var recording = new Recording(firstId);
+        current.set(recording);
+        return recording;
+    }
+
+    /**
+     * Records the component instance, if recording.
+     *
+     * @return the id of the instance or -1 if components are not recorded
+     */
+    int add(String component, Map<String, Object> model) {
+        var recording = current.get();
+        if (recording == null) {
+            return -1;
+        }
+        var instance = new Instance(recording.nextId++, component, model);
+        recording.instances.add(instance);
+        return instance.id();
+    }
+}
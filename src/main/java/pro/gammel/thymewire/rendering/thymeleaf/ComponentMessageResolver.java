@@ -3,6 +3,9 @@ package pro.gammel.thymewire.rendering.thymeleaf;
 import com.github.resource4j.thymeleaf3.Resource4jMessageResolver;
 import org.thymeleaf.context.ITemplateContext;
 import org.thymeleaf.messageresolver.IMessageResolver;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.MessageCache;
+import pro.gammel.thymewire.rendering.RenderProfile;
 
 public class ComponentMessageResolver implements IMessageResolver {
 
@@ -10,8 +13,23 @@ public class ComponentMessageResolver implements IMessageResolver {
 
     private final Resource4jMessageResolver delegate;
 
+    private final MessageCache cache;
+
+    private final DependencyTracker dependencies;
+
     public ComponentMessageResolver(Resource4jMessageResolver delegate) {
+        this(delegate, null);
+    }
+
+    public ComponentMessageResolver(Resource4jMessageResolver delegate, MessageCache cache) {
+        this(delegate, cache, null);
+    }
+
+    public ComponentMessageResolver(Resource4jMessageResolver delegate, MessageCache cache,
+                                    DependencyTracker dependencies) {
         this.delegate = delegate;
+        this.cache = cache;
+        this.dependencies = dependencies;
     }
 
     @Override
@@ -26,12 +44,33 @@ public class ComponentMessageResolver implements IMessageResolver {
 
     @Override
     public String resolveMessage(ITemplateContext context, Class<?> origin, String key, Object[] messageParameters) {
-        return delegate.resolveMessage(context, origin, resolve(context, origin, key), messageParameters);
+        try (var span = RenderProfile.span(RenderProfile.MESSAGES, key)) {
+            return lookup(context, origin, key, messageParameters);
+        }
+    }
+
+    private String lookup(ITemplateContext context, Class<?> origin, String key, Object[] messageParameters) {
+        var resolvedKey = resolve(context, key);
+        if (dependencies != null) {
+            dependencies.record(DependencyTracker.Dependency.messages(MessageCache.bundle(resolvedKey)));
+        }
+        if (cache == null || (messageParameters != null && messageParameters.length > 0)) {
+            return delegate.resolveMessage(context, origin, resolvedKey, messageParameters);
+        }
+        return cache.message(resolvedKey, context.getLocale(),
+                k -> delegate.resolveMessage(context, origin, k, messageParameters));
+    }
+
+    private String resolve(ITemplateContext context, String key) {
+        if (key.indexOf('.') >= 0) {
+            return key;
+        }
+        var template = context.getTemplateData().getTemplate();
+        return cache != null ? cache.key(template, key, ComponentMessageResolver::resolve) : resolve(template, key);
     }
 
-    private String resolve(ITemplateContext context, Class<?> origin, String key) {
+    private static String resolve(String template, String key) {
         if (key.indexOf('.') < 0) {
-            var template = context.getTemplateData().getTemplate();
             boolean component = template.endsWith("-c");
             return (component ? "components" : "pages") + "." + template.replace('/', '.') + "." + key;
         } else {
@@ -41,6 +80,6 @@ public class ComponentMessageResolver implements IMessageResolver {
 
     @Override
     public String createAbsentMessageRepresentation(ITemplateContext context, Class<?> origin, String key, Object[] messageParameters) {
-        return delegate.resolveMessage(context, origin, resolve(context, origin, key), messageParameters);
+        return delegate.resolveMessage(context, origin, resolve(context, key), messageParameters);
     }
 }
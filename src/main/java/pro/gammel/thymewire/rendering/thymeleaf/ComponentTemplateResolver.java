@@ -5,9 +5,20 @@ import com.github.resource4j.thymeleaf3.Resource4jTemplateResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.cache.ICacheEntryValidity;
+import org.thymeleaf.templatemode.TemplateMode;
 import org.thymeleaf.templateresolver.ITemplateResolver;
 import org.thymeleaf.templateresolver.TemplateResolution;
+import org.thymeleaf.templateresource.ITemplateResource;
+import org.thymeleaf.templateresource.StringTemplateResource;
+import pro.gammel.thymewire.core.ComponentRegistry;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.discovery.ComponentInfo;
+import pro.gammel.thymewire.rendering.RenderProfile;
 
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.Map;
 
 public class ComponentTemplateResolver implements ITemplateResolver {
@@ -16,8 +27,22 @@ public class ComponentTemplateResolver implements ITemplateResolver {
 
     private Resource4jTemplateResolver delegate;
 
+    private final ComponentRegistry registry;
+
+    private final DependencyTracker dependencies;
+
     public ComponentTemplateResolver(Resources resources) {
+        this(resources, null);
+    }
+
+    public ComponentTemplateResolver(Resources resources, ComponentRegistry registry) {
+        this(resources, registry, null);
+    }
+
+    public ComponentTemplateResolver(Resources resources, ComponentRegistry registry, DependencyTracker dependencies) {
         this.delegate = new Resource4jTemplateResolver(resources);
+        this.registry = registry;
+        this.dependencies = dependencies;
     }
 
     @Override
@@ -35,9 +60,96 @@ public class ComponentTemplateResolver implements ITemplateResolver {
                                               String ownerTemplate,
                                               String template,
                                               Map<String, Object> templateResolutionAttributes) {
+        if (dependencies != null) {
+            dependencies.resolved(ownerTemplate, template);
+        }
+        var resolution = resolve(configuration, ownerTemplate, template, templateResolutionAttributes);
+        return resolution != null && RenderProfile.current() != null ? profiled(resolution, template) : resolution;
+    }
+
+    private TemplateResolution resolve(IEngineConfiguration configuration, String ownerTemplate, String template,
+                                       Map<String, Object> templateResolutionAttributes) {
         boolean component = template.endsWith("-c");
+        if (component && registry != null) {
+            var info = registry.get(template);
+            if (info != null) {
+                LOG.debug("Resolving component {} ({}) from registry", template, ownerTemplate);
+                return new TemplateResolution(new StringTemplateResource(info.source()), TemplateMode.HTML,
+                        new RegisteredComponentValidity(info));
+            }
+        }
         String resolvedName = "templates/" + (component ? "components/" : template.startsWith("layouts/") ? "" : "pages/") + template + ".html";
         LOG.debug("Resolving template {} ({}) to {}", template, ownerTemplate, resolvedName);
         return delegate.resolveTemplate(configuration, ownerTemplate, resolvedName, templateResolutionAttributes);
     }
+
+    /**
+     * Wraps the resolved template so that its parse is timed in the profile of the request. The parser reads
+     * the template from start to end, so the parse is the time between opening and closing of the reader.
+     */
+    private static TemplateResolution profiled(TemplateResolution resolution, String template) {
+        return new TemplateResolution(new ProfiledTemplateResource(resolution.getTemplateResource(), template),
+                resolution.isTemplateResourceExistenceVerified(), resolution.getTemplateMode(),
+                resolution.getUseDecoupledLogic(), resolution.getValidity());
+    }
+
+    private record ProfiledTemplateResource(ITemplateResource delegate, String template) implements ITemplateResource {
+
+        @Override
+        public String getDescription() {
+            return delegate.getDescription();
+        }
+
+        @Override
+        public String getBaseName() {
+            return delegate.getBaseName();
+        }
+
+        @Override
+        public boolean exists() {
+            return delegate.exists();
+        }
+
+        @Override
+        public Reader reader() throws IOException {
+            var span = RenderProfile.span(RenderProfile.PARSE, template);
+            return new FilterReader(delegate.reader()) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        span.close();
+                    }
+                }
+            };
+        }
+
+        @Override
+        public ITemplateResource relative(String relativeLocation) {
+            return delegate.relative(relativeLocation);
+        }
+    }
+
+    /**
+     * Keeps the parsed component in the template cache until the registry replaces or removes it.
+     */
+    private class RegisteredComponentValidity implements ICacheEntryValidity {
+
+        private final ComponentInfo component;
+
+        RegisteredComponentValidity(ComponentInfo component) {
+            this.component = component;
+        }
+
+        @Override
+        public boolean isCacheable() {
+            return true;
+        }
+
+        @Override
+        public boolean isCacheStillValid() {
+            return registry.get(component.name()) == component;
+        }
+    }
 }
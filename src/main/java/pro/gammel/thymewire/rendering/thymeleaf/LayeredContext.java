@@ -0,0 +1,125 @@
+package pro.gammel.thymewire.rendering.thymeleaf;
+
+import org.thymeleaf.context.IContext;
+
+import java.util.*;
+
+/**
+ * Template context composed of read-only layers of variables. Layers are stacked without copying: a variable
+ * is looked up from the top layer to the bottom one, so upper layers override lower ones. Typical stack is
+ * layout model, page model, URI variables, query parameters and the page variable.
+ * <p>
+ * Layer maps are referenced, not copied, and must not be modified while the context is in use.
+ */
+public final class LayeredContext implements IContext {
+
+    public static final int MAX_DEPTH = 8;
+
+    private final Locale locale;
+
+    private final Map<?, ?>[] layers = new Map<?, ?>[MAX_DEPTH];
+
+    private int depth;
+
+    private String modelId;
+
+    public LayeredContext() {
+        this(Locale.getDefault());
+    }
+
+    public LayeredContext(Locale locale) {
+        this.locale = locale;
+    }
+
+    /**
+     * Puts the layer on top of the stack.
+     *
+     * @param layer variables of the layer, ignored if null or empty
+     * @return this context
+     * @throws IllegalStateException if the stack is full
+     */
+    public LayeredContext layer(Map<String, ?> layer) {
+        if (layer == null || layer.isEmpty()) {
+            return this;
+        }
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Context cannot contain more than " + MAX_DEPTH + " layers");
+        }
+        layers[depth++] = layer;
+        return this;
+    }
+
+    /**
+     * Returns a new context with the same layers, so that layers can be added to it without changing this one.
+     */
+    public LayeredContext copy() {
+        var copy = new LayeredContext(locale);
+        System.arraycopy(layers, 0, copy.layers, 0, depth);
+        copy.depth = depth;
+        copy.modelId = modelId;
+        return copy;
+    }
+
+    /**
+     * Sets the model variant the context was built from, reported in the render events.
+     *
+     * @param modelId the model variant, null for the default model
+     * @return this context
+     */
+    public LayeredContext modelId(String modelId) {
+        this.modelId = modelId;
+        return this;
+    }
+
+    /**
+     * Returns the model variant the context was built from, or null for the default model.
+     */
+    public String modelId() {
+        return modelId;
+    }
+
+    /**
+     * Puts a layer with a single variable on top of the stack.
+     */
+    public LayeredContext variable(String name, Object value) {
+        return layer(Collections.singletonMap(name, value));
+    }
+
+    @Override
+    public Locale getLocale() {
+        return locale;
+    }
+
+    @Override
+    public boolean containsVariable(String name) {
+        for (int i = depth - 1; i >= 0; i--) {
+            if (layers[i].containsKey(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object getVariable(String name) {
+        for (int i = depth - 1; i >= 0; i--) {
+            var layer = layers[i];
+            var value = layer.get(name);
+            if (value != null || layer.containsKey(name)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Set<String> getVariableNames() {
+        var names = new LinkedHashSet<String>();
+        for (int i = 0; i < depth; i++) {
+            for (var key : layers[i].keySet()) {
+                names.add((String) key);
+            }
+        }
+        return names;
+    }
+}
@@ -0,0 +1,63 @@
+package pro.gammel.thymewire.rendering.thymeleaf;
+
+import org.thymeleaf.IEngineConfiguration;
+import org.thymeleaf.context.EngineContext;
+import org.thymeleaf.context.IContext;
+import org.thymeleaf.context.IEngineContext;
+import org.thymeleaf.context.IEngineContextFactory;
+import org.thymeleaf.context.StandardEngineContextFactory;
+import org.thymeleaf.engine.TemplateData;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Engine context factory that does not copy variables of {@link LayeredContext}: the standard factory copies every
+ * variable into the engine context, while here the engine context falls back to the layers for variables
+ * that were not set during processing.
+ */
+public class LayeredEngineContextFactory implements IEngineContextFactory {
+
+    private final IEngineContextFactory delegate = new StandardEngineContextFactory();
+
+    @Override
+    public IEngineContext createEngineContext(IEngineConfiguration configuration, TemplateData templateData,
+                                              Map<String, Object> templateResolutionAttributes, IContext context) {
+        if (context instanceof LayeredContext layered) {
+            return new LayeredEngineContext(configuration, templateData, templateResolutionAttributes, layered);
+        }
+        return delegate.createEngineContext(configuration, templateData, templateResolutionAttributes, context);
+    }
+
+    private static class LayeredEngineContext extends EngineContext {
+
+        private final LayeredContext layers;
+
+        LayeredEngineContext(IEngineConfiguration configuration, TemplateData templateData,
+                             Map<String, Object> templateResolutionAttributes, LayeredContext layers) {
+            super(configuration, templateData, templateResolutionAttributes, layers.getLocale(), Collections.emptyMap());
+            this.layers = layers;
+        }
+
+        @Override
+        public boolean containsVariable(String name) {
+            return super.containsVariable(name) || layers.containsVariable(name);
+        }
+
+        @Override
+        public Object getVariable(String name) {
+            if (super.containsVariable(name)) {
+                return super.getVariable(name);
+            }
+            return layers.getVariable(name);
+        }
+
+        @Override
+        public Set<String> getVariableNames() {
+            var names = layers.getVariableNames();
+            names.addAll(super.getVariableNames());
+            return names;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package pro.gammel.thymewire.rendering.thymeleaf;
+
+import org.thymeleaf.context.ITemplateContext;
+import org.thymeleaf.dialect.AbstractDialect;
+import org.thymeleaf.dialect.IPostProcessorDialect;
+import org.thymeleaf.engine.AbstractTemplateHandler;
+import org.thymeleaf.model.*;
+import org.thymeleaf.postprocessor.IPostProcessor;
+import org.thymeleaf.postprocessor.PostProcessor;
+import org.thymeleaf.templatemode.TemplateMode;
+import pro.gammel.thymewire.jfr.ComponentEvent;
+import pro.gammel.thymewire.rendering.RenderDeadline;
+import pro.gammel.thymewire.rendering.RenderProfile;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Set;
+
+/**
+ * Dialect watching the render from a post-processor, which sees every event produced by the template, including
+ * all iterations and inserted fragments:
+ * <ul>
+ *     <li>checks the {@link RenderDeadline} of the render, so a runaway loop is stopped even when it produces
+ *     little output;</li>
+ *     <li>times the components between the markers added by {@link ComponentElementProcessor} when the request
+ *     is profiled or the {@link ComponentEvent} is recorded, so that the time covers the whole expansion of
+ *     the component, including its nested components;</li>
+ *     <li>when the request is profiled, times the writing of the output. Output events are too many and too short
+ *     for spans, their time is summed up and recorded once per component and per template.</li>
+ * </ul>
+ */
+public class RenderMonitorDialect extends AbstractDialect implements IPostProcessorDialect {
+
+    /**
+     * Prefix of the comments marking the start and, with a leading slash, the end of a timed component.
+     * The markers are not written to the output.
+     */
+    public static final String PROFILE_MARKER_PREFIX = "tw:p:";
+
+    public RenderMonitorDialect() {
+        super("RenderMonitor");
+    }
+
+    @Override
+    public int getDialectPostProcessorPrecedence() {
+        return 0;
+    }
+
+    @Override
+    public Set<IPostProcessor> getPostProcessors() {
+        return Set.of(new PostProcessor(TemplateMode.HTML, RenderMonitorHandler.class, 0));
+    }
+
+    /**
+     * Passes the events through, checking the deadline and profiling. Instantiated by Thymeleaf for every
+     * processed template, on the thread of the render.
+     */
+    public static class RenderMonitorHandler extends AbstractTemplateHandler {
+
+        /**
+         * Open component with the output time of the enclosing one.
+         */
+        private static final class Expansion {
+
+            private final String component;
+            private final long outerOutputNanos;
+            private final int outerOutputEvents;
+            private RenderProfile.Span span;
+            private ComponentEvent event;
+
+            Expansion(String component, long outerOutputNanos, int outerOutputEvents) {
+                this.component = component;
+                this.outerOutputNanos = outerOutputNanos;
+                this.outerOutputEvents = outerOutputEvents;
+            }
+        }
+
+        private RenderDeadline deadline;
+
+        private RenderProfile profile;
+
+        private String template;
+
+        private final Deque<Expansion> components = new ArrayDeque<>();
+
+        // Output time of the innermost component or the template
+        private long outputNanos;
+        private int outputEvents;
+
+        @Override
+        public void setContext(ITemplateContext context) {
+            super.setContext(context);
+            deadline = RenderDeadline.current();
+            profile = RenderProfile.current();
+            template = context.getTemplateData().getTemplate();
+        }
+
+        @Override
+        public void handleTemplateEnd(ITemplateEnd templateEnd) {
+            if (profile != null) {
+                recordOutput();
+            }
+            super.handleTemplateEnd(templateEnd);
+        }
+
+        @Override
+        public void handleText(IText text) {
+            if (deadline != null) {
+                deadline.check();
+            }
+            if (profile != null) {
+                long start = System.nanoTime();
+                super.handleText(text);
+                output(start);
+            } else {
+                super.handleText(text);
+            }
+        }
+
+        @Override
+        public void handleStandaloneElement(IStandaloneElementTag tag) {
+            if (deadline != null) {
+                deadline.check();
+            }
+            if (profile != null) {
+                long start = System.nanoTime();
+                super.handleStandaloneElement(tag);
+                output(start);
+            } else {
+                super.handleStandaloneElement(tag);
+            }
+        }
+
+        @Override
+        public void handleOpenElement(IOpenElementTag tag) {
+            if (deadline != null) {
+                deadline.check();
+            }
+            if (profile != null) {
+                long start = System.nanoTime();
+                super.handleOpenElement(tag);
+                output(start);
+            } else {
+                super.handleOpenElement(tag);
+            }
+        }
+
+        @Override
+        public void handleCloseElement(ICloseElementTag tag) {
+            if (profile != null) {
+                long start = System.nanoTime();
+                super.handleCloseElement(tag);
+                output(start);
+            } else {
+                super.handleCloseElement(tag);
+            }
+        }
+
+        @Override
+        public void handleComment(IComment comment) {
+            if (deadline != null) {
+                deadline.check();
+            }
+            var content = comment.getContent();
+            if (content.startsWith(PROFILE_MARKER_PREFIX)) {
+                begin(content.substring(PROFILE_MARKER_PREFIX.length()));
+                return;
+            }
+            if (content.startsWith("/" + PROFILE_MARKER_PREFIX)) {
+                end();
+                return;
+            }
+            super.handleComment(comment);
+        }
+
+        private void begin(String component) {
+            var expansion = new Expansion(component, outputNanos, outputEvents);
+            outputNanos = 0;
+            outputEvents = 0;
+            if (profile != null) {
+                expansion.span = profile.begin(RenderProfile.COMPONENT, component);
+            }
+            var event = new ComponentEvent();
+            if (event.isEnabled()) {
+                event.begin();
+                expansion.event = event;
+            }
+            components.push(expansion);
+        }
+
+        private void end() {
+            if (components.isEmpty()) {
+                return;
+            }
+            if (profile != null) {
+                recordOutput();
+            }
+            var expansion = components.pop();
+            outputNanos = expansion.outerOutputNanos;
+            outputEvents = expansion.outerOutputEvents;
+            if (expansion.span != null) {
+                expansion.span.close();
+            }
+            var event = expansion.event;
+            if (event != null) {
+                event.end();
+                if (event.shouldCommit()) {
+                    event.component = expansion.component;
+                    event.template = components.isEmpty() ? template : components.peek().component;
+                    event.commit();
+                }
+            }
+        }
+
+        private void output(long start) {
+            outputNanos += System.nanoTime() - start;
+            outputEvents++;
+        }
+
+        /**
+         * Records the output time collected since the start of the innermost open component or the template.
+         */
+        private void recordOutput() {
+            profile.record(RenderProfile.OUTPUT, "output", outputEvents, outputNanos);
+            outputNanos = 0;
+            outputEvents = 0;
+        }
+    }
+}
@@ -7,21 +7,42 @@ import org.thymeleaf.ITemplateEngine;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.TemplateSpec;
 import org.thymeleaf.context.IContext;
+import pro.gammel.thymewire.core.ComponentRegistry;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.MessageCache;
 
 import java.io.Writer;
 import java.util.HashMap;
+import java.util.Objects;
 
 public class TemplateEngineProvider {
 
     public static ITemplateEngine templateEngine(Resources resources) {
+        return templateEngine(resources, null, null);
+    }
+
+    public static ITemplateEngine templateEngine(Resources resources, ComponentRegistry registry, MessageCache messages) {
+        return templateEngine(resources, registry, messages, null);
+    }
+
+    public static ITemplateEngine templateEngine(Resources resources, ComponentRegistry registry, MessageCache messages,
+                                                 DependencyTracker dependencies) {
+        return templateEngine(resources, registry, messages, dependencies, null);
+    }
+
+    public static ITemplateEngine templateEngine(Resources resources, ComponentRegistry registry, MessageCache messages,
+                                                 DependencyTracker dependencies, ComponentInstances instances) {
         var delegate = new TemplateEngine() {
             @Override
             protected void initializeSpecific() {
-                setMessageResolver(new ComponentMessageResolver(new Resource4jMessageResolver(resources)));
+                setMessageResolver(new ComponentMessageResolver(new Resource4jMessageResolver(resources), messages,
+                        dependencies));
             }
         };
-        delegate.setTemplateResolver(new ComponentTemplateResolver(resources));
-        delegate.addDialect(new ComponentDialect());
+        delegate.setTemplateResolver(new ComponentTemplateResolver(resources, registry, dependencies));
+        delegate.setEngineContextFactory(new LayeredEngineContextFactory());
+        delegate.addDialect(new ComponentDialect(registry, instances));
+        delegate.addDialect(new RenderMonitorDialect());
         return new Resource4jTemplateEngine(delegate) {
             @Override
             public void process(TemplateSpec templateSpec, IContext context, Writer writer) {
@@ -30,8 +51,11 @@ public class TemplateEngineProvider {
                     attr = new HashMap<>();
                     attr.put("locale", context.getLocale());
                     templateSpec = new TemplateSpec(templateSpec.getTemplate(), templateSpec.getTemplateSelectors(), templateSpec.getTemplateMode(), attr);
-                } else {
+                } else if (!Objects.equals(attr.get("locale"), context.getLocale())) {
+                    // Specs may be shared between renders, so attributes are copied instead of being modified
+                    attr = new HashMap<>(attr);
                     attr.put("locale", context.getLocale());
+                    templateSpec = new TemplateSpec(templateSpec.getTemplate(), templateSpec.getTemplateSelectors(), templateSpec.getTemplateMode(), attr);
                 }
                 super.process(templateSpec, context, writer);
             }
@@ -0,0 +1,60 @@
+package pro.gammel.thymewire.server;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Limits the number of concurrent renders of every template, so that requests of a slow template wait for
+ * each other instead of occupying all processors, while the other templates are rendered as usual.
+ */
+public class Bulkheads {
+
+    /**
+     * Default number of concurrent renders of one template: half of the processors, but at least two.
+     */
+    public static final int DEFAULT_PERMITS = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private final int permits;
+
+    private final Map<String, Semaphore> semaphores = new ConcurrentHashMap<>();
+
+    public Bulkheads() {
+        this(DEFAULT_PERMITS);
+    }
+
+    public Bulkheads(int permits) {
+        this.permits = permits;
+    }
+
+    /**
+     * Runs the render once a slot of the template is free.
+     *
+     * @param template the name of the template
+     * @param wait maximum time to wait for a free slot
+     * @param render the render
+     * @return the result of the render
+     * @throws RejectedExecutionException if no slot was freed within the waiting time
+     */
+    public <T> T execute(String template, Duration wait, Supplier<T> render) {
+        var semaphore = semaphores.computeIfAbsent(template, t -> new Semaphore(permits));
+        try {
+            if (!semaphore.tryAcquire(wait.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw new RejectedExecutionException("All " + permits + " render slots of " + template
+                        + " are busy for " + wait.toMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for a render slot of " + template, e);
+        }
+        try {
+            return render.get();
+        } finally {
+            semaphore.release();
+        }
+    }
+}
@@ -0,0 +1,476 @@
+package pro.gammel.thymewire.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.core.DependencyChangeListener;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.DependencyTracker.Dependency;
+import pro.gammel.thymewire.core.RenderScheduler;
+import pro.gammel.thymewire.core.Renderer;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentElementProcessor;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentInstances;
+import pro.gammel.thymewire.rendering.thymeleaf.LayeredContext;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Live reload of the pages open in the browser. Every served page gets a script subscribing to the server-sent
+ * events of {@value #EVENTS_PATH} with the key of the page. Changes reported by the site are collected until
+ * no change follows for {@value #QUIET_PERIOD_MILLIS} ms and then a reload is sent only to the pages depending
+ * on the changed files according to the {@link DependencyTracker}, so that one save reloads each affected tab once.
+ * <p>
+ * When only components have changed, their instances are rendered again separately with the model recorded in
+ * the page render, see {@link ComponentInstances}, and sent to the page as a "swap" event. The page context is
+ * not kept between renders, it is built again for the swap by the {@link PageContexts} of the server.
+ * The script replaces the content between the markers of each instance, keeping the rest of the page and
+ * its state. Pages fall back to a full reload if the instances cannot be rendered.
+ * <p>
+ * Event streams block their request thread while waiting for changes, so the server should run requests on
+ * virtual threads.
+ */
+public class LiveReload extends DependencyChangeListener implements HttpHandler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LiveReload.class);
+
+    public static final String EVENTS_PATH = "/__thymewire/events";
+
+    private static final long QUIET_PERIOD_MILLIS = 150;
+
+    // Upper bound of the debouncing, so that continuous changes still reload the pages
+    private static final long MAX_DELAY_MILLIS = 1000;
+
+    private static final long HEARTBEAT_SECONDS = 15;
+
+    // Number of pages, whose component instances are kept for hot swap
+    private static final int MAX_PAGES = 256;
+
+    private static final String RELOAD_EVENT = "event: reload\ndata: {}\n\n";
+
+    private static final String SCRIPT = """
+            <script>(function () {
+              var events = new EventSource('%s?page=' + encodeURIComponent(%s));
+              events.addEventListener('reload', function () { events.close(); location.reload(); });
+              events.addEventListener('swap', function (event) {
+                JSON.parse(event.data).forEach(function (fragment) {
+                  var walker = document.createTreeWalker(document.documentElement, NodeFilter.SHOW_COMMENT), start;
+                  while ((start = walker.nextNode()) && start.data !== '%s' + fragment.id) {}
+                  if (!start) { return; }
+                  var end = start.nextSibling;
+                  while (end && !(end.nodeType === 8 && end.data === '/%s' + fragment.id)) {
+                    var next = end.nextSibling; end.remove(); end = next;
+                  }
+                  var template = document.createElement('template');
+                  template.innerHTML = fragment.html;
+                  start.parentNode.insertBefore(template.content, end);
+                });
+              });
+            })();</script>
+            """;
+
+    private static final byte[] BODY_END = "</body>".getBytes(StandardCharsets.US_ASCII);
+
+    /**
+     * Open event stream of a page.
+     */
+    private static final class Client {
+
+        private final String page;
+
+        private final BlockingQueue<String> events = new ArrayBlockingQueue<>(16);
+
+        Client(String page) {
+            this.page = page;
+        }
+
+        void reload() {
+            send(RELOAD_EVENT);
+        }
+
+        void send(String event) {
+            if (!events.offer(event)) {
+                // Too many pending swaps, the page is reloaded instead
+                events.clear();
+                events.offer(RELOAD_EVENT);
+            }
+        }
+    }
+
+    /**
+     * Builds the context of the page for the request path, used to render its components again.
+     */
+    @FunctionalInterface
+    public interface PageContexts {
+
+        LayeredContext context(String path, Map<String, Object> queryParams);
+    }
+
+    /**
+     * Component instances of the page recorded in its last render, with the request to build its context again.
+     */
+    private static final class PageState {
+
+        private final String path;
+
+        private final Map<String, Object> queryParams;
+
+        private final Map<Integer, ComponentInstances.Instance> instances = new HashMap<>();
+
+        private int nextId;
+
+        PageState(String path, Map<String, Object> queryParams, ComponentInstances.Recording recording) {
+            this.path = path;
+            this.queryParams = Map.copyOf(queryParams);
+            add(recording);
+        }
+
+        void add(ComponentInstances.Recording recording) {
+            recording.instances().forEach(instance -> instances.put(instance.id(), instance));
+            nextId = recording.nextId();
+        }
+    }
+
+    /**
+     * Recording of the component instances of the page, kept for hot swap when closed.
+     */
+    public final class PageRecording implements AutoCloseable {
+
+        private final String page;
+
+        private final String path;
+
+        private final Map<String, Object> queryParams;
+
+        private final ComponentInstances.Recording recording;
+
+        private PageRecording(String page, String path, Map<String, Object> queryParams,
+                              ComponentInstances.Recording recording) {
+            this.page = page;
+            this.path = path;
+            this.queryParams = queryParams;
+            this.recording = recording;
+        }
+
+        @Override
+        public void close() {
+            recording.close();
+            pages.put(page, new PageState(path, queryParams, recording));
+        }
+    }
+
+    private final DependencyTracker dependencies;
+
+    private final Renderer renderer;
+
+    private final ComponentInstances instances;
+
+    private final RenderScheduler renders;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private volatile PageContexts contexts;
+
+    private final Map<String, PageState> pages = Collections.synchronizedMap(
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, PageState> eldest) {
+                    return size() > MAX_PAGES;
+                }
+            });
+
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("thymewire-live-reload").daemon().factory());
+
+    // Changes collected since the last reload, guarded by this
+    private final Set<Dependency> changed = new HashSet<>();
+    private boolean reloadAll;
+    private ScheduledFuture<?> pendingReload;
+    private long firstChangeMillis;
+
+    public LiveReload(SiteProvider site, DependencyTracker dependencies) {
+        this(site, dependencies, null, null, null);
+    }
+
+    /**
+     * Creates live reload with hot swap of components.
+     *
+     * @param renderer the renderer of component instances
+     * @param instances the instances recorded by the renderer
+     * @param renders the scheduler of the renders of component instances
+     */
+    public LiveReload(SiteProvider site, DependencyTracker dependencies, Renderer renderer,
+                      ComponentInstances instances, RenderScheduler renders) {
+        super(site);
+        this.dependencies = dependencies;
+        this.renderer = renderer;
+        this.instances = instances;
+        this.renders = renders;
+    }
+
+    /**
+     * Sets the contexts of the pages, without which the pages are reloaded instead of hot swap.
+     */
+    public void contexts(PageContexts contexts) {
+        this.contexts = contexts;
+    }
+
+    /**
+     * Starts recording component instances of the page rendered on the current thread.
+     *
+     * @param page the page key used in the dependency tracker
+     * @param path the request path of the page
+     * @param queryParams the decoded query parameters of the page
+     * @return the recording to close when the page is rendered, or null if hot swap is disabled
+     */
+    public PageRecording record(String page, String path, Map<String, Object> queryParams) {
+        return instances != null ? new PageRecording(page, path, queryParams, instances.begin(0)) : null;
+    }
+
+    /**
+     * Returns whether the components of the page are recorded for hot swap, marking the page as recently used,
+     * e.g. when it is served from the output cache.
+     *
+     * @param page the page key used in the dependency tracker
+     * @return true if the page is recorded or hot swap is disabled
+     */
+    public boolean recorded(String page) {
+        return instances == null || pages.get(page) != null;
+    }
+
+    /**
+     * Adds the live reload script to the HTML page.
+     *
+     * @param response the rendered page
+     * @param page the page key used in the dependency tracker
+     * @return the response with the script or the original response if it is not a successfully rendered page
+     */
+    public Response inject(Response response, String page) {
+        // Failed and timed out pages are reloaded as well, to show the fixed template
+        var status = response.statusCode();
+        if ((status != 200 && status != 500 && status != 504) || !response.isBinary() || response.contentType() == null
+                || !response.contentType().startsWith("text/html")) {
+            return response;
+        }
+        var html = response.binaryContent();
+        var script = SCRIPT.formatted(EVENTS_PATH, javaScriptString(page), ComponentInstances.MARKER_PREFIX,
+                ComponentInstances.MARKER_PREFIX).getBytes(StandardCharsets.UTF_8);
+        var position = lastIndexOf(html, BODY_END);
+        if (position < 0) {
+            position = html.length;
+        }
+        var result = new byte[html.length + script.length];
+        System.arraycopy(html, 0, result, 0, position);
+        System.arraycopy(script, 0, result, position, script.length);
+        System.arraycopy(html, position, result, position + script.length, html.length - position);
+        return new Response(response.statusCode(), null, result, response.contentType(), null, response.headers());
+    }
+
+    /**
+     * Stops sending changes to the open pages.
+     */
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Serves the event stream of the page given in the "page" query parameter until the page is reloaded
+     * or the browser disconnects.
+     */
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            exchange.sendResponseHeaders(405, -1);
+            exchange.close();
+            return;
+        }
+        var client = new Client(pageParameter(exchange.getRequestURI().getRawQuery()));
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+        clients.add(client);
+        LOG.debug("Live reload connected for {} ({} open)", client.page, clients.size());
+        try (var out = exchange.getResponseBody()) {
+            out.write("retry: 1000\n\n".getBytes(StandardCharsets.UTF_8));
+            out.flush();
+            while (true) {
+                var event = client.events.poll(HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+                if (event != null) {
+                    out.write(event.getBytes(StandardCharsets.UTF_8));
+                    out.flush();
+                    if (event.equals(RELOAD_EVENT)) {
+                        break;
+                    }
+                    continue;
+                }
+                // Comment line keeps the connection open and detects closed tabs
+                out.write(":\n\n".getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            }
+        } catch (IOException e) {
+            LOG.debug("Live reload disconnected for {}: {}", client.page, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            clients.remove(client);
+        }
+    }
+
+    @Override
+    protected synchronized void changed(Dependency dependency) {
+        changed.add(dependency);
+        schedule();
+    }
+
+    @Override
+    protected synchronized void changedAll() {
+        reloadAll = true;
+        schedule();
+    }
+
+    private void schedule() {
+        var now = System.currentTimeMillis();
+        if (pendingReload == null) {
+            firstChangeMillis = now;
+        } else if (now - firstChangeMillis < MAX_DELAY_MILLIS) {
+            pendingReload.cancel(false);
+        } else {
+            return;
+        }
+        pendingReload = scheduler.schedule(this::reload, QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    private void reload() {
+        Set<Dependency> batch;
+        boolean all;
+        synchronized (this) {
+            batch = Set.copyOf(changed);
+            all = reloadAll;
+            changed.clear();
+            reloadAll = false;
+            pendingReload = null;
+        }
+        if (batch.isEmpty() && !all) {
+            return;
+        }
+        var affected = new HashSet<String>();
+        if (!all) {
+            batch.forEach(dependency -> affected.addAll(dependencies.dependents(dependency)));
+        }
+        var components = new HashSet<String>();
+        boolean swappable = !all && instances != null;
+        for (var dependency : batch) {
+            if (dependency.kind() == DependencyTracker.Kind.COMPONENT) {
+                components.add(dependency.name());
+            } else {
+                swappable = false;
+            }
+        }
+        // Swap events by page, rendered once for all tabs of the page; null if the page must be reloaded
+        var swaps = new HashMap<String, String>();
+        int open = clients.size();
+        int reloaded = 0;
+        int swapped = 0;
+        for (var client : clients) {
+            // Pages without recorded dependencies cannot be targeted and are always reloaded
+            if (all || affected.contains(client.page) || dependencies.dependencies(client.page).isEmpty()) {
+                var swap = swappable ? swaps.computeIfAbsent(client.page, page -> swapEvent(page, components)) : null;
+                if (swap != null) {
+                    client.send(swap);
+                    swapped++;
+                } else {
+                    client.reload();
+                    reloaded++;
+                }
+            }
+        }
+        LOG.info("Live reload of {} and hot swap of {} of {} open pages after changes in {}", reloaded, swapped,
+                open, all ? "the site" : batch);
+    }
+
+    /**
+     * Renders the instances of the changed components in the page.
+     *
+     * @return the swap event or null if the page has to be reloaded
+     */
+    private String swapEvent(String page, Set<String> components) {
+        var state = pages.get(page);
+        var contexts = this.contexts;
+        if (state == null || contexts == null) {
+            return null;
+        }
+        synchronized (state) {
+            var changed = state.instances.values().stream()
+                    .filter(instance -> components.contains(instance.component()))
+                    .sorted(Comparator.comparingInt(ComponentInstances.Instance::id))
+                    .toList();
+            if (changed.isEmpty()) {
+                // The page depends on the component otherwise than through component tags
+                return null;
+            }
+            var fragments = new ArrayList<Map<String, Object>>();
+            try (var recording = instances.begin(state.nextId)) {
+                var pageContext = contexts.context(state.path, state.queryParams);
+                for (var instance : changed) {
+                    var context = pageContext.copy();
+                    if (!instance.model().isEmpty()) {
+                        context.variable("__model", instance.model());
+                    }
+                    var html = renders.execute(RenderScheduler.Priority.RELOAD, renderer.timeout(),
+                            () -> renderer.renderFragment(instance.component(), ComponentElementProcessor.FRAGMENT_NAME,
+                                    context));
+                    fragments.add(Map.of("id", instance.id(), "html", new String(html, StandardCharsets.UTF_8)));
+                }
+                state.add(recording);
+                return "event: swap\ndata: " + mapper.writeValueAsString(fragments) + "\n\n";
+            } catch (RuntimeException | IOException e) {
+                LOG.warn("Hot swap of {} in {} failed, reloading the page: {}", components, page, e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    private static String pageParameter(String query) {
+        if (query != null) {
+            for (var pair : query.split("&")) {
+                if (pair.startsWith("page=")) {
+                    return URLDecoder.decode(pair.substring("page=".length()), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return "/";
+    }
+
+    private static String javaScriptString(String value) {
+        var result = new StringBuilder("'");
+        for (var c : value.toCharArray()) {
+            if (c == '\'' || c == '\\' || c == '<' || c == '>' || c == '&' || c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('\'').toString();
+    }
+
+    private static int lastIndexOf(byte[] html, byte[] tag) {
+        outer:
+        for (int i = html.length - tag.length; i >= 0; i--) {
+            for (int j = 0; j < tag.length; j++) {
+                if (Character.toLowerCase(html[i + j]) != tag[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
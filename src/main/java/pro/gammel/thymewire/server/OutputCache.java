@@ -0,0 +1,184 @@
+package pro.gammel.thymewire.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.core.DependencyChangeListener;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.DependencyTracker.Dependency;
+import pro.gammel.thymewire.core.SiteProvider;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Cache of rendered pages by page key. A page is evicted when any of its dependencies recorded by
+ * the {@link DependencyTracker} changes, so the cache is only correct while the site reports changes,
+ * i.e. when project files are watched. Only successful renders of pages with recorded dependencies are cached.
+ * <p>
+ * Every eviction increments the generation of the cache; a render started before an eviction is not cached,
+ * because it may have read files that were changed meanwhile. Pages forgotten by the tracker are dropped as well.
+ */
+public class OutputCache extends DependencyChangeListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutputCache.class);
+
+    private static final int MAX_ENTRIES = 256;
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Cached page.
+     *
+     * @param page the page key
+     * @param path the request path
+     * @param queryParams the query parameters of the request
+     * @param response the rendered page
+     * @param requested time of the last request of the page in milliseconds
+     */
+    public record Entry(String page, String path, Map<String, Object> queryParams, Response response, long requested) {
+
+        long size() {
+            return response.binaryContent().length;
+        }
+    }
+
+    private final DependencyTracker dependencies;
+
+    // Guarded by this, in access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long generation;
+
+    private final List<Consumer<List<Entry>>> evictionListeners = new CopyOnWriteArrayList<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public OutputCache(SiteProvider site, DependencyTracker dependencies) {
+        super(site);
+        this.dependencies = dependencies;
+        dependencies.onForget(this::forget);
+    }
+
+    /**
+     * Subscribes to the pages evicted because of changes.
+     */
+    public void onEviction(Consumer<List<Entry>> listener) {
+        evictionListeners.add(listener);
+    }
+
+    /**
+     * Returns the cached page and marks it as requested.
+     *
+     * @return the page or null if not cached
+     */
+    public synchronized Response get(String page) {
+        var entry = entries.get(page);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        entries.put(page, new Entry(page, entry.path(), entry.queryParams(), entry.response(), System.currentTimeMillis()));
+        return entry.response();
+    }
+
+    /**
+     * Returns the ratio of requests served from the cache since the start, 0 before the first request.
+     */
+    public double hitRatio() {
+        long hit = hits.sum();
+        long total = hit + misses.sum();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized boolean contains(String page) {
+        return entries.containsKey(page);
+    }
+
+    /**
+     * Returns the current generation, to be passed to {@link #put} after rendering.
+     */
+    public synchronized long generation() {
+        return generation;
+    }
+
+    /**
+     * Caches the rendered page, unless it failed or the cache was invalidated since the render started.
+     *
+     * @param generation the generation of the cache when the render started
+     */
+    public void put(String page, String path, Map<String, Object> queryParams, Response response, long generation) {
+        if (response.statusCode() != 200 || !response.isBinary() || dependencies.dependencies(page).isEmpty()) {
+            return;
+        }
+        var entry = new Entry(page, path, Map.copyOf(queryParams), response, System.currentTimeMillis());
+        synchronized (this) {
+            if (generation != this.generation || entry.size() > MAX_BYTES / 4) {
+                return;
+            }
+            var previous = entries.put(page, entry);
+            bytes += entry.size() - (previous != null ? previous.size() : 0);
+            var eldest = entries.values().iterator();
+            while ((entries.size() > MAX_ENTRIES || bytes > MAX_BYTES) && eldest.hasNext()) {
+                bytes -= eldest.next().size();
+                eldest.remove();
+            }
+        }
+    }
+
+    // The page cannot be evicted on changes without its dependencies
+    private synchronized void forget(String page) {
+        var entry = entries.remove(page);
+        if (entry != null) {
+            bytes -= entry.size();
+        }
+    }
+
+    @Override
+    protected void changed(Dependency dependency) {
+        var pages = dependencies.dependents(dependency);
+        var evicted = new ArrayList<Entry>();
+        synchronized (this) {
+            generation++;
+            for (var page : pages) {
+                var entry = entries.remove(page);
+                if (entry != null) {
+                    bytes -= entry.size();
+                    evicted.add(entry);
+                }
+            }
+        }
+        evicted(evicted, dependency);
+    }
+
+    @Override
+    protected void changedAll() {
+        List<Entry> evicted;
+        synchronized (this) {
+            generation++;
+            evicted = new ArrayList<>(entries.values());
+            entries.clear();
+            bytes = 0;
+        }
+        evicted(evicted, "the site");
+    }
+
+    private void evicted(List<Entry> evicted, Object cause) {
+        if (evicted.isEmpty()) {
+            return;
+        }
+        LOG.debug("{} cached pages evicted after changes in {}", evicted.size(), cause);
+        evictionListeners.forEach(listener -> listener.accept(evicted));
+    }
+}
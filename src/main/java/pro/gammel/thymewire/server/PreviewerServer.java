@@ -5,11 +5,18 @@ import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.metrics.Metrics;
+import pro.gammel.thymewire.trace.RequestTrace;
+import pro.gammel.thymewire.trace.TraceBuffer;
+import pro.gammel.thymewire.trace.TraceHandler;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executors;
 
 public class PreviewerServer implements HttpHandler {
 
@@ -21,17 +28,45 @@ public class PreviewerServer implements HttpHandler {
 
     private final Set<Controller> controllers;
 
+    // Handlers writing the response themselves, e.g. event streams, by path
+    private final Map<String, HttpHandler> handlers;
+
+    private final Metrics metrics;
+
+    private final TraceBuffer traces;
+
+    private HttpServer server;
+
     public PreviewerServer(String host, int port, Set<Controller> controllers) {
+        this(host, port, controllers, Map.of());
+    }
+
+    public PreviewerServer(String host, int port, Set<Controller> controllers, Map<String, HttpHandler> handlers) {
+        this(host, port, controllers, handlers, null);
+    }
+
+    public PreviewerServer(String host, int port, Set<Controller> controllers, Map<String, HttpHandler> handlers,
+                           Metrics metrics) {
+        this(host, port, controllers, handlers, metrics, null);
+    }
+
+    public PreviewerServer(String host, int port, Set<Controller> controllers, Map<String, HttpHandler> handlers,
+                           Metrics metrics, TraceBuffer traces) {
         this.host = host;
         this.port = port;
         this.controllers = controllers;
+        this.handlers = handlers;
+        this.metrics = metrics;
+        this.traces = traces;
     }
     
     public void start() {
         try {
-            var server = HttpServer.create(new InetSocketAddress(host, port), 0);
+            server = HttpServer.create(new InetSocketAddress(host, port), 0);
             server.createContext("/", this);
-            server.setExecutor(null);
+            handlers.forEach(server::createContext);
+            // Requests run on virtual threads, so that long-lived connections do not occupy platform threads
+            server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
             server.start();
             
             LOG.info("Running Thymewire previewer on http://{}:{}", host, port);
@@ -41,19 +76,37 @@ public class PreviewerServer implements HttpHandler {
         }
     }
 
+    /**
+     * Stops the server, giving the exchanges in progress up to a second to complete.
+     */
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+            server = null;
+        }
+    }
+
     @Override
     public void handle(HttpExchange exchange) throws IOException {
         var method = exchange.getRequestMethod();
         var path = exchange.getRequestURI().getPath();
+        try (var trace = traces != null ? RequestTrace.start(traces, method, path) : null) {
+            handle(exchange, method, path, trace);
+        }
+    }
 
-
+    private void handle(HttpExchange exchange, String method, String path, RequestTrace trace) throws IOException {
+        long start = System.nanoTime();
+        long allocated = metrics != null ? allocatedBytes() : -1;
         var response = Response.defaultResponse();
+        var served = "none";
 
         if ("GET".equals(method) || "POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)) {
             try {
                 for (Controller controller : controllers) {
                     if (controller.accepts(exchange)) {
                         response = controller.respond(exchange);
+                        served = controller.getClass().getSimpleName();
                     }
                 }
             } catch (Exception e) {
@@ -64,16 +117,16 @@ public class PreviewerServer implements HttpHandler {
             response = new Response(405, "Method not allowed");
         }
 
-        if (response.statusCode() > 299) {
-            LOG.warn("{} {} -> HTTP {}", method, path, response.statusCode());
-        } else {
-            LOG.info("{} {} -> HTTP {} / Content-Type: {}", method, path, response.statusCode(), response.contentType());
+        response.headers().forEach((name, value) -> exchange.getResponseHeaders().set(name, value));
+        if (trace != null) {
+            exchange.getResponseHeaders().set(TraceHandler.HEADER, Long.toString(trace.id()));
         }
 
         // Handle redirects
         if (response.isRedirect()) {
             exchange.getResponseHeaders().set("Location", response.redirectLocation());
             exchange.sendResponseHeaders(response.statusCode(), -1);
+            complete(method, path, served, response.statusCode(), start, 0, allocated, trace);
             return;
         }
 
@@ -84,6 +137,39 @@ public class PreviewerServer implements HttpHandler {
         try (var outputStream = exchange.getResponseBody()) {
             outputStream.write(responseBytes);
         }
+        complete(method, path, served, response.statusCode(), start, responseBytes.length, allocated, trace);
+    }
+
+    /**
+     * Records the served request in the metrics and the trace and writes the access log line.
+     */
+    private void complete(String method, String path, String controller, int status, long start, long bytes,
+                          long allocated, RequestTrace trace) {
+        long nanos = System.nanoTime() - start;
+        if (metrics != null) {
+            metrics.request(controller, status, nanos, bytes, allocated >= 0 ? allocatedBytes() - allocated : -1);
+        }
+        if (trace != null) {
+            trace.finish(controller, status, bytes);
+        }
+        if (status > 299) {
+            LOG.warn("{} {} {} {} B {} ms trace={}", method, path, status, bytes, nanos / 1_000_000,
+                    trace != null ? trace.id() : "-");
+        } else if (LOG.isInfoEnabled()) {
+            LOG.info("{} {} {} {} B {} ms trace={}", method, path, status, bytes, nanos / 1_000_000,
+                    trace != null ? trace.id() : "-");
+        }
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread so far, or -1 if the JVM does not measure it,
+     * e.g. for virtual threads on older JVMs.
+     */
+    private static long allocatedBytes() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
     }
 
 }
\ No newline at end of file
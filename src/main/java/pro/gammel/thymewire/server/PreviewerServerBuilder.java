@@ -1,6 +1,12 @@
 package pro.gammel.thymewire.server;
 
+import com.sun.net.httpserver.HttpHandler;
+import pro.gammel.thymewire.metrics.Metrics;
+import pro.gammel.thymewire.trace.TraceBuffer;
+
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 import static java.util.Arrays.asList;
@@ -16,6 +22,12 @@ public class PreviewerServerBuilder {
 
     private final Set<Controller> controllers = new HashSet<>();
 
+    private final Map<String, HttpHandler> handlers = new LinkedHashMap<>();
+
+    private Metrics metrics;
+
+    private TraceBuffer traces;
+
     public static PreviewerServerBuilder aPreviewServer() {
         return new PreviewerServerBuilder();
     }
@@ -25,8 +37,40 @@ public class PreviewerServerBuilder {
         return this;
     }
 
+    /**
+     * Binds the server to the host name or address instead of {@link #DEFAULT_HOST}.
+     */
+    public PreviewerServerBuilder host(String host) {
+        this.host = host;
+        return this;
+    }
+
     public PreviewerServer build() {
-        return new PreviewerServer(host, port, controllers);
+        return new PreviewerServer(host, port, controllers, handlers, metrics, traces);
+    }
+
+    /**
+     * Records the requests served by the controllers in the metrics.
+     */
+    public PreviewerServerBuilder metrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Traces the requests served by the controllers into the buffer.
+     */
+    public PreviewerServerBuilder traces(TraceBuffer traces) {
+        this.traces = traces;
+        return this;
+    }
+
+    /**
+     * Serves the path and all paths below it with the handler writing the response itself.
+     */
+    public PreviewerServerBuilder handle(String path, HttpHandler handler) {
+        this.handlers.put(path, handler);
+        return this;
     }
 
     public PreviewerServerBuilder serve(Controller... controllers) {
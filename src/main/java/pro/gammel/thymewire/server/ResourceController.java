@@ -5,6 +5,8 @@ import com.sun.net.httpserver.HttpExchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.jfr.ResourceEvent;
+import pro.gammel.thymewire.trace.RequestTrace;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -76,23 +78,34 @@ public class ResourceController implements Controller {
 
     @Override
     public Response respond(HttpExchange exchange) {
+        var event = new ResourceEvent();
+        event.begin();
         var path = exchange.getRequestURI().getPath();
         var resourcePath = resolveResourcePath(path);
 
+        Response response;
         try {
             var content = Files.readAllBytes(resourcePath);
             var mimeType = mimeType(path);
 
             LOG.debug("Serving resource: {} ({})", path, mimeType);
-            return new Response(200, content, mimeType);
+            response = new Response(200, content, mimeType);
 
         } catch (SecurityException e) {
             LOG.warn("Security violation: {}", e.getMessage());
-            return new Response(403, "Forbidden");
+            response = new Response(403, "Forbidden");
         } catch (IOException e) {
             LOG.warn("Failed to read resource file {}: {}", resourcePath, e.getMessage());
-            return new Response(404, "Resource not found");
+            response = new Response(404, "Resource not found");
         }
+        if (event.shouldCommit()) {
+            event.path = path;
+            event.contentType = response.contentType();
+            event.status = response.statusCode();
+            event.bytes = response.binaryContent() != null ? response.binaryContent().length : 0;
+            event.commit();
+        }
+        return response;
     }
 
     /**
@@ -118,7 +131,7 @@ public class ResourceController implements Controller {
             throw new SecurityException("Invalid resource path");
         }
 
-        LOG.info("Resolving resource path: {}", result);
+        RequestTrace.event("Resolved resource path: {}", result);
         return result;
     }
 
@@ -1,6 +1,14 @@
 package pro.gammel.thymewire.server;
 
-public record Response(int statusCode, String body, byte[] binaryContent, String contentType, String redirectLocation) {
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public record Response(int statusCode, String body, byte[] binaryContent, String contentType, String redirectLocation,
+                       Map<String, String> headers) {
+
+    public Response(int statusCode, String body, byte[] binaryContent, String contentType, String redirectLocation) {
+        this(statusCode, body, binaryContent, contentType, redirectLocation, Map.of());
+    }
 
     public Response(int statusCode, String body) {
         this(statusCode, body, null, "text/html", null);
@@ -14,6 +22,15 @@ public record Response(int statusCode, String body, byte[] binaryContent, String
         this(statusCode, null, binaryContent, contentType, null);
     }
 
+    /**
+     * Returns a copy of the response with the additional header.
+     */
+    public Response withHeader(String name, String value) {
+        var headers = new LinkedHashMap<>(this.headers);
+        headers.put(name, value);
+        return new Response(statusCode, body, binaryContent, contentType, redirectLocation, Map.copyOf(headers));
+    }
+
     public boolean isBinary() {
         return binaryContent != null;
     }
@@ -0,0 +1,45 @@
+package pro.gammel.thymewire.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import pro.gammel.thymewire.core.RenderScheduler;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Serves the statistics of the render scheduler as JSON: queued and running renders, completed renders and
+ * waiting times in milliseconds for every priority.
+ */
+public class SchedulerStatsHandler implements HttpHandler {
+
+    public static final String PATH = "/__thymewire/scheduler";
+
+    private final RenderScheduler scheduler;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public SchedulerStatsHandler(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        var result = new LinkedHashMap<String, Object>();
+        scheduler.stats().forEach((priority, stats) -> result.put(priority.name().toLowerCase(), Map.of(
+                "queued", stats.queued(),
+                "running", stats.running(),
+                "completed", stats.completed(),
+                "averageWaitMillis", stats.averageWaitMillis(),
+                "maxWaitMillis", stats.maxWaitNanos() / 1e6)));
+        var body = mapper.writeValueAsBytes(result);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package pro.gammel.thymewire.server;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent computations of the same key: the first caller computes the value, callers arriving
+ * while it is in flight wait for it and receive the same value or exception. Nothing is kept after
+ * the computation completes, so a later caller computes the value again. Keys should include everything
+ * the value depends on besides the computation itself, e.g. the version of the inputs, since callers join
+ * computations started before them.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the values
+ */
+public class SingleFlight<K, V> {
+
+    private final Map<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * Computes the value or joins the computation of the same key in flight.
+     *
+     * @param key the key identifying the computation
+     * @param wait maximum time to wait for the computation in flight
+     * @param computation computes the value, called only by the first caller
+     * @return the computed value
+     * @throws RejectedExecutionException if the computation in flight did not complete within the waiting time
+     */
+    public V execute(K key, Duration wait, Supplier<V> computation) {
+        var flight = new CompletableFuture<V>();
+        var current = flights.putIfAbsent(key, flight);
+        if (current != null) {
+            return join(key, current, wait);
+        }
+        try {
+            var value = computation.get();
+            flights.remove(key, flight);
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the number of computations in flight.
+     */
+    public int inFlight() {
+        return flights.size();
+    }
+
+    private static <V> V join(Object key, CompletableFuture<V> flight, Duration wait) {
+        try {
+            return flight.get(wait.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw new IllegalStateException(e.getCause());
+        } catch (TimeoutException e) {
+            throw new RejectedExecutionException("Computation of " + key + " in flight did not complete in "
+                    + wait.toMillis() + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for the computation of " + key, e);
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package pro.gammel.thymewire.server;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.rendering.RenderDeadline;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiConsumer;
+
+/**
+ * Renders again, in the background, the pages evicted from the {@link OutputCache} by file changes, so that
+ * the reloaded tabs find them already rendered. The most recently requested pages are rendered first.
+ * Renders start once all listeners of the site, e.g. the component registry, have applied the change.
+ * The work is bounded: pages are rendered one by one on a single low priority thread, at most
+ * {@value #MAX_PAGES} pages and {@value #TIME_BUDGET_MILLIS} ms per batch of changes, the page rendered when
+ * the budget runs out is stopped by its deadline; the other evicted pages are rendered on request as usual.
+ */
+public class SpeculativeRenderer implements SiteProvider.Listener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SpeculativeRenderer.class);
+
+    private static final int MAX_PAGES = 16;
+
+    private static final long TIME_BUDGET_MILLIS = 2000;
+
+    private final SiteProvider site;
+
+    private final OutputCache cache;
+
+    private final BiConsumer<String, Map<String, Object>> pages;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("thymewire-speculative-render").priority(Thread.MIN_PRIORITY).daemon().factory());
+
+    // Evicted pages waiting for render by page key, guarded by this
+    private final Map<String, OutputCache.Entry> pending = new HashMap<>();
+    private boolean scheduled;
+
+    /**
+     * @param site the site reporting the changes, notifying the renderer once they are applied
+     * @param cache the cache to watch for evictions
+     * @param pages renders the page with given path and query parameters, putting it into the cache
+     */
+    public SpeculativeRenderer(SiteProvider site, OutputCache cache, BiConsumer<String, Map<String, Object>> pages) {
+        this.site = site;
+        this.cache = cache;
+        this.pages = pages;
+        cache.onEviction(this::evicted);
+        site.subscribe(this);
+    }
+
+    /**
+     * Stops rendering changed pages, the render in progress completes.
+     */
+    public void stop() {
+        site.unsubscribe(this);
+        executor.shutdownNow();
+    }
+
+    private synchronized void evicted(List<OutputCache.Entry> evicted) {
+        evicted.forEach(entry -> pending.merge(entry.page(), entry,
+                (current, added) -> current.requested() >= added.requested() ? current : added));
+    }
+
+    @Override
+    public synchronized void changeApplied() {
+        if (!pending.isEmpty() && !scheduled) {
+            scheduled = true;
+            executor.execute(this::run);
+        }
+    }
+
+    private void run() {
+        List<OutputCache.Entry> batch;
+        synchronized (this) {
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            scheduled = false;
+        }
+        batch.sort(Comparator.comparingLong(OutputCache.Entry::requested).reversed());
+        long start = System.currentTimeMillis();
+        int rendered = 0;
+        for (var entry : batch) {
+            long remaining = TIME_BUDGET_MILLIS - (System.currentTimeMillis() - start);
+            if (rendered == MAX_PAGES || remaining <= 0) {
+                break;
+            }
+            if (cache.contains(entry.page())) {
+                // Already rendered on request
+                continue;
+            }
+            // The render of the page gets the rest of the budget as its deadline, timed out pages are not cached
+            try (var deadline = RenderDeadline.start(entry.page(), Duration.ofMillis(remaining))) {
+                pages.accept(entry.path(), entry.queryParams());
+                if (cache.contains(entry.page())) {
+                    rendered++;
+                }
+            } catch (RuntimeException e) {
+                LOG.debug("Speculative render of {} failed: {}", entry.page(), e.getMessage());
+            }
+        }
+        LOG.info("Speculatively rendered {} of {} changed pages in {} ms", rendered, batch.size(),
+                System.currentTimeMillis() - start);
+    }
+}
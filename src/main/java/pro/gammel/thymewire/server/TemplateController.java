@@ -1,41 +1,114 @@
 package pro.gammel.thymewire.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.github.resource4j.resources.Resources;
 import com.sun.net.httpserver.HttpExchange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.DependencyTracker.Dependency;
+import pro.gammel.thymewire.core.RenderScheduler;
 import pro.gammel.thymewire.core.Renderer;
 import pro.gammel.thymewire.core.SiteProvider;
 import pro.gammel.thymewire.core.UriTemplateMatcher;
+import pro.gammel.thymewire.jfr.ModelLoadEvent;
+import pro.gammel.thymewire.jfr.PageEvent;
+import pro.gammel.thymewire.metrics.Metrics;
+import pro.gammel.thymewire.models.ModelReader;
+import pro.gammel.thymewire.models.ModelScaler;
 import pro.gammel.thymewire.rendering.ClassAwareDeserializer;
+import pro.gammel.thymewire.rendering.RenderDeadline;
+import pro.gammel.thymewire.rendering.RenderProfile;
+import pro.gammel.thymewire.rendering.RenderTimeoutException;
+import pro.gammel.thymewire.rendering.thymeleaf.ComponentElementProcessor;
+import pro.gammel.thymewire.rendering.thymeleaf.LayeredContext;
+import pro.gammel.thymewire.trace.RequestTrace;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 public class TemplateController implements Controller {
 
     private static final Logger LOG = LoggerFactory.getLogger(TemplateController.class);
 
+    private static final String HTML_CONTENT_TYPE = "text/html; charset=utf-8";
+
+    /**
+     * Path prefix of the component previews, e.g. "/__thymewire/components/forms/input" for "forms/input-c".
+     */
+    public static final String COMPONENTS_PATH = "/__thymewire/components/";
+
+    // Bulkhead and metrics key of the paths without template
+    private static final String UNMATCHED = "unmatched";
+
+    // Values of the profile parameter, see SiteConfig.PROFILE_PARAMETER
+    private static final Set<String> PROFILE_MODES = Set.of("1", "html", "json");
+
     private final SiteProvider site;
     private final Renderer renderer;
     private final ObjectMapper mapper;
     private final ClassAwareDeserializer deserializer;
     private final UriTemplateMatcher uriMatcher;
+    private final ModelReader modelReader;
+    private final DependencyTracker dependencies;
+    private final LiveReload liveReload;
+    private final OutputCache outputCache;
+    private final RenderScheduler scheduler;
+    private final Metrics metrics;
+    // Identical renders in flight, e.g. when all open tabs reload after a change
+    private final SingleFlight<Flight, Response> renders = new SingleFlight<>();
+    private final Bulkheads bulkheads = new Bulkheads();
+
+    /**
+     * Identifies a render in flight. Renders started before a change of the files are not joined, and interactive
+     * requests do not wait for background renders, which are admitted later.
+     */
+    private record Flight(String page, long generation, RenderScheduler.Priority priority) {}
 
-    public TemplateController(SiteProvider site, Resources resources) {
+    TemplateController(SiteProvider site, Renderer renderer, ObjectMapper mapper, ModelReader modelReader,
+                       DependencyTracker dependencies, LiveReload liveReload, OutputCache outputCache,
+                       RenderScheduler scheduler, Metrics metrics) {
         this.site = site;
-        this.renderer = new Renderer(resources);
-        this.mapper = new ObjectMapper().findAndRegisterModules();
+        this.renderer = renderer;
+        this.mapper = mapper;
         this.deserializer = new ClassAwareDeserializer(mapper);
         this.uriMatcher = new UriTemplateMatcher();
+        this.modelReader = modelReader;
+        this.dependencies = dependencies;
+        this.liveReload = liveReload;
+        this.outputCache = outputCache;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns the key identifying the rendered page in the dependency graph: the path with sorted query parameters.
+     * Names and values are encoded again, so that decoded "&" or "=" cannot make different requests the same page.
+     */
+    public static String pageKey(String path, Map<String, Object> queryParams) {
+        if (queryParams.isEmpty()) {
+            return path;
+        }
+        return new TreeMap<>(queryParams).entrySet().stream()
+                .map(entry -> URLEncoder.encode(entry.getKey(), StandardCharsets.UTF_8) + "="
+                        + URLEncoder.encode(String.valueOf(entry.getValue()), StandardCharsets.UTF_8))
+                .collect(Collectors.joining("&", path + "?", ""));
     }
 
     @Override
@@ -52,6 +125,11 @@ public class TemplateController implements Controller {
             return false;
         }
 
+        if (path.startsWith(COMPONENTS_PATH)) {
+            var component = componentName(path);
+            return !component.contains("..") && Files.exists(site.componentsPath().resolve(component + ".html"));
+        }
+
         // First try exact template match
         var templateName = resolveTemplateName(path);
         if (site.templates().containsKey(templateName)) {
@@ -79,8 +157,183 @@ public class TemplateController implements Controller {
         // Extract query parameters first to check for model selection
         var queryParams = extractQueryParameters(exchange);
 
+        return render(method, path, queryParams);
+    }
+
+    /**
+     * Renders the page for the request path the same way as it is served, without HTTP exchange.
+     *
+     * @param method HTTP method
+     * @param path request path, e.g. "/start/login"
+     * @param queryParams decoded query parameters
+     * @return the response
+     */
+    public Response render(String method, String path, Map<String, Object> queryParams) {
+        return render(method, path, queryParams, RenderScheduler.Priority.INTERACTIVE);
+    }
+
+    /**
+     * Renders the page for the request path with the given priority.
+     *
+     * @param method HTTP method
+     * @param path request path, e.g. "/start/login"
+     * @param queryParams decoded query parameters
+     * @param priority the priority of the render in the scheduler
+     * @return the response
+     */
+    public Response render(String method, String path, Map<String, Object> queryParams,
+                           RenderScheduler.Priority priority) {
+        if (queryParams.get(SiteConfig.PROFILE_PARAMETER) instanceof String mode && PROFILE_MODES.contains(mode)) {
+            return profiled(method, path, queryParams, priority, mode);
+        }
+        var event = new PageEvent();
+        event.begin();
+        if (!"GET".equals(method)) {
+            var response = limited(path, priority, () -> process(method, path, queryParams));
+            commit(event, method, path, response, false);
+            return response;
+        }
+        var page = pageKey(path, queryParams);
+        // A cached page is rendered again if its components are no longer recorded for hot swap
+        var response = outputCache != null && (liveReload == null || liveReload.recorded(page))
+                ? outputCache.get(page)
+                : null;
+        var cacheHit = response != null;
+        if (cacheHit) {
+            RequestTrace.event("Served {} from the output cache", page);
+        } else {
+            var generation = outputCache != null ? outputCache.generation() : 0;
+            try {
+                response = renders.execute(new Flight(page, generation, priority), renderer.timeout(),
+                        () -> renderGet(page, path, queryParams, priority, generation));
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Render rejected: {}", e.getMessage());
+                response = new Response(503, e.getMessage());
+            }
+        }
+        commit(event, method, page, response, cacheHit);
+        // Fragments are embedded into other pages, which have their own live reload
+        return liveReload != null && fragmentSelector(queryParams) == null
+                ? liveReload.inject(response, page)
+                : response;
+    }
+
+    private static void commit(PageEvent event, String method, String page, Response response, boolean cacheHit) {
+        if (event.shouldCommit()) {
+            event.method = method;
+            event.page = page;
+            event.status = response.statusCode();
+            event.bytes = response.binaryContent() != null ? response.binaryContent().length
+                    : response.body() != null ? response.body().length() : 0;
+            event.cacheHit = cacheHit;
+            event.commit();
+        }
+    }
+
+    private Response renderGet(String page, String path, Map<String, Object> queryParams,
+                               RenderScheduler.Priority priority, long generation) {
+        Response response;
+        try (var ignored = dependencies != null ? dependencies.begin(page) : null;
+             var components = liveReload != null ? liveReload.record(page, path, queryParams) : null) {
+            response = limited(path, priority, () -> process("GET", path, queryParams));
+        }
+        if (outputCache != null) {
+            outputCache.put(page, path, queryParams, response, generation);
+        }
+        return response;
+    }
+
+    /**
+     * Renders the page bypassing the output cache and other requests, with the profile of the render in
+     * the Server-Timing header or, if requested, instead of the page.
+     */
+    private Response profiled(String method, String path, Map<String, Object> queryParams,
+                              RenderScheduler.Priority priority, String mode) {
+        var page = pageKey(path, queryParams);
+        Response response;
+        try (var profile = RenderProfile.start()) {
+            if ("GET".equals(method)) {
+                try (var ignored = dependencies != null ? dependencies.begin(page) : null;
+                     var components = liveReload != null ? liveReload.record(page, path, queryParams) : null) {
+                    response = limited(path, priority, () -> process(method, path, queryParams));
+                }
+            } else {
+                response = limited(path, priority, () -> process(method, path, queryParams));
+            }
+            profile.close();
+            LOG.info("Profile of {} {}: {}", method, page, profile.serverTiming());
+            response = switch (mode) {
+                case "html" -> new Response(200, profile.toHtml(method + " " + page).getBytes(StandardCharsets.UTF_8),
+                        HTML_CONTENT_TYPE);
+                case "json" -> new Response(200, toJson(profile.toMap()), "application/json");
+                default -> response;
+            };
+            response = response.withHeader("Server-Timing", profile.serverTiming());
+        }
+        return liveReload != null && "GET".equals(method) && fragmentSelector(queryParams) == null
+                ? liveReload.inject(response, page)
+                : response;
+    }
+
+    private byte[] toJson(Object value) {
+        try {
+            return mapper.writeValueAsBytes(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Runs the render in the bulkhead of its template and then in the scheduler, so that renders waiting for
+     * a busy template do not occupy scheduler slots. The request has a single deadline covering both waits and
+     * the render of the page with its layout, unless the caller has set one. Renders stopped by their deadline
+     * or rejected by the bulkhead are turned into error pages.
+     */
+    private Response limited(String path, RenderScheduler.Priority priority, Supplier<Response> render) {
+        var template = bulkhead(path);
+        long start = System.nanoTime();
+        try (var ignored = RenderDeadline.start(template, renderer.timeout())) {
+            var deadline = RenderDeadline.current();
+            return bulkheads.execute(template, deadline.remaining(),
+                    () -> scheduler.execute(priority, deadline.remaining(), render));
+        } catch (RenderTimeoutException e) {
+            return new Response(504, renderer.timeoutPage(e), HTML_CONTENT_TYPE);
+        } catch (RejectedExecutionException e) {
+            LOG.warn("Render rejected: {}", e.getMessage());
+            return new Response(503, e.getMessage());
+        } finally {
+            if (metrics != null) {
+                metrics.render(template, System.nanoTime() - start);
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the template rendered for the path, which identifies its bulkhead and its metrics,
+     * or "unmatched" if the site has no such template, so that arbitrary paths share one entry.
+     */
+    private String bulkhead(String path) {
+        if (path.startsWith(COMPONENTS_PATH)) {
+            return componentName(path);
+        }
+        var template = matchUriTemplate(path)
+                .map(UriTemplateMatcher.MatchResult::templateName)
+                .orElseGet(() -> resolveTemplateName(path));
+        return site.templates().containsKey(template) ? template : UNMATCHED;
+    }
+
+    private Response process(String method, String path, Map<String, Object> queryParams) {
+        if (path.startsWith(COMPONENTS_PATH)) {
+            return "GET".equals(method)
+                    ? renderComponent(componentName(path), queryParams)
+                    : new Response(405, "Method not allowed");
+        }
+
         // Try to match against URI templates
-        var matchResult = matchUriTemplate(path);
+        Optional<UriTemplateMatcher.MatchResult> matchResult;
+        try (var span = RenderProfile.span(RenderProfile.ROUTE, path)) {
+            matchResult = matchUriTemplate(path);
+        }
         String templateName;
         String modelId = null;
         Map<String, String> uriVariables = new HashMap<>();
@@ -90,46 +343,49 @@ public class TemplateController implements Controller {
             templateName = matchResult.get().templateName();
             uriVariables = matchResult.get().variables();
             modelId = matchResult.get().modelId().orElse(null);
-            LOG.info("Matched URI template for path '{}': template='{}', variables={}, modelId='{}'",
+            RequestTrace.event("Matched URI template for path '{}': template='{}', variables={}, modelId='{}'",
                     path, templateName, uriVariables, modelId);
         } else {
             // Fall back to direct path resolution
             templateName = resolveTemplateName(path);
         }
 
+        recordDependency(Dependency.template(templateName));
+
         // Load raw model with form metadata
-        var rawModel = loadRawModel(templateName, queryParams, modelId);
+        modelId = selectModel(templateName, queryParams, modelId);
+        var rawModel = readRawModel(templateName, modelId);
 
         // Handle form submissions (POST, PUT, PATCH)
         if ("POST".equals(method) || "PUT".equals(method) || "PATCH".equals(method)) {
-            return handleFormSubmission(rawModel, queryParams, path, templateName);
+            return handleFormSubmission(rawModel, modelId, queryParams, path, templateName);
         }
 
         // For GET requests, render the page
-        return renderPage(templateName, rawModel, queryParams, uriVariables, path);
+        return renderPage(templateName, modelId, rawModel, queryParams, uriVariables, path);
     }
 
-    private Response handleFormSubmission(Map<String, Object> rawModel, Map<String, Object> queryParams,
-                                         String currentPath, String templateName) {
-        LOG.info("Form submission for template '{}' at path '{}'", templateName, currentPath);
-        LOG.info("Raw model: {}", rawModel);
+    private Response handleFormSubmission(Map<String, Object> rawModel, String modelId,
+                                          Map<String, Object> queryParams, String currentPath, String templateName) {
+        RequestTrace.event("Form submission for template '{}' at path '{}' with {} model properties",
+                templateName, currentPath, rawModel.size());
 
         // Check if form metadata exists
         var formConfig = (Map<String, Object>) rawModel.get("form");
         if (formConfig == null) {
             // No form config, re-render current page with model data
             LOG.warn("Form submission: no form config found in raw model, re-rendering current page");
-            return renderPage(templateName, rawModel, queryParams, currentPath);
+            return renderPage(templateName, modelId, rawModel, queryParams, currentPath);
         }
 
-        LOG.info("Form config found: {}", formConfig);
+        RequestTrace.event("Form config found: {}", formConfig);
 
         // Check if action is specified
         var action = (String) formConfig.get("action");
         if (action == null || action.isEmpty()) {
             // No action specified, re-render current page
             LOG.warn("Form submission: no action specified in form config, re-rendering current page");
-            return renderPage(templateName, rawModel, queryParams, currentPath);
+            return renderPage(templateName, modelId, rawModel, queryParams, currentPath);
         }
 
         // Build redirect URL with optional model parameter
@@ -142,7 +398,7 @@ public class TemplateController implements Controller {
             redirectUrl = action + separator + modelSelector + "=" + targetModel;
         }
 
-        LOG.info("Form submission: redirecting to '{}'", redirectUrl);
+        RequestTrace.event("Form submission: redirecting to '{}'", redirectUrl);
         return Response.redirect(redirectUrl);
     }
 
@@ -150,34 +406,145 @@ public class TemplateController implements Controller {
      * Renders a page with the given template and model, applying layout if configured.
      * This is the central rendering method used for both GET requests and form re-rendering.
      */
-    private Response renderPage(String templateName, Map<String, Object> rawModel,
+    private Response renderPage(String templateName, String modelId, Map<String, Object> rawModel,
                                 Map<String, Object> queryParams, Map<String, String> uriVariables, String path) {
+        // Check if layout should be applied, a fragment is rendered without layout but with its model
+        var selector = fragmentSelector(queryParams);
+        String layoutName;
+        try (var span = RenderProfile.span(RenderProfile.LAYOUT, path)) {
+            layoutName = findMatchingLayout(path);
+        }
+        var context = pageContext(templateName, modelId, rawModel, queryParams, uriVariables, path, layoutName,
+                selector);
+
+        if (selector != null) {
+            RequestTrace.event("Rendering fragment '{}' of template '{}'", selector, templateName);
+            return renderHtml(templateName, selector, context);
+        } else if (layoutName != null) {
+            // Render layout template with layered model
+            return renderHtml("layouts/" + layoutName, null, context);
+        }
+        return renderHtml(templateName, null, context);
+    }
+
+    /**
+     * Renders the template or its fragment, answering a failed render with the error page and status 500,
+     * so that clients, the output cache and load tests do not take it for the page. Renders stopped by their
+     * deadline are left to {@link #limited}.
+     */
+    private Response renderHtml(String templateName, String selector, LayeredContext context) {
+        try {
+            return new Response(200, renderer.renderFragment(templateName, selector, context), HTML_CONTENT_TYPE);
+        } catch (RenderTimeoutException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            LOG.error("Failed to render template: {} :: {}", templateName, selector, e);
+            RequestTrace.event("Rendering of '{}' failed: {}", templateName, e.getMessage());
+            return new Response(500, renderer.errorPage(templateName, e), HTML_CONTENT_TYPE);
+        }
+    }
+
+    /**
+     * Builds the context of the page: the layout model, the template model, URI variables and query parameters,
+     * each layer overriding the previous ones.
+     */
+    private LayeredContext pageContext(String templateName, String modelId, Map<String, Object> rawModel,
+                                       Map<String, Object> queryParams, Map<String, String> uriVariables,
+                                       String path, String layoutName, String selector) {
         // Extract the model data from raw model
         var templateModel = extractTemplateModel(rawModel);
+        templateModel = scaleModel(templateModel, rawModel, queryParams);
+
+        var context = new LayeredContext().modelId(modelId);
+        if (layoutName != null) {
+            RequestTrace.event("Found layout '{}' for path '{}'", layoutName, path);
+            if (selector == null) {
+                recordDependency(Dependency.template("layouts/" + layoutName));
+            }
+            // Layout model is the base, template model overwrites layout values
+            context.layer(loadModel("layouts/" + layoutName));
+        }
+        context.layer(templateModel)
+                // Add URI variables to template model (from path parameters like {id})
+                .layer(uriVariables)
+                // Query params override template model and URI variables
+                .layer(queryParams);
+        if (layoutName != null && selector == null) {
+            // Add page variable pointing to the original template
+            context.variable("page", templateName);
+        }
+        return context;
+    }
 
-        // Add URI variables to template model (from path parameters like {id})
-        templateModel.putAll(uriVariables);
+    /**
+     * Renders the component with the model from the test models of components, e.g. "components/forms/input-c.json"
+     * or its variant selected as for pages. The model is passed to the component as "__model", and only the
+     * content fragment or the requested fragment is rendered.
+     */
+    private Response renderComponent(String component, Map<String, Object> queryParams) {
+        recordDependency(Dependency.template(component));
+        var context = componentContext(component, queryParams);
+        var selector = Objects.requireNonNullElse(fragmentSelector(queryParams), ComponentElementProcessor.FRAGMENT_NAME);
+        RequestTrace.event("Rendering fragment '{}' of component '{}'", selector, component);
+        return renderHtml(component, selector, context);
+    }
 
-        // Query params override template model and URI variables
-        templateModel.putAll(queryParams);
+    private LayeredContext componentContext(String component, Map<String, Object> queryParams) {
+        var modelId = selectModel(component, queryParams, null);
+        var rawModel = readRawModel(component, modelId);
+        var model = scaleModel(extractTemplateModel(rawModel), rawModel, queryParams);
+        return new LayeredContext()
+                .modelId(modelId)
+                .variable("__model", model)
+                .layer(queryParams);
+    }
 
-        // Check if layout should be applied
-        var layoutName = findMatchingLayout(path);
-        if (layoutName != null) {
-            LOG.info("Found layout '{}' for path '{}'", layoutName, path);
-            return renderWithLayout(templateName, templateModel, layoutName);
-        } else {
-            var html = renderer.render(templateName, templateModel);
-            return new Response(200, html);
+    /**
+     * Builds the context the page for the path is rendered with, loading its models again. Used to render
+     * parts of an open page, e.g. its components on hot swap, without keeping the context of the page render.
+     *
+     * @param path request path, e.g. "/start/login"
+     * @param queryParams decoded query parameters
+     * @return the context of the page
+     */
+    public LayeredContext context(String path, Map<String, Object> queryParams) {
+        if (path.startsWith(COMPONENTS_PATH)) {
+            return componentContext(componentName(path), queryParams);
         }
+        var match = matchUriTemplate(path);
+        var templateName = match.map(UriTemplateMatcher.MatchResult::templateName)
+                .orElseGet(() -> resolveTemplateName(path));
+        var uriVariables = match.map(UriTemplateMatcher.MatchResult::variables).orElse(Map.of());
+        var modelId = selectModel(templateName, queryParams,
+                match.flatMap(UriTemplateMatcher.MatchResult::modelId).orElse(null));
+        var rawModel = readRawModel(templateName, modelId);
+        return pageContext(templateName, modelId, rawModel, queryParams, uriVariables, path,
+                findMatchingLayout(path), fragmentSelector(queryParams));
+    }
+
+    /**
+     * Returns the component template name for the preview path, e.g. "forms/input-c" for
+     * "/__thymewire/components/forms/input".
+     */
+    private static String componentName(String path) {
+        var name = path.substring(COMPONENTS_PATH.length());
+        if (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name.endsWith("-c") ? name : name + "-c";
+    }
+
+    private static String fragmentSelector(Map<String, Object> queryParams) {
+        var selector = queryParams.get(SiteConfig.FRAGMENT_PARAMETER);
+        return selector instanceof String value && !value.isBlank() ? value : null;
     }
 
     /**
      * Overload for backward compatibility (form submissions don't have URI variables).
      */
-    private Response renderPage(String templateName, Map<String, Object> rawModel,
+    private Response renderPage(String templateName, String modelId, Map<String, Object> rawModel,
                                 Map<String, Object> queryParams, String path) {
-        return renderPage(templateName, rawModel, queryParams, new HashMap<>(), path);
+        return renderPage(templateName, modelId, rawModel, queryParams, new HashMap<>(), path);
     }
 
     private Map<String, Object> extractTemplateModel(Map<String, Object> rawModel) {
@@ -186,11 +553,43 @@ public class TemplateController implements Controller {
             var modelData = rawModel.get("model");
             if (modelData instanceof Map) {
                 // Process model properties to deserialize those with "class" meta field
-                return deserializer.processModel((Map<String, Object>) modelData);
+                try (var span = RenderProfile.span(RenderProfile.DESERIALIZE, "model")) {
+                    return deserializer.processModel((Map<String, Object>) modelData);
+                }
             }
         }
-        // Fallback to using the entire raw model (backward compatibility)
-        return new HashMap<>(rawModel);
+        // Fallback to using the entire raw model (backward compatibility), read-only as it may be cached
+        return Collections.unmodifiableMap(rawModel);
+    }
+
+    /**
+     * Multiplies arrays of the template model as requested by the scale parameter or the "scale" metadata
+     * of the model file. The parameter takes precedence over the metadata.
+     */
+    private Map<String, Object> scaleModel(Map<String, Object> templateModel, Map<String, Object> rawModel,
+                                           Map<String, Object> queryParams) {
+        var sizes = new LinkedHashMap<String, Integer>();
+        // Metadata exists only next to the "model" wrapper, otherwise "scale" is a property of the model
+        if (rawModel.get("model") instanceof Map<?, ?>
+                && rawModel.get(ModelScaler.SCALE_META_FIELD) instanceof Map<?, ?> meta) {
+            meta.forEach((path, size) -> {
+                if (size instanceof Number number) {
+                    sizes.put(String.valueOf(path), number.intValue());
+                }
+            });
+        }
+        if (queryParams.get(SiteConfig.SCALE_PARAMETER) instanceof String specification) {
+            try {
+                sizes.putAll(ModelScaler.parse(specification));
+            } catch (IllegalArgumentException e) {
+                LOG.warn("Ignoring {}: {}", SiteConfig.SCALE_PARAMETER, e.getMessage());
+            }
+        }
+        if (sizes.isEmpty()) {
+            return templateModel;
+        }
+        RequestTrace.event("Scaling model arrays: {}", sizes);
+        return ModelScaler.scale(templateModel, sizes);
     }
 
     /**
@@ -249,69 +648,79 @@ public class TemplateController implements Controller {
         return layoutConfiguration.findByPath(path).orElse(null);
     }
 
-    private Response renderWithLayout(String templateName, Map<String, Object> templateModel, String layoutName) {
-        // Load layout model
-        var layoutModel = loadModel("layouts/" + layoutName);
-
-        // Start with layout model as base
-        var mergedModel = new HashMap<>(layoutModel);
+    /**
+     * Returns the model variant of the template to render: selected by the query parameter, by the URI template or
+     * null for the default model, also if the selected variant does not exist.
+     */
+    private String selectModel(String templateName, Map<String, Object> queryParams, String uriModelId) {
+        var config = site.config();
 
-        // Merge template model, overwriting layout values
-        mergedModel.putAll(templateModel);
+        // Determine which model to load (priority: query param > URI model ID > default)
+        var modelSelector = config.modelSelector() != null ? config.modelSelector() : SiteConfig.DEFAULT_MODEL_SELECTOR;
+        var selectedModel = (String) queryParams.get(modelSelector);
 
-        // Add page variable pointing to the original template
-        mergedModel.put("page", templateName);
+        // If no query param model, use URI-based model ID from mapping
+        if ((selectedModel == null || selectedModel.isEmpty()) && uriModelId != null && !uriModelId.isEmpty()) {
+            selectedModel = uriModelId;
+            RequestTrace.event("Using model ID from URI template: '{}'", selectedModel);
+        }
 
-        // Render layout template with merged model
-        var html = renderer.render("layouts/" + layoutName, mergedModel);
-        return new Response(200, html);
+        // Validate that the requested model exists (using original template name)
+        if (selectedModel != null && !selectedModel.isEmpty()) {
+            // Components are not discovered with their models, so the variant file is checked directly
+            var exists = templateName.endsWith("-c")
+                    ? Files.exists(site.modelPath(templateName, selectedModel))
+                    : site.modelExists(templateName, selectedModel);
+            if (!exists) {
+                LOG.warn("Requested model '{}' does not exist for template '{}', using default", selectedModel, templateName);
+                selectedModel = null; // Reset to use default
+            }
+        }
+        return selectedModel != null && !selectedModel.isEmpty() ? selectedModel : null;
     }
 
     private Map<String, Object> loadRawModel(String templateName, Map<String, Object> queryParams, String uriModelId) {
-        try {
-            var config = site.config();
-            var basePath = site.basePath();
-
-            // Determine which model to load (priority: query param > URI model ID > default)
-            var modelSelector = config.modelSelector() != null ? config.modelSelector() : SiteConfig.DEFAULT_MODEL_SELECTOR;
-            var selectedModel = (String) queryParams.get(modelSelector);
-
-            // If no query param model, use URI-based model ID from mapping
-            if ((selectedModel == null || selectedModel.isEmpty()) && uriModelId != null && !uriModelId.isEmpty()) {
-                selectedModel = uriModelId;
-                LOG.info("Using model ID from URI template: '{}'", selectedModel);
-            }
-
-            // Validate that the requested model exists (using original template name)
-            if (selectedModel != null && !selectedModel.isEmpty()) {
-                if (!site.modelExists(templateName, selectedModel)) {
-                    LOG.warn("Requested model '{}' does not exist for template '{}', using default", selectedModel, templateName);
-                    selectedModel = null; // Reset to use default
-                }
-            }
-
-            // Add "pages/" prefix to template name for file path construction only
-            var modelPath = templateName.startsWith("layouts/") ? templateName : "pages/" + templateName;
+        return readRawModel(templateName, selectModel(templateName, queryParams, uriModelId));
+    }
 
+    private Map<String, Object> readRawModel(String templateName, String selectedModel) {
+        try {
             Path testPath;
             if (selectedModel != null && !selectedModel.isEmpty()) {
                 // Load specific model variant
-                testPath = basePath.resolve(config.test()).resolve(modelPath + "." + selectedModel + ".json");
-                LOG.info("Looking for specific model file: {}", testPath);
+                testPath = site.modelPath(templateName, selectedModel);
+                RequestTrace.event("Looking for specific model file: {}", testPath);
             } else {
                 // Load default model
-                testPath = basePath.resolve(config.test()).resolve(modelPath + ".json");
-                LOG.info("Looking for default model file: {}", testPath);
+                testPath = site.modelPath(templateName, null);
+                RequestTrace.event("Looking for default model file: {}", testPath);
             }
 
-            if (Files.exists(testPath)) {
-                var content = Files.readString(testPath);
-                var model = mapper.readValue(content, HashMap.class);
-                LOG.info("Loaded raw model for template '{}': {}", templateName, model);
-                return model;
+            // Missing model is recorded too, so that the page is reloaded when the model is created
+            recordDependency(Dependency.model(testPath));
+            var event = new ModelLoadEvent();
+            event.begin();
+            var found = Files.exists(testPath);
+            Map<String, Object> model = null;
+            if (found) {
+                try (var span = RenderProfile.span(RenderProfile.MODEL, templateName)) {
+                    model = modelReader.read(testPath, file -> recordDependency(Dependency.model(file)));
+                }
+                RequestTrace.event("Loaded raw model for template '{}' from {}", templateName, testPath);
             } else {
                 LOG.warn("Model file not found: {}", testPath);
             }
+            if (event.shouldCommit()) {
+                event.template = templateName;
+                event.modelId = selectedModel != null ? selectedModel : "";
+                event.path = testPath.toString();
+                event.bytes = found ? Files.size(testPath) : 0;
+                event.found = found;
+                event.commit();
+            }
+            if (model != null) {
+                return model;
+            }
         } catch (IOException e) {
             LOG.warn("Failed to load model for template '{}': {}", templateName, e.getMessage());
         }
@@ -319,6 +728,13 @@ public class TemplateController implements Controller {
         return new HashMap<>();
     }
 
+    // Dependencies are tracked only while changes are watched
+    private void recordDependency(Dependency dependency) {
+        if (dependencies != null) {
+            dependencies.record(dependency);
+        }
+    }
+
     private Map<String, Object> loadRawModel(String templateName, Map<String, Object> queryParams) {
         return loadRawModel(templateName, queryParams, null);
     }
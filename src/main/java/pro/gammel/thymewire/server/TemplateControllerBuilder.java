@@ -0,0 +1,93 @@
+package pro.gammel.thymewire.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import pro.gammel.thymewire.core.DependencyTracker;
+import pro.gammel.thymewire.core.RenderScheduler;
+import pro.gammel.thymewire.core.Renderer;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.metrics.Metrics;
+import pro.gammel.thymewire.models.ModelReader;
+
+public class TemplateControllerBuilder {
+
+    private final SiteProvider site;
+
+    private Renderer renderer;
+
+    private ObjectMapper mapper;
+
+    private ModelReader modelReader;
+
+    private DependencyTracker dependencies;
+
+    private LiveReload liveReload;
+
+    private OutputCache outputCache;
+
+    private RenderScheduler scheduler = new RenderScheduler();
+
+    private Metrics metrics;
+
+    private TemplateControllerBuilder(SiteProvider site) {
+        this.site = site;
+    }
+
+    public static TemplateControllerBuilder aTemplateController(SiteProvider site) {
+        return new TemplateControllerBuilder(site);
+    }
+
+    public TemplateControllerBuilder renderer(Renderer renderer) {
+        this.renderer = renderer;
+        return this;
+    }
+
+    public TemplateControllerBuilder mapper(ObjectMapper mapper) {
+        this.mapper = mapper;
+        return this;
+    }
+
+    public TemplateControllerBuilder models(ModelReader modelReader) {
+        this.modelReader = modelReader;
+        return this;
+    }
+
+    public TemplateControllerBuilder dependencies(DependencyTracker dependencies) {
+        this.dependencies = dependencies;
+        return this;
+    }
+
+    public TemplateControllerBuilder liveReload(LiveReload liveReload) {
+        this.liveReload = liveReload;
+        return this;
+    }
+
+    public TemplateControllerBuilder outputCache(OutputCache outputCache) {
+        this.outputCache = outputCache;
+        return this;
+    }
+
+    public TemplateControllerBuilder scheduler(RenderScheduler scheduler) {
+        this.scheduler = scheduler;
+        return this;
+    }
+
+    public TemplateControllerBuilder metrics(Metrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Creates the controller.
+     *
+     * @throws IllegalStateException if the renderer is not set
+     */
+    public TemplateController build() {
+        if (renderer == null) {
+            throw new IllegalStateException("Renderer of the template controller is not set");
+        }
+        var mapper = this.mapper != null ? this.mapper : new ObjectMapper().findAndRegisterModules();
+        return new TemplateController(site, renderer, mapper,
+                modelReader != null ? modelReader : new ModelReader(site, mapper, null),
+                dependencies, liveReload, outputCache, scheduler, metrics);
+    }
+}
@@ -0,0 +1,100 @@
+package pro.gammel.thymewire.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Command generating a synthetic project for benchmarks and load tests, see {@link ProjectGenerator}.
+ * <pre>
+ * generate [--seed 1] [--pages 100] [--variants 3] [--page-depth 3] [--components 20] [--component-depth 3]
+ *          [--layouts 4] [--mappings 10] [--locales de,fr] [--assets 20] &lt;dir&gt;
+ * </pre>
+ */
+public class GenerateCommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GenerateCommand.class);
+
+    public static final String NAME = "generate";
+
+    private final PrintStream out;
+
+    public GenerateCommand() {
+        this(System.out);
+    }
+
+    public GenerateCommand(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param args command arguments
+     * @return exit code
+     */
+    public int run(String[] args) {
+        var generator = ProjectGenerator.aProject();
+        Path directory = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                var option = args[i];
+                if (option.startsWith("--") && i + 1 >= args.length) {
+                    return usage("Missing value of option " + option);
+                }
+                switch (option) {
+                    case "--seed" -> generator.seed(Long.parseLong(args[++i]));
+                    case "--pages" -> generator.pages(Integer.parseInt(args[++i]));
+                    case "--variants" -> generator.variants(Integer.parseInt(args[++i]));
+                    case "--page-depth" -> generator.pageDepth(Integer.parseInt(args[++i]));
+                    case "--components" -> generator.components(Integer.parseInt(args[++i]));
+                    case "--component-depth" -> generator.componentDepth(Integer.parseInt(args[++i]));
+                    case "--layouts" -> generator.layouts(Integer.parseInt(args[++i]));
+                    case "--mappings" -> generator.mappings(Integer.parseInt(args[++i]));
+                    case "--locales" -> generator.locales(Arrays.stream(args[++i].split(","))
+                            .map(String::trim).filter(locale -> !locale.isEmpty()).toList());
+                    case "--assets" -> generator.assets(Integer.parseInt(args[++i]));
+                    default -> {
+                        if (option.startsWith("--")) {
+                            return usage("Unknown option " + option);
+                        } else if (directory != null) {
+                            return usage("Only one directory can be given");
+                        }
+                        directory = Paths.get(option);
+                    }
+                }
+            }
+        } catch (NumberFormatException e) {
+            return usage("Invalid number: " + e.getMessage());
+        }
+        if (directory == null) {
+            return usage("Project directory is required");
+        }
+
+        try {
+            var summary = generator.generate(directory);
+            out.printf("Generated %s: %d pages, %d models, %d components, %d layouts, %d mappings%n",
+                    summary.directory(), summary.pages(), summary.models(), summary.components(),
+                    summary.layouts(), summary.mappings());
+            out.printf("%d files, %d bytes, %d request paths in %s%n", summary.files(), summary.bytes(),
+                    summary.paths().size(), directory.resolve(ProjectGenerator.PATHS_FILE));
+            return 0;
+        } catch (IOException e) {
+            LOG.error("Failed to generate project: {}", e.getMessage());
+            return 1;
+        }
+    }
+
+    private int usage(String error) {
+        LOG.error(error);
+        out.println("Usage: generate [--seed 1] [--pages 100] [--variants 3] [--page-depth 3] [--components 20]"
+                + " [--component-depth 3] [--layouts 4] [--mappings 10] [--locales de,fr] [--assets 20] <dir>");
+        out.println("Example: generate --pages 5000 --components 200 --seed 42 /tmp/site");
+        return 2;
+    }
+}
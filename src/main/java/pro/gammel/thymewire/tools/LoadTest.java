@@ -0,0 +1,336 @@
+package pro.gammel.thymewire.tools;
+
+import pro.gammel.thymewire.config.Mapping;
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.core.SiteProvider;
+import pro.gammel.thymewire.discovery.ModelInfo;
+import pro.gammel.thymewire.discovery.TemplateInfo;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Load test of a running previewer. Routes are requested in turns by the given number of concurrent clients on
+ * virtual threads, so that every route is requested about as often as the others. Requests completed during
+ * the warm-up are not recorded.
+ * <p>
+ * Latencies are kept per route as exact samples, so the reported percentiles are not rounded to buckets as the ones
+ * of the server metrics.
+ */
+public class LoadTest {
+
+    private static final Pattern VARIABLE_PATTERN = Pattern.compile("\\{([a-zA-Z_][a-zA-Z0-9_]*)\\}");
+
+    /**
+     * Value of URI variables of mappings that have no value given.
+     */
+    public static final String DEFAULT_VARIABLE_VALUE = "1";
+
+    /**
+     * Requested route.
+     *
+     * @param path the request path with query, e.g. "/orders?__preview_model=empty"
+     * @param template the name of the rendered template
+     */
+    public record Route(String path, String template) {}
+
+    /**
+     * Statistics of a route, latencies in nanoseconds.
+     *
+     * @param route the route
+     * @param requests number of completed requests
+     * @param errors number of requests failed or answered with status 400 or above, e.g. 500 of templates failing
+     *               to render
+     * @param bytes size of the received bodies
+     * @param error the last error, or null
+     */
+    public record RouteStats(Route route, long requests, long errors, long bytes, long p50, long p95, long p99,
+                             long max, String error) {}
+
+    /**
+     * Result of the load test.
+     *
+     * @param routes statistics of all routes in the order of the routes
+     * @param total statistics of all requests, with null route
+     * @param elapsedNanos duration of the measurement
+     */
+    public record Report(List<RouteStats> routes, RouteStats total, long elapsedNanos) {
+
+        /**
+         * Returns the number of requests completed per second.
+         */
+        public double throughput() {
+            return elapsedNanos > 0 ? total.requests() * 1e9 / elapsedNanos : 0;
+        }
+    }
+
+    /**
+     * Latency samples and counters of a route, appended to by all clients.
+     */
+    private static final class Samples {
+
+        private long[] values = new long[64];
+
+        private int count;
+
+        private long errors;
+
+        private long bytes;
+
+        private String error;
+
+        synchronized void record(long nanos, long size, String failure) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            values[count++] = nanos;
+            bytes += size;
+            if (failure != null) {
+                errors++;
+                error = failure;
+            }
+        }
+    }
+
+    // Flags of the clients, set by the thread running the test
+    private static final class State {
+
+        volatile boolean running = true;
+
+        volatile boolean measuring;
+    }
+
+    private record Sample(long nanos, long bytes, String error) {}
+
+    private final URI target;
+
+    private final List<Route> routes;
+
+    private int concurrency = 16;
+
+    private Duration warmup = Duration.ofSeconds(5);
+
+    private Duration duration = Duration.ofSeconds(30);
+
+    private Duration timeout = Duration.ofSeconds(30);
+
+    private LoadTest(URI target, List<Route> routes) {
+        this.target = target;
+        this.routes = List.copyOf(routes);
+    }
+
+    /**
+     * Creates the load test of the routes.
+     *
+     * @param target the base URI of the server, e.g. "http://localhost:8085"
+     * @param routes the routes to request
+     */
+    public static LoadTest aLoadTest(URI target, List<Route> routes) {
+        if (routes.isEmpty()) {
+            throw new IllegalArgumentException("No routes to request");
+        }
+        return new LoadTest(target, routes);
+    }
+
+    public LoadTest concurrency(int concurrency) {
+        this.concurrency = Math.max(1, concurrency);
+        return this;
+    }
+
+    public LoadTest warmup(Duration warmup) {
+        this.warmup = warmup;
+        return this;
+    }
+
+    public LoadTest duration(Duration duration) {
+        this.duration = duration;
+        return this;
+    }
+
+    /**
+     * Sets the time limit of a single request.
+     */
+    public LoadTest timeout(Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Returns the routes of all templates with all their model variants and of all mappings. Templated mappings
+     * selecting the model by a URI variable are expanded for every model variant of their template, other URI
+     * variables are replaced by the given values or {@link #DEFAULT_VARIABLE_VALUE}.
+     *
+     * @param site the loaded site
+     * @param values values of URI variables by name
+     * @return the routes sorted by template
+     */
+    public static List<Route> routes(SiteProvider site, Map<String, String> values) {
+        var config = site.config();
+        var selector = Objects.requireNonNullElse(config.modelSelector(), SiteConfig.DEFAULT_MODEL_SELECTOR);
+        var routes = new ArrayList<Route>();
+        var templates = site.templates().values().stream()
+                .sorted(Comparator.comparing(TemplateInfo::name))
+                .toList();
+        for (var template : templates) {
+            routes.add(new Route("/" + template.name(), template.name()));
+            for (var model : variants(template)) {
+                routes.add(new Route("/" + template.name() + "?" + encode(selector) + "=" + encode(model.id()),
+                        template.name()));
+            }
+        }
+        if (config.mappings() != null) {
+            for (var mapping : config.mappings()) {
+                routes.addAll(routes(mapping, site.templates().get(mapping.template()), values));
+            }
+        }
+        return routes;
+    }
+
+    private static List<Route> routes(Mapping mapping, TemplateInfo template, Map<String, String> values) {
+        if (!mapping.templated()) {
+            return List.of(new Route(mapping.href(), mapping.template()));
+        }
+        var models = mapping.model() != null && template != null
+                ? variants(template).stream().map(ModelInfo::id).toList()
+                : List.<String>of();
+        if (models.isEmpty()) {
+            return List.of(new Route(expand(mapping.href(), mapping.model(), null, values), mapping.template()));
+        }
+        return models.stream()
+                .map(model -> new Route(expand(mapping.href(), mapping.model(), model, values), mapping.template()))
+                .toList();
+    }
+
+    private static String expand(String href, String modelVariable, String model, Map<String, String> values) {
+        return VARIABLE_PATTERN.matcher(href).replaceAll(match -> {
+            var name = match.group(1);
+            var value = name.equals(modelVariable) && model != null
+                    ? model
+                    : values.getOrDefault(name, DEFAULT_VARIABLE_VALUE);
+            // Path variables are decoded by the server, where "+" is not a space
+            return Matcher.quoteReplacement(encode(value).replace("+", "%20"));
+        });
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static List<ModelInfo> variants(TemplateInfo template) {
+        return template.models().stream()
+                .filter(model -> !model.isDefault())
+                .sorted(Comparator.comparing(ModelInfo::id))
+                .toList();
+    }
+
+    /**
+     * Runs the load test, blocking for the warm-up and the measurement.
+     *
+     * @return the report of the measurement
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public Report run() throws InterruptedException {
+        var samples = new Samples[routes.size()];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = new Samples();
+        }
+        var requests = new URI[routes.size()];
+        for (int i = 0; i < requests.length; i++) {
+            requests[i] = target.resolve(routes.get(i).path());
+        }
+        var next = new AtomicLong();
+        var state = new State();
+        long start;
+        long end;
+        try (var clientExecutor = Executors.newVirtualThreadPerTaskExecutor();
+             var client = HttpClient.newBuilder()
+                     .version(HttpClient.Version.HTTP_1_1)
+                     .connectTimeout(timeout)
+                     .executor(clientExecutor)
+                     .build()) {
+            try (var clients = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < concurrency; i++) {
+                    clients.submit(() -> {
+                        while (state.running) {
+                            var index = (int) (next.getAndIncrement() % requests.length);
+                            var measured = state.measuring;
+                            var sample = request(client, requests[index]);
+                            if (measured) {
+                                samples[index].record(sample.nanos(), sample.bytes(), sample.error());
+                            }
+                        }
+                    });
+                }
+                Thread.sleep(warmup);
+                state.measuring = true;
+                start = System.nanoTime();
+                Thread.sleep(duration);
+                state.running = false;
+            }
+            end = System.nanoTime();
+        }
+        return report(samples, end - start);
+    }
+
+    private Sample request(HttpClient client, URI uri) {
+        var request = HttpRequest.newBuilder(uri).timeout(timeout).GET().build();
+        long started = System.nanoTime();
+        try {
+            var response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long nanos = System.nanoTime() - started;
+            var error = response.statusCode() >= 400 ? "status " + response.statusCode() : null;
+            return new Sample(nanos, response.body().length, error);
+        } catch (IOException e) {
+            return new Sample(System.nanoTime() - started, 0, e.getClass().getSimpleName() + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new Sample(System.nanoTime() - started, 0, "interrupted");
+        }
+    }
+
+    private Report report(Samples[] samples, long elapsedNanos) {
+        var stats = new ArrayList<RouteStats>(samples.length);
+        var all = new long[Arrays.stream(samples).mapToInt(route -> route.count).sum()];
+        int offset = 0;
+        long errors = 0;
+        long bytes = 0;
+        String error = null;
+        for (int i = 0; i < samples.length; i++) {
+            var route = samples[i];
+            System.arraycopy(route.values, 0, all, offset, route.count);
+            offset += route.count;
+            errors += route.errors;
+            bytes += route.bytes;
+            error = route.error != null ? route.error : error;
+            stats.add(stats(routes.get(i), Arrays.copyOf(route.values, route.count), route.errors, route.bytes,
+                    route.error));
+        }
+        return new Report(stats, stats(null, all, errors, bytes, error), elapsedNanos);
+    }
+
+    private static RouteStats stats(Route route, long[] latencies, long errors, long bytes, String error) {
+        Arrays.sort(latencies);
+        return new RouteStats(route, latencies.length, errors, bytes, percentile(latencies, 0.5),
+                percentile(latencies, 0.95), percentile(latencies, 0.99),
+                latencies.length > 0 ? latencies[latencies.length - 1] : 0, error);
+    }
+
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(quantile * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+}
@@ -0,0 +1,180 @@
+package pro.gammel.thymewire.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.Thymewire;
+import pro.gammel.thymewire.core.SiteProvider;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command requesting every template with all its model variants and every mapping of the site concurrently for
+ * a given time and reporting throughput, latency percentiles and errors per route. The site is served by
+ * a previewer started in the same process, unless the URL of a running one is given.
+ * <pre>
+ * loadtest [--dir &lt;path&gt;] [--url &lt;url&gt;] [--concurrency 16] [--duration 30] [--warmup 5] [--timeout 30]
+ *          [--var &lt;name&gt;=&lt;value&gt;]... [--top 20]
+ * </pre>
+ * The exit code is 1 if any request failed, including renders answered with the error page and status 500,
+ * so that the command can guard builds against broken pages.
+ */
+public class LoadTestCommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadTestCommand.class);
+
+    public static final String NAME = "loadtest";
+
+    private final PrintStream out;
+
+    public LoadTestCommand() {
+        this(System.out);
+    }
+
+    public LoadTestCommand(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param args command arguments
+     * @return exit code
+     */
+    public int run(String[] args) {
+        Path launchDirectory = Paths.get(".");
+        URI url = null;
+        int concurrency = 16;
+        int duration = 30;
+        int warmup = 5;
+        int timeout = 30;
+        int top = 20;
+        var values = new HashMap<String, String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--dir") && i + 1 < args.length) {
+                    launchDirectory = Paths.get(args[++i]);
+                } else if (args[i].equals("--url") && i + 1 < args.length) {
+                    url = URI.create(args[++i]);
+                } else if (args[i].equals("--concurrency") && i + 1 < args.length) {
+                    concurrency = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("--duration") && i + 1 < args.length) {
+                    duration = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--warmup") && i + 1 < args.length) {
+                    warmup = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--timeout") && i + 1 < args.length) {
+                    timeout = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--top") && i + 1 < args.length) {
+                    top = Math.max(0, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--var") && i + 1 < args.length) {
+                    var variable = args[++i].split("=", 2);
+                    if (variable.length != 2) {
+                        return usage("Invalid variable " + args[i] + ", expected <name>=<value>");
+                    }
+                    values.put(variable[0], variable[1]);
+                } else {
+                    return usage("Unknown option " + args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return usage("Invalid number: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return usage("Invalid URL: " + e.getMessage());
+        }
+
+        SiteProvider site;
+        if (url == null) {
+            int port;
+            try (var socket = new ServerSocket(0)) {
+                port = socket.getLocalPort();
+            } catch (IOException e) {
+                LOG.error("No free port for the previewer: {}", e.getMessage());
+                return 1;
+            }
+            var app = new Thymewire(launchDirectory);
+            app.start(port);
+            site = app.site();
+            url = URI.create("http://localhost:" + port);
+        } else {
+            site = new SiteProvider(launchDirectory);
+            site.load();
+        }
+
+        var routes = LoadTest.routes(site, values);
+        if (routes.isEmpty()) {
+            LOG.error("No templates found in {}", launchDirectory.toAbsolutePath().normalize());
+            return 1;
+        }
+        out.printf("Load testing %s: %d routes, %d clients, %d s warm-up, %d s measurement%n", url, routes.size(),
+                concurrency, warmup, duration);
+        LoadTest.Report report;
+        try {
+            report = LoadTest.aLoadTest(url, routes)
+                    .concurrency(concurrency)
+                    .warmup(Duration.ofSeconds(warmup))
+                    .duration(Duration.ofSeconds(duration))
+                    .timeout(Duration.ofSeconds(timeout))
+                    .run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        print(report, top);
+        return report.total().errors() > 0 ? 1 : 0;
+    }
+
+    private void print(LoadTest.Report report, int top) {
+        var routes = report.routes().stream()
+                .sorted(Comparator.comparingLong(LoadTest.RouteStats::p99).reversed())
+                .toList();
+        out.println();
+        out.printf("%-60s %8s %7s %9s %9s %9s %9s%n", "route (slowest by p99)", "requests", "errors", "p50 ms",
+                "p95 ms", "p99 ms", "max ms");
+        routes.stream().limit(top).forEach(this::print);
+        if (routes.size() > top) {
+            out.printf("... %d more routes%n", routes.size() - top);
+        }
+        print(report.total());
+
+        var seconds = report.elapsedNanos() / 1e9;
+        out.printf("%nThroughput: %.1f requests/s, %.2f MB/s%n", report.throughput(),
+                report.total().bytes() / seconds / (1 << 20));
+        var missed = routes.stream().filter(route -> route.requests() == 0).count();
+        if (missed > 0) {
+            out.printf("%d routes were not requested, increase the duration to cover all of them%n", missed);
+        }
+        List<LoadTest.RouteStats> failed = routes.stream().filter(route -> route.errors() > 0).toList();
+        if (!failed.isEmpty()) {
+            out.printf("%d of %d requests failed on %d routes:%n", report.total().errors(), report.total().requests(),
+                    failed.size());
+            failed.forEach(route -> out.printf("  %s: %d errors, last: %s%n", route.route().path(), route.errors(),
+                    route.error()));
+        }
+    }
+
+    private void print(LoadTest.RouteStats stats) {
+        var name = stats.route() != null ? stats.route().path() : "total";
+        if (name.length() > 60) {
+            name = "..." + name.substring(name.length() - 57);
+        }
+        out.printf("%-60s %8d %7d %9.2f %9.2f %9.2f %9.2f%n", name, stats.requests(), stats.errors(),
+                stats.p50() / 1e6, stats.p95() / 1e6, stats.p99() / 1e6, stats.max() / 1e6);
+    }
+
+    private int usage(String error) {
+        LOG.error(error);
+        out.println("Usage: loadtest [--dir <path>] [--url <url>] [--concurrency 16] [--duration 30] [--warmup 5]"
+                + " [--timeout 30] [--var <name>=<value>]... [--top 20]");
+        out.println("Example: loadtest --dir /tmp/site --concurrency 64 --duration 60 --var id=42");
+        return 2;
+    }
+}
@@ -0,0 +1,474 @@
+package pro.gammel.thymewire.tools;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import pro.gammel.thymewire.config.SiteConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Generator of synthetic projects for benchmarks and load tests. A project contains pages in nested directories
+ * with their model variants, components nesting each other up to the given depth, layouts selected by Ant patterns,
+ * templated URI mappings, message bundles in several locales and static assets. The same seed and options always
+ * produce the same project.
+ * <p>
+ * Besides the project, the generator writes "generator.json" with the options it was run with and "paths.txt"
+ * with the request paths of all pages, variants and mappings, one per line, for load tests.
+ */
+public class ProjectGenerator {
+
+    public static final String PATHS_FILE = "paths.txt";
+
+    public static final String OPTIONS_FILE = "generator.json";
+
+    private static final String TEMPLATES = "src/main/resources/templates/";
+
+    private static final String RESOURCES = "src/main/resources/";
+
+    private static final String MODELS = "src/test/resources/templates/";
+
+    // Directory fan-out of the levels below the sections
+    private static final int GROUPS = 5;
+
+    private static final String[] WORDS = {
+            "order", "invoice", "account", "customer", "product", "catalog", "delivery", "payment", "report",
+            "settings", "profile", "message", "review", "ticket", "project", "team", "budget", "contract"
+    };
+
+    /**
+     * Summary of the generated project.
+     *
+     * @param directory the project directory
+     * @param pages the number of pages
+     * @param models the number of model files of pages
+     * @param components the number of components
+     * @param layouts the number of layouts
+     * @param mappings the number of URI mappings
+     * @param files the number of written files
+     * @param bytes the size of the written files
+     * @param paths the request paths of pages, variants and mappings
+     */
+    public record Summary(Path directory, int pages, int models, int components, int layouts, int mappings,
+                          int files, long bytes, List<String> paths) {}
+
+    private record Page(String name, String section, int items, List<String> components) {}
+
+    private long seed = 1;
+
+    private int pages = 100;
+
+    private int variants = 3;
+
+    private int pageDepth = 3;
+
+    private int components = 20;
+
+    private int componentDepth = 3;
+
+    private int layouts = 4;
+
+    private int mappings = 10;
+
+    private List<String> locales = List.of("de", "fr");
+
+    private int assets = 20;
+
+    private final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private Random random;
+
+    private Path directory;
+
+    private int files;
+
+    private long bytes;
+
+    public static ProjectGenerator aProject() {
+        return new ProjectGenerator();
+    }
+
+    public ProjectGenerator seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public ProjectGenerator pages(int pages) {
+        this.pages = Math.max(1, pages);
+        return this;
+    }
+
+    /**
+     * Sets the number of model variants per page in addition to the default model.
+     */
+    public ProjectGenerator variants(int variants) {
+        this.variants = Math.max(0, variants);
+        return this;
+    }
+
+    /**
+     * Sets the maximal depth of page directories, 1 puts all pages directly into the sections.
+     */
+    public ProjectGenerator pageDepth(int pageDepth) {
+        this.pageDepth = Math.max(1, pageDepth);
+        return this;
+    }
+
+    public ProjectGenerator components(int components) {
+        this.components = Math.max(0, components);
+        return this;
+    }
+
+    /**
+     * Sets the number of levels of components, components of a level use the components of the next one.
+     */
+    public ProjectGenerator componentDepth(int componentDepth) {
+        this.componentDepth = Math.max(1, componentDepth);
+        return this;
+    }
+
+    public ProjectGenerator layouts(int layouts) {
+        this.layouts = Math.max(0, layouts);
+        return this;
+    }
+
+    public ProjectGenerator mappings(int mappings) {
+        this.mappings = Math.max(0, mappings);
+        return this;
+    }
+
+    /**
+     * Sets the locales of the message bundles in addition to the default one.
+     */
+    public ProjectGenerator locales(List<String> locales) {
+        this.locales = List.copyOf(locales);
+        return this;
+    }
+
+    public ProjectGenerator assets(int assets) {
+        this.assets = Math.max(0, assets);
+        return this;
+    }
+
+    /**
+     * Generates the project.
+     *
+     * @param directory the project directory, which must not exist or be empty
+     * @return the summary of the project
+     * @throws IOException if the directory is not empty or a file cannot be written
+     */
+    public Summary generate(Path directory) throws IOException {
+        if (Files.isDirectory(directory)) {
+            try (var entries = Files.list(directory)) {
+                if (entries.findAny().isPresent()) {
+                    throw new IOException("Directory " + directory + " is not empty");
+                }
+            }
+        }
+        this.directory = directory;
+        this.random = new Random(seed);
+        this.files = 0;
+        this.bytes = 0;
+
+        var sections = Math.max(8, layouts);
+        var levels = componentLevels();
+        var generated = new ArrayList<Page>();
+        for (int i = 0; i < pages; i++) {
+            generated.add(page(i, sections, levels.isEmpty() ? List.of() : levels.getFirst()));
+        }
+        var paths = new ArrayList<String>();
+        int models = 0;
+        for (var page : generated) {
+            writePage(page);
+            models += writeModels(page);
+            writeMessages("pages/" + page.name(), "title", "Page " + page.name(), "intro", sentence(12));
+            paths.add("/" + page.name());
+            for (int v = 0; v < variants; v++) {
+                paths.add("/" + page.name() + "?" + SiteConfig.DEFAULT_MODEL_SELECTOR + "=variant" + v);
+            }
+        }
+        writeComponents(levels);
+        writeLayouts(sections);
+        paths.addAll(writeConfig(generated));
+        writeAssets();
+        write(PATHS_FILE, String.join("\n", paths) + "\n");
+        write(OPTIONS_FILE, mapper.writeValueAsString(options()));
+        var componentCount = levels.stream().mapToInt(List::size).sum();
+        return new Summary(directory, pages, models, componentCount, Math.min(layouts, sections),
+                Math.min(mappings, pages), files, bytes, List.copyOf(paths));
+    }
+
+    private Map<String, Object> options() {
+        var options = new LinkedHashMap<String, Object>();
+        options.put("seed", seed);
+        options.put("pages", pages);
+        options.put("variants", variants);
+        options.put("pageDepth", pageDepth);
+        options.put("components", components);
+        options.put("componentDepth", componentDepth);
+        options.put("layouts", layouts);
+        options.put("mappings", mappings);
+        options.put("locales", locales);
+        options.put("assets", assets);
+        return options;
+    }
+
+    /**
+     * Distributes the components over the levels, e.g. "level0.card0", with at least one component per level.
+     */
+    private List<List<String>> componentLevels() {
+        var levels = new ArrayList<List<String>>();
+        if (components == 0) {
+            return levels;
+        }
+        int depth = Math.min(componentDepth, components);
+        for (int d = 0; d < depth; d++) {
+            var level = new ArrayList<String>();
+            int count = components / depth + (d < components % depth ? 1 : 0);
+            for (int k = 0; k < count; k++) {
+                level.add("level" + d + ".card" + k);
+            }
+            levels.add(level);
+        }
+        return levels;
+    }
+
+    private Page page(int index, int sections, List<String> topComponents) {
+        var name = new StringBuilder("section-").append(random.nextInt(sections));
+        int depth = 1 + random.nextInt(pageDepth);
+        for (int d = 1; d < depth; d++) {
+            name.append('/').append(word()).append('-').append(random.nextInt(GROUPS));
+        }
+        name.append("/page-").append(index);
+        var used = new ArrayList<String>();
+        if (!topComponents.isEmpty()) {
+            for (int c = random.nextInt(4); c > 0; c--) {
+                used.add(topComponents.get(random.nextInt(topComponents.size())));
+            }
+        }
+        return new Page(name.toString(), name.substring(0, name.indexOf("/")), 5 + random.nextInt(46), used);
+    }
+
+    private void writePage(Page page) throws IOException {
+        var html = new StringBuilder("""
+                <!DOCTYPE html>
+                <html lang="en">
+                <head>
+                    <title th:text="#{title}">Title</title>
+                </head>
+                <body>
+                <div th:fragment="content">
+                    <h1 th:text="${title}">Title</h1>
+                    <p th:text="#{intro}">Introduction</p>
+                    <ul>
+                        <li th:each="item : ${items}">
+                            <a th:href="${item.href}" th:text="${item.name}">Item</a>
+                            <span th:text="${item.price}">0.00</span>
+                        </li>
+                    </ul>
+                """);
+        for (var component : page.components()) {
+            html.append("    <c:").append(component).append(" title=\"${title}\" count=\"${items.size()}\"/>\n");
+        }
+        html.append("</div>\n</body>\n</html>\n");
+        write(TEMPLATES + "pages/" + page.name() + ".html", html.toString());
+    }
+
+    private int writeModels(Page page) throws IOException {
+        var file = MODELS + "pages/" + page.name();
+        write(file + ".json", json(Map.of("model", model("Page " + page.name(), page.items()))));
+        for (int v = 0; v < variants; v++) {
+            Map<String, Object> variant;
+            if (v % 2 == 0) {
+                // Variant patching the title of the default model
+                variant = new LinkedHashMap<>();
+                variant.put("extends", "");
+                variant.put("model", Map.of("title", "Variant " + v + " of " + page.name()));
+            } else {
+                variant = Map.of("model", model("Variant " + v + " of " + page.name(), random.nextInt(page.items() * 4 + 1)));
+            }
+            write(file + ".variant" + v + ".json", json(variant));
+        }
+        return 1 + variants;
+    }
+
+    private Map<String, Object> model(String title, int count) {
+        var items = new ArrayList<Map<String, Object>>(count);
+        for (int i = 0; i < count; i++) {
+            var item = new LinkedHashMap<String, Object>();
+            item.put("name", capitalize(word()) + " " + (1000 + random.nextInt(9000)));
+            item.put("href", "/" + word() + "/" + i);
+            item.put("price", String.format(Locale.ROOT, "%d.%02d", random.nextInt(1000), random.nextInt(100)));
+            items.add(item);
+        }
+        var model = new LinkedHashMap<String, Object>();
+        model.put("title", title);
+        model.put("items", items);
+        return model;
+    }
+
+    private void writeComponents(List<List<String>> levels) throws IOException {
+        for (int d = 0; d < levels.size(); d++) {
+            var next = d + 1 < levels.size() ? levels.get(d + 1) : List.<String>of();
+            for (var component : levels.get(d)) {
+                var path = component.replace('.', '/') + "-c";
+                var html = new StringBuilder("""
+                        <div th:fragment="content" class="card">
+                            <h4 th:text="${__model.title}">Title</h4>
+                            <span th:text="#{label}">Label</span>
+                            <em th:text="${__model.count}">0</em>
+                        """);
+                if (!next.isEmpty()) {
+                    html.append("    <c:").append(next.get(random.nextInt(next.size())))
+                        .append(" title=\"${__model.title}\" count=\"${__model.count}\"/>\n");
+                }
+                html.append("</div>\n");
+                write(TEMPLATES + "components/" + path + ".html", html.toString());
+                // Ordered map, so that the same seed generates the same file in every JVM
+                var model = new LinkedHashMap<String, Object>();
+                model.put("title", "Preview of " + component);
+                model.put("count", 3);
+                write(MODELS + "components/" + path + ".json", json(Map.of("model", model)));
+                writeMessages("components/" + path, "label", capitalize(word()) + " " + word());
+            }
+        }
+    }
+
+    private void writeLayouts(int sections) throws IOException {
+        var index = new LinkedHashMap<String, Object>();
+        for (int i = 0; i < Math.min(layouts, sections); i++) {
+            var name = "layout-" + i;
+            index.put(name, Map.of("paths", List.of("/section-" + i + "/**")));
+            var html = """
+                    <!DOCTYPE html>
+                    <html lang="en">
+                    <head>
+                        <title th:text="${title}">Site</title>
+                        <link rel="stylesheet" href="/assets/css/style-0.css">
+                        <script src="/assets/js/script-0.js" defer></script>
+                    </head>
+                    <body class="%s">
+                    <header><a href="/">Home</a> <span th:text="${section}">Section</span></header>
+                    <main th:insert="~{${page} :: content}"></main>
+                    <footer th:text="${footer}">Footer</footer>
+                    </body>
+                    </html>
+                    """.formatted(name);
+            write(TEMPLATES + "layouts/" + name + ".html", html);
+            var model = new LinkedHashMap<String, Object>();
+            model.put("section", "Section " + i);
+            model.put("footer", sentence(8));
+            write(MODELS + "layouts/" + name + ".json", json(Map.of("model", model)));
+        }
+        write(TEMPLATES + "layouts/index.json", json(index));
+    }
+
+    /**
+     * Writes the site configuration with mappings of the first pages and returns example paths of the mappings.
+     * Even mappings select the model variant by a URI variable, odd ones only pass the variable to the template.
+     */
+    private List<String> writeConfig(List<Page> generated) throws IOException {
+        var mappingList = new ArrayList<Map<String, Object>>();
+        var paths = new ArrayList<String>();
+        for (int i = 0; i < Math.min(mappings, generated.size()); i++) {
+            var page = generated.get(i);
+            var mapping = new LinkedHashMap<String, Object>();
+            if (i % 2 == 0 && variants > 0) {
+                mapping.put("href", "/mapped/" + i + "/{variant}");
+                mapping.put("templated", true);
+                mapping.put("template", page.name());
+                mapping.put("model", "variant");
+                paths.add("/mapped/" + i + "/variant" + random.nextInt(variants));
+            } else {
+                mapping.put("href", "/mapped/" + i + "/items/{id}");
+                mapping.put("templated", true);
+                mapping.put("template", page.name());
+                paths.add("/mapped/" + i + "/items/" + random.nextInt(1000));
+            }
+            mappingList.add(mapping);
+        }
+        write("site.json", json(Map.of("mappings", mappingList)));
+        return paths;
+    }
+
+    private void writeAssets() throws IOException {
+        for (int i = 0; i < assets; i++) {
+            switch (i % 3) {
+                case 0 -> {
+                    var css = new StringBuilder();
+                    for (int rule = 0, count = 20 + random.nextInt(200); rule < count; rule++) {
+                        css.append('.').append(word()).append('-').append(rule).append(" { margin: ")
+                           .append(random.nextInt(32)).append("px; color: #")
+                           .append(String.format("%06x", random.nextInt(0x1000000))).append("; }\n");
+                    }
+                    write(RESOURCES + "assets/css/style-" + i / 3 + ".css", css.toString());
+                }
+                case 1 -> {
+                    var js = new StringBuilder();
+                    for (int function = 0, count = 10 + random.nextInt(100); function < count; function++) {
+                        js.append("function ").append(word()).append(function).append("(value) { return value * ")
+                          .append(random.nextInt(100)).append("; }\n");
+                    }
+                    write(RESOURCES + "assets/js/script-" + i / 3 + ".js", js.toString());
+                }
+                default -> write(RESOURCES + "assets/images/icon-" + i / 3 + ".svg", """
+                        <svg xmlns="http://www.w3.org/2000/svg" width="24" height="24"><circle cx="12" cy="12" r="%d" fill="#%06x"/></svg>
+                        """.formatted(2 + random.nextInt(10), random.nextInt(0x1000000)));
+            }
+        }
+    }
+
+    /**
+     * Writes the message bundle, e.g. "pages/section-0/page-1", in the default locale and the other locales.
+     */
+    private void writeMessages(String bundle, String... entries) throws IOException {
+        write(RESOURCES + bundle + ".properties", properties(entries, null));
+        for (var locale : locales) {
+            write(RESOURCES + bundle + "_" + locale + ".properties", properties(entries, locale));
+        }
+    }
+
+    private static String properties(String[] entries, String locale) {
+        var text = new StringBuilder();
+        for (int i = 0; i + 1 < entries.length; i += 2) {
+            text.append(entries[i]).append('=');
+            if (locale != null) {
+                text.append('[').append(locale).append("] ");
+            }
+            text.append(entries[i + 1]).append('\n');
+        }
+        return text.toString();
+    }
+
+    private String sentence(int words) {
+        var text = new StringBuilder(capitalize(word()));
+        for (int i = 1; i < words; i++) {
+            text.append(' ').append(word());
+        }
+        return text.append('.').toString();
+    }
+
+    private String word() {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    private String json(Object value) throws IOException {
+        return mapper.writeValueAsString(value);
+    }
+
+    private void write(String file, String content) throws IOException {
+        var path = directory.resolve(file);
+        Files.createDirectories(path.getParent());
+        var data = content.getBytes(StandardCharsets.UTF_8);
+        Files.write(path, data);
+        files++;
+        bytes += data.length;
+    }
+}
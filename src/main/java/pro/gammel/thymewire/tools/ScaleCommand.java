@@ -0,0 +1,150 @@
+package pro.gammel.thymewire.tools;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pro.gammel.thymewire.Thymewire;
+import pro.gammel.thymewire.config.SiteConfig;
+import pro.gammel.thymewire.server.Response;
+import pro.gammel.thymewire.server.TemplateController;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Command rendering a page with its model arrays scaled to growing sizes and reporting render time and size
+ * of the output for every size, so that the scaling curve of the template can be seen. Pages are rendered
+ * through the same controller as in the previewer server, see {@link TemplateController#render}.
+ * <pre>
+ * scale [--dir &lt;path&gt;] [--sizes 10,100,1000,10000] [--iterations 5] [--model &lt;id&gt;] &lt;path&gt; &lt;array&gt;...
+ * </pre>
+ * The command stops with exit code 1 at the first size the page is not answered with status 200, e.g. 500 of
+ * the error page of a failed render or 504 of a timed out one, so that error pages are not measured.
+ */
+public class ScaleCommand {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScaleCommand.class);
+
+    public static final String NAME = "scale";
+
+    private static final int WARMUP_ITERATIONS = 2;
+
+    private final PrintStream out;
+
+    public ScaleCommand() {
+        this(System.out);
+    }
+
+    public ScaleCommand(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Runs the command.
+     *
+     * @param args command arguments
+     * @return exit code
+     */
+    public int run(String[] args) {
+        Path launchDirectory = Paths.get(".");
+        List<Integer> sizes = List.of(10, 100, 1000, 10000);
+        int iterations = 5;
+        String model = null;
+        String path = null;
+        var arrays = new ArrayList<String>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("--dir") && i + 1 < args.length) {
+                    launchDirectory = Paths.get(args[++i]);
+                } else if (args[i].equals("--sizes") && i + 1 < args.length) {
+                    sizes = Arrays.stream(args[++i].split(",")).map(String::trim).map(Integer::parseInt).sorted().toList();
+                } else if (args[i].equals("--iterations") && i + 1 < args.length) {
+                    iterations = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("--model") && i + 1 < args.length) {
+                    model = args[++i];
+                } else if (args[i].startsWith("--")) {
+                    return usage("Unknown option " + args[i]);
+                } else if (path == null) {
+                    path = args[i];
+                } else {
+                    arrays.add(args[i]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            return usage("Invalid number: " + e.getMessage());
+        }
+        if (path == null || arrays.isEmpty()) {
+            return usage("Page path and at least one array path are required");
+        }
+
+        var app = new Thymewire(launchDirectory);
+        var controller = app.initialize();
+        var modelSelector = Objects.requireNonNullElse(app.site().config().modelSelector(),
+                SiteConfig.DEFAULT_MODEL_SELECTOR);
+
+        out.printf("Scaling %s %s%n", path, arrays);
+        out.printf("%10s %12s %12s %14s %10s%n", "N", "median ms", "min ms", "bytes", "exponent");
+        Sample previous = null;
+        for (var size : sizes) {
+            var query = new HashMap<String, Object>();
+            query.put(SiteConfig.SCALE_PARAMETER,
+                    arrays.stream().map(array -> array + ":" + size).collect(Collectors.joining(",")));
+            if (model != null) {
+                query.put(modelSelector, model);
+            }
+            var sample = measure(controller, path, query, size, iterations);
+            if (sample == null) {
+                return 1;
+            }
+            // Slope of the curve on log-log scale: 1 is linear, 2 is quadratic
+            var exponent = previous != null && previous.medianNanos() > 0
+                    ? String.format("%.2f", Math.log((double) sample.medianNanos() / previous.medianNanos())
+                            / Math.log((double) size / previous.size()))
+                    : "-";
+            out.printf("%10d %12.2f %12.2f %14d %10s%n", size, sample.medianNanos() / 1e6, sample.minNanos() / 1e6,
+                    sample.bytes(), exponent);
+            previous = sample;
+        }
+        return 0;
+    }
+
+    private record Sample(int size, long medianNanos, long minNanos, long bytes) {}
+
+    private Sample measure(TemplateController controller, String path, Map<String, Object> query, int size,
+                           int iterations) {
+        var times = new long[iterations];
+        long bytes = 0;
+        for (int i = -WARMUP_ITERATIONS; i < iterations; i++) {
+            var start = System.nanoTime();
+            var response = controller.render("GET", path, query);
+            var elapsed = System.nanoTime() - start;
+            if (response.statusCode() != 200) {
+                LOG.error("Rendering {} with N={} failed with status {}", path, size, response.statusCode());
+                return null;
+            }
+            if (i >= 0) {
+                times[i] = elapsed;
+                bytes = length(response);
+            }
+        }
+        Arrays.sort(times);
+        return new Sample(size, times[iterations / 2], times[0], bytes);
+    }
+
+    private static long length(Response response) {
+        if (response.isBinary()) {
+            return response.binaryContent().length;
+        }
+        return response.body() != null ? response.body().getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    private int usage(String error) {
+        LOG.error(error);
+        out.println("Usage: scale [--dir <path>] [--sizes 10,100,1000,10000] [--iterations 5] [--model <id>] <path> <array>...");
+        out.println("Example: scale /orders items customer.addresses");
+        return 2;
+    }
+}
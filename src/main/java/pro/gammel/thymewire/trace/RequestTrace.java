@@ -0,0 +1,198 @@
+package pro.gammel.thymewire.trace;
+
+import org.slf4j.helpers.MessageFormatter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Trace of the request handled on the current thread: the steps taken to serve it, recorded as messages in the
+ * format of SLF4J. Recording a step costs only a thread local lookup when the request is not traced; messages are
+ * formatted when they are recorded, so that the trace does not keep the arguments, e.g. models, alive and shows
+ * them as they were at the step. Completed traces are kept in a {@link TraceBuffer}.
+ * <p>
+ * This class is not thread safe, a trace is recorded only by the thread that started it and read only after it
+ * was published.
+ */
+public final class RequestTrace implements AutoCloseable {
+
+    // Steps recorded per request, later ones are counted as dropped
+    public static final int MAX_EVENTS = 64;
+
+    private static final ThreadLocal<RequestTrace> CURRENT = new ThreadLocal<>();
+
+    /**
+     * Step of the request.
+     *
+     * @param offsetNanos time since the start of the request
+     * @param text the formatted message
+     */
+    public record Event(long offsetNanos, String text) {}
+
+    private final TraceBuffer buffer;
+
+    private final long id;
+
+    private final String method;
+
+    private final String path;
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private final long start = System.nanoTime();
+
+    private final Event[] events = new Event[MAX_EVENTS];
+
+    private int count;
+
+    private int dropped;
+
+    private String controller;
+
+    private int status;
+
+    private long bytes;
+
+    private long durationNanos = -1;
+
+    private RequestTrace(TraceBuffer buffer, String method, String path) {
+        this.buffer = buffer;
+        this.id = buffer.nextId();
+        this.method = method;
+        this.path = path;
+    }
+
+    /**
+     * Starts tracing the request on the current thread.
+     *
+     * @param buffer the buffer to publish the trace to when it is finished
+     * @param method HTTP method
+     * @param path request path
+     * @return the trace to finish and close when the request is complete
+     */
+    public static RequestTrace start(TraceBuffer buffer, String method, String path) {
+        var trace = new RequestTrace(buffer, method, path);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    /**
+     * Returns the trace running on the current thread.
+     *
+     * @return the trace or null if the request is not traced
+     */
+    public static RequestTrace current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Records the step in the trace of the current thread, if there is one.
+     */
+    public static void event(String message) {
+        var trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(message, null);
+        }
+    }
+
+    public static void event(String message, Object argument) {
+        var trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(message, new Object[]{argument});
+        }
+    }
+
+    public static void event(String message, Object first, Object second) {
+        var trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(message, new Object[]{first, second});
+        }
+    }
+
+    public static void event(String message, Object... arguments) {
+        var trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(message, arguments);
+        }
+    }
+
+    private void add(String message, Object[] arguments) {
+        if (count < MAX_EVENTS) {
+            var text = arguments != null ? MessageFormatter.basicArrayFormat(message, arguments) : message;
+            events[count++] = new Event(System.nanoTime() - start, text);
+        } else {
+            dropped++;
+        }
+    }
+
+    /**
+     * Completes the trace and publishes it to the buffer.
+     *
+     * @param controller the name of the controller that served the request
+     * @param status HTTP status of the response
+     * @param bytes size of the response body
+     */
+    public void finish(String controller, int status, long bytes) {
+        this.durationNanos = System.nanoTime() - start;
+        this.controller = controller;
+        this.status = status;
+        this.bytes = bytes;
+        buffer.publish(this);
+    }
+
+    public long id() {
+        return id;
+    }
+
+    /**
+     * Returns the time since the start of the request, or its duration once it is finished.
+     */
+    public long elapsedNanos() {
+        return durationNanos >= 0 ? durationNanos : System.nanoTime() - start;
+    }
+
+    /**
+     * Returns the summary of the request without its steps.
+     */
+    public Map<String, Object> summary() {
+        var result = new LinkedHashMap<String, Object>();
+        result.put("id", id);
+        result.put("startedAt", startedAt);
+        result.put("method", method);
+        result.put("path", path);
+        result.put("controller", controller);
+        result.put("status", status);
+        result.put("bytes", bytes);
+        result.put("durationMillis", durationNanos / 1e6);
+        result.put("events", count + dropped);
+        return result;
+    }
+
+    /**
+     * Returns the summary of the request with its steps and their times in milliseconds.
+     */
+    public Map<String, Object> toMap() {
+        var result = summary();
+        var steps = new ArrayList<Map<String, Object>>(count);
+        for (int i = 0; i < count; i++) {
+            var step = new LinkedHashMap<String, Object>();
+            step.put("atMillis", events[i].offsetNanos() / 1e6);
+            step.put("message", events[i].text());
+            steps.add(step);
+        }
+        result.put("steps", steps);
+        result.put("dropped", dropped);
+        return result;
+    }
+
+    /**
+     * Stops tracing on the current thread.
+     */
+    @Override
+    public void close() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+}
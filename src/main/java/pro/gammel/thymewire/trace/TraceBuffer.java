@@ -0,0 +1,82 @@
+package pro.gammel.thymewire.trace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Ring buffer of the most recent request traces. The slot of a trace is given by its id, so publishing
+ * a trace is a compare-and-set, and a trace can be found by its id until a later request takes its slot.
+ * A trace finished after a later request already took its slot is dropped.
+ */
+public class TraceBuffer {
+
+    public static final int DEFAULT_CAPACITY = 1024;
+
+    private final AtomicReferenceArray<RequestTrace> traces;
+
+    private final int mask;
+
+    private final AtomicLong ids = new AtomicLong();
+
+    public TraceBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity the number of traces kept, rounded up to a power of two
+     */
+    public TraceBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.traces = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+    }
+
+    long nextId() {
+        return ids.incrementAndGet();
+    }
+
+    void publish(RequestTrace trace) {
+        int slot = (int) (trace.id() & mask);
+        RequestTrace current;
+        do {
+            current = traces.get(slot);
+            if (current != null && current.id() > trace.id()) {
+                return;
+            }
+        } while (!traces.compareAndSet(slot, current, trace));
+    }
+
+    /**
+     * Returns the trace of the request.
+     *
+     * @param id the id of the trace
+     * @return the trace, or null if it is not finished yet or was overwritten by a later request
+     */
+    public RequestTrace get(long id) {
+        var trace = traces.get((int) (id & mask));
+        return trace != null && trace.id() == id ? trace : null;
+    }
+
+    /**
+     * Returns the most recent finished traces, newest first.
+     *
+     * @param limit the maximal number of traces
+     */
+    public List<RequestTrace> recent(int limit) {
+        var result = new ArrayList<RequestTrace>(Math.min(limit, traces.length()));
+        long last = ids.get();
+        for (long id = last; id > 0 && id > last - traces.length() && result.size() < limit; id--) {
+            var trace = get(id);
+            if (trace != null) {
+                result.add(trace);
+            }
+        }
+        return result;
+    }
+
+    public int capacity() {
+        return traces.length();
+    }
+}
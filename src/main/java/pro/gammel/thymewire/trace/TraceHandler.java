@@ -0,0 +1,60 @@
+package pro.gammel.thymewire.trace;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Serves the request traces as JSON: the summaries of recent requests at {@link #PATH} and the steps of a request
+ * at {@link #PATH}/{id}, where the id is the one sent in the {@link #HEADER} response header.
+ */
+public class TraceHandler implements HttpHandler {
+
+    public static final String PATH = "/__thymewire/traces";
+
+    public static final String HEADER = "X-Thymewire-Trace";
+
+    private static final int RECENT = 100;
+
+    private final TraceBuffer traces;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public TraceHandler(TraceBuffer traces) {
+        this.traces = traces;
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        var id = exchange.getRequestURI().getPath().substring(PATH.length());
+        Object result;
+        if (id.isEmpty() || "/".equals(id)) {
+            var summaries = new ArrayList<Object>();
+            traces.recent(RECENT).forEach(trace -> summaries.add(trace.summary()));
+            result = summaries;
+        } else {
+            RequestTrace trace;
+            try {
+                trace = traces.get(Long.parseLong(id.substring(1)));
+            } catch (NumberFormatException e) {
+                trace = null;
+            }
+            if (trace == null) {
+                exchange.sendResponseHeaders(404, -1);
+                exchange.close();
+                return;
+            }
+            result = trace.toMap();
+        }
+        var body = mapper.writeValueAsBytes(result);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, body.length);
+        try (var out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}